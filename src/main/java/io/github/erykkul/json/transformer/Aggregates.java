@@ -0,0 +1,298 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import static jakarta.json.JsonValue.NULL;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonValue;
+import jakarta.json.JsonValue.ValueType;
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * Native implementations of the aggregate functions (sum, count, min, max, avg
+ * and distinctCount). The values are aggregated with primitive accumulators
+ * while iterating over the array elements (or object values) of the source,
+ * without creating intermediate objects for each element. The homogeneous
+ * arrays of objects are aggregated over their primitive {@link Column}s
+ * instead, built once for each array and pointer during a transform call. See
+ * documentation:
+ * <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#functions">Functions</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class Aggregates {
+    private static final String EXACT = "exact";
+
+    private Aggregates() {
+    }
+
+    static JsonValue sum(final JsonProvider provider, final TransformCache cache, final JsonValue source,
+            final String expression) {
+        final String[] args = expression.split(",");
+        final String[] path = Utils.tokens(args[0].trim());
+        final Column column = isExact(args) ? null : cache.getColumn(source, args[0].trim());
+        if (column != null) {
+            return sum(provider, column);
+        }
+        if (isExact(args)) {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+                final JsonValue value = Utils.getValue(it.next(), path);
+                if (value instanceof JsonNumber) {
+                    sum = sum.add(((JsonNumber) value).bigDecimalValue());
+                }
+            }
+            return provider.createValue(sum);
+        }
+        long longSum = 0;
+        double doubleSum = 0;
+        boolean integral = true;
+        for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+            final JsonValue value = Utils.getValue(it.next(), path);
+            if (!(value instanceof JsonNumber)) {
+                continue;
+            }
+            final JsonNumber number = (JsonNumber) value;
+            if (integral && number.isIntegral()) {
+                final long v = longValue(number);
+                final long r = longSum + v;
+                if (v != Long.MIN_VALUE && ((longSum ^ r) & (v ^ r)) >= 0) {
+                    longSum = r;
+                    continue;
+                }
+            }
+            if (integral) {
+                integral = false;
+                doubleSum = longSum;
+            }
+            doubleSum += number.doubleValue();
+        }
+        return integral ? provider.createValue(longSum) : provider.createValue(doubleSum);
+    }
+
+    static JsonValue count(final JsonProvider provider, final TransformCache cache, final JsonValue source,
+            final String expression) {
+        final Column column = cache.getColumn(source, expression.trim());
+        if (column != null) {
+            return provider.createValue(column.presentCount);
+        }
+        final String[] path = Utils.tokens(expression.trim());
+        int count = 0;
+        for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+            if (!NULL.equals(Utils.getValue(it.next(), path))) {
+                count++;
+            }
+        }
+        return provider.createValue(count);
+    }
+
+    static JsonValue minMax(final TransformCache cache, final JsonValue source, final JsonValue result,
+            final String expression, final boolean max) {
+        final Column column = cache.getColumn(source, expression.trim());
+        if (column != null) {
+            final int found = minMax(column, max);
+            return found < 0 ? result : column.value(found);
+        }
+        final String[] path = Utils.tokens(expression.trim());
+        JsonNumber found = null;
+        for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+            final JsonValue value = Utils.getValue(it.next(), path);
+            if (!(value instanceof JsonNumber)) {
+                continue;
+            }
+            final JsonNumber number = (JsonNumber) value;
+            if (found == null) {
+                found = number;
+            } else {
+                final int cmp = compare(number, found);
+                if (max ? cmp > 0 : cmp < 0) {
+                    found = number;
+                }
+            }
+        }
+        return found == null ? result : found;
+    }
+
+    static JsonValue avg(final JsonProvider provider, final TransformCache cache, final JsonValue source,
+            final JsonValue result, final String expression) {
+        final String[] args = expression.split(",");
+        final String[] path = Utils.tokens(args[0].trim());
+        final Column column = isExact(args) ? null : cache.getColumn(source, args[0].trim());
+        if (column != null) {
+            double sum = 0;
+            for (int i = 0; i < column.size; i++) {
+                if (column.number[i]) {
+                    sum += column.doubles[i];
+                }
+            }
+            return column.numberCount == 0 ? result : provider.createValue(sum / column.numberCount);
+        }
+        int count = 0;
+        if (isExact(args)) {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+                final JsonValue value = Utils.getValue(it.next(), path);
+                if (value instanceof JsonNumber) {
+                    sum = sum.add(((JsonNumber) value).bigDecimalValue());
+                    count++;
+                }
+            }
+            return count == 0 ? result
+                    : provider.createValue(sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128));
+        }
+        double sum = 0;
+        for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+            final JsonValue value = Utils.getValue(it.next(), path);
+            if (value instanceof JsonNumber) {
+                sum += ((JsonNumber) value).doubleValue();
+                count++;
+            }
+        }
+        return count == 0 ? result : provider.createValue(sum / count);
+    }
+
+    static JsonValue distinctCount(final JsonProvider provider, final TransformCache cache, final JsonValue source,
+            final String expression) {
+        final Column column = cache.getColumn(source, expression.trim());
+        if (column != null && column.stringCount == column.presentCount) {
+            // the dictionary holds only the strings present in the column
+            return provider.createValue(column.dictionary.size());
+        }
+        if (column != null && column.integralCount == column.presentCount) {
+            return provider.createValue(distinctLongs(column));
+        }
+        final String[] path = Utils.tokens(expression.trim());
+        // the numbers are compared by their numeric value, e.g., 1 and 1.0 are the same value
+        final Set<Object> distinct = new HashSet<>();
+        for (final Iterator<JsonValue> it = iterator(source); it.hasNext();) {
+            final JsonValue value = Utils.getValue(it.next(), path);
+            if (!NULL.equals(value)) {
+                distinct.add(TransformCache.indexKey(value));
+            }
+        }
+        return provider.createValue(distinct.size());
+    }
+
+    // the same algorithm as for the values, switching to the double sum after an overflow or a fraction
+    private static JsonValue sum(final JsonProvider provider, final Column column) {
+        final boolean[] number = column.number;
+        final boolean[] integral = column.integral;
+        final long[] longs = column.longs;
+        final double[] doubles = column.doubles;
+        long longSum = 0;
+        int i = 0;
+        for (; i < column.size; i++) {
+            if (!number[i]) {
+                continue;
+            }
+            if (!integral[i]) {
+                break;
+            }
+            final long v = longs[i];
+            final long r = longSum + v;
+            if (((longSum ^ r) & (v ^ r)) < 0) {
+                break;
+            }
+            longSum = r;
+        }
+        if (i == column.size) {
+            return provider.createValue(longSum);
+        }
+        double doubleSum = longSum;
+        for (; i < column.size; i++) {
+            if (number[i]) {
+                doubleSum += doubles[i];
+            }
+        }
+        return provider.createValue(doubleSum);
+    }
+
+    private static int minMax(final Column column, final boolean max) {
+        int found = -1;
+        for (int i = 0; i < column.size; i++) {
+            if (!column.number[i]) {
+                continue;
+            }
+            if (found < 0) {
+                found = i;
+                continue;
+            }
+            final int cmp = column.integral[i] && column.integral[found]
+                    ? Long.compare(column.longs[i], column.longs[found])
+                    : Double.compare(column.doubles[i], column.doubles[found]);
+            if (max ? cmp > 0 : cmp < 0) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    private static int distinctLongs(final Column column) {
+        final long[] values = new long[column.presentCount];
+        int n = 0;
+        for (int i = 0; i < column.size; i++) {
+            if (column.present[i]) {
+                values[n++] = column.longs[i];
+            }
+        }
+        Arrays.sort(values);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    private static int compare(final JsonNumber a, final JsonNumber b) {
+        if (a.isIntegral() && b.isIntegral()) {
+            final long x = longValue(a);
+            final long y = longValue(b);
+            if (x != Long.MIN_VALUE && y != Long.MIN_VALUE) {
+                return Long.compare(x, y);
+            }
+        }
+        return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+
+    private static long longValue(final JsonNumber number) {
+        try {
+            return number.longValueExact();
+        } catch (final ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static boolean isExact(final String[] args) {
+        return args.length > 1 && EXACT.equals(args[1].trim());
+    }
+
+    private static Iterator<JsonValue> iterator(final JsonValue source) {
+        if (Utils.isEmpty(source)) {
+            return Collections.emptyIterator();
+        }
+        final ValueType t = source.getValueType();
+        if (ValueType.ARRAY.equals(t)) {
+            return ((JsonArray) source).iterator();
+        }
+        if (ValueType.OBJECT.equals(t)) {
+            return source.asJsonObject().values().iterator();
+        }
+        return List.of(source).iterator();
+    }
+}
@@ -0,0 +1,62 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+/**
+ * Thrown when a transform call exceeds a limit of its {@link TransformBudget}.
+ * The transformation is aborted and the script engine used by it is dropped.
+ * See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#budgets">Budgets</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits of the transform budget.
+     */
+    public enum Limit {
+        /**
+         * The maximum wall-clock time.
+         */
+        DURATION,
+        /**
+         * The maximum CPU time.
+         */
+        CPU_TIME,
+        /**
+         * The maximum number of elements of a single [i] iteration.
+         */
+        ITERATION_ELEMENTS,
+        /**
+         * The maximum number of elements passed to the script of a single filter,
+         * map or reduce function call.
+         */
+        SCRIPT_ELEMENTS
+    }
+
+    private final Limit limit;
+
+    /**
+     * Class constructor.
+     *
+     * @param limit   the exceeded limit
+     * @param message the detail message
+     */
+    public BudgetExceededException(final Limit limit, final String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    /**
+     * Getter for the exceeded limit.
+     *
+     * @return the exceeded limit
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+}
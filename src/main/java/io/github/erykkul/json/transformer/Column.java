@@ -0,0 +1,149 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import static jakarta.json.JsonValue.NULL;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+
+/**
+ * The values at one pointer of the elements of a homogeneous array of objects
+ * (e.g., "/amount" of each transaction), laid out as primitive columns: the
+ * numbers as long values (when integral) and double values, and the strings as
+ * codes in a dictionary. The aggregates and the "when" conditions then run over
+ * these columns in tight loops, without resolving the pointer and unboxing the
+ * JSON values of each element again. The columns are built once for each array
+ * (by identity) and pointer during a transform call, and are cached in the
+ * {@link TransformCache}. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#columnar-execution">Columnar
+ * execution</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class Column {
+    /**
+     * The minimal size of the arrays processed as columns, the smaller arrays are
+     * processed element by element.
+     */
+    static final int MIN_ROWS = 32;
+
+    final JsonArray rows;
+    final String[] tokens;
+    final int size;
+    // the value exists and is not null
+    final boolean[] present;
+    final boolean[] number;
+    // the number is integral and fits in a long, its value is in the longs column
+    final boolean[] integral;
+    final long[] longs;
+    final double[] doubles;
+    // the code of the string in the dictionary, or -1 when the value is not a string
+    final int[] codes;
+    final Map<String, Integer> dictionary;
+    final int presentCount;
+    final int numberCount;
+    final int integralCount;
+    final int stringCount;
+
+    private Column(final JsonArray rows, final String[] tokens) {
+        this.rows = rows;
+        this.tokens = tokens;
+        this.size = rows.size();
+        this.present = new boolean[size];
+        this.number = new boolean[size];
+        this.integral = new boolean[size];
+        this.longs = new long[size];
+        this.doubles = new double[size];
+        this.codes = new int[size];
+        this.dictionary = new HashMap<>();
+        int presentCount = 0;
+        int numberCount = 0;
+        int integralCount = 0;
+        int stringCount = 0;
+        for (int i = 0; i < size; i++) {
+            final JsonValue value = Utils.getValue(rows.get(i), tokens);
+            codes[i] = -1;
+            if (NULL.equals(value)) {
+                continue;
+            }
+            present[i] = true;
+            presentCount++;
+            if (value instanceof JsonNumber) {
+                final JsonNumber n = (JsonNumber) value;
+                number[i] = true;
+                numberCount++;
+                doubles[i] = n.doubleValue();
+                if (n.isIntegral()) {
+                    try {
+                        longs[i] = n.longValueExact();
+                        // Long.MIN_VALUE is handled as a non-integral value by the aggregates
+                        integral[i] = longs[i] != Long.MIN_VALUE;
+                        integralCount += integral[i] ? 1 : 0;
+                    } catch (final ArithmeticException e) {
+                        // too large for a long
+                    }
+                }
+            } else if (value instanceof JsonString) {
+                final String s = ((JsonString) value).getString();
+                codes[i] = dictionary.computeIfAbsent(s, x -> dictionary.size());
+                stringCount++;
+            }
+        }
+        this.presentCount = presentCount;
+        this.numberCount = numberCount;
+        this.integralCount = integralCount;
+        this.stringCount = stringCount;
+    }
+
+    /**
+     * Checks if the value is an array that can be processed as columns: an array
+     * of at least {@value #MIN_ROWS} elements, all of them being objects.
+     *
+     * @param value the value, e.g., the source of an aggregate
+     * @return true if the value is a homogeneous array of objects
+     */
+    static boolean applies(final JsonValue value) {
+        if (!(value instanceof JsonArray) || ((JsonArray) value).size() < MIN_ROWS) {
+            return false;
+        }
+        for (final JsonValue row : (JsonArray) value) {
+            if (!(row instanceof JsonObject)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the columns of the values at the pointer of each element of the
+     * array. Use {@link TransformCache#getColumn(JsonArray, String)} to build
+     * them only once during a transform call.
+     *
+     * @param rows    the array of objects
+     * @param pointer the pointer, relative to each element
+     * @return the columns
+     */
+    static Column of(final JsonArray rows, final String pointer) {
+        return new Column(rows, Utils.tokens(pointer));
+    }
+
+    /**
+     * Returns the value at the pointer of the element, materialized only when
+     * needed, e.g., for the minimum of the column.
+     *
+     * @param row the index of the element
+     * @return the value
+     */
+    JsonValue value(final int row) {
+        return Utils.getValue(rows.get(row), tokens);
+    }
+}
@@ -2,21 +2,42 @@
 
 package io.github.erykkul.json.transformer;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.spi.JsonProvider;
+
 /**
- * Holds ScriptEngine object during Transformer::transform method execution.
- * See documentation: <a href=
+ * Holds ScriptEngine object, the transform cache and the state of the transform
+ * budget during Transformer::transform method execution. See documentation:
+ * <a href=
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#functions">Functions</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.2
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class EngineHolder {
     private ScriptEngine engine;
     private final ScriptEngineFactory scriptEngineFactory;
+    private final TransformCache cache = new TransformCache();
+    private final TransformBudget budget;
+    private final JsonProvider jsonProvider;
+    private final JsonBuilderFactory builderFactory;
+    private final List<Cleaner.Cleanable> spills = new ArrayList<>();
+    private int spillThreshold;
+    private boolean batchedScripts;
+    private final long startNanos;
+    private final long startCpuNanos;
+    private int steps;
 
     /**
      * Class constructor.
@@ -24,7 +45,37 @@ public class EngineHolder {
      * @param scriptEngineFactory the script engine factory
      */
     public EngineHolder(final ScriptEngineFactory scriptEngineFactory) {
+        this(scriptEngineFactory, TransformBudget.UNLIMITED);
+    }
+
+    /**
+     * Class constructor. The time budgets are measured from the creation of the
+     * engine holder, on the thread creating it.
+     * 
+     * @param scriptEngineFactory the script engine factory
+     * @param budget              the transform budget
+     */
+    public EngineHolder(final ScriptEngineFactory scriptEngineFactory, final TransformBudget budget) {
+        this(scriptEngineFactory, budget, Utils.provider(), Utils.builderFactory());
+    }
+
+    /**
+     * Class constructor. The time budgets are measured from the creation of the
+     * engine holder, on the thread creating it.
+     * 
+     * @param scriptEngineFactory the script engine factory
+     * @param budget              the transform budget
+     * @param jsonProvider        the JSON provider used by the transformations
+     * @param builderFactory      the builder factory of the JSON provider
+     */
+    public EngineHolder(final ScriptEngineFactory scriptEngineFactory, final TransformBudget budget,
+            final JsonProvider jsonProvider, final JsonBuilderFactory builderFactory) {
         this.scriptEngineFactory = scriptEngineFactory;
+        this.budget = budget;
+        this.jsonProvider = jsonProvider;
+        this.builderFactory = builderFactory;
+        this.startNanos = budget.getMaxDurationNanos() > 0 ? System.nanoTime() : 0;
+        this.startCpuNanos = budget.getMaxCpuTimeNanos() > 0 ? cpuTime() : -1;
     }
 
     /**
@@ -45,6 +96,19 @@ public class EngineHolder {
         this.engine = engine;
     }
 
+    /**
+     * Replaces the global scope of the held script engine (if any) by a new one,
+     * such that the variables defined by the scripts executed before are no
+     * longer visible, while the engine itself is reused (e.g., by the
+     * transformers of a {@link TransformerSet}).
+     */
+    public void resetBindings() {
+        if (engine != null) {
+            engine.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            Utils.defineGlobals(engine);
+        }
+    }
+
     /**
      * ScriptEngineFactory getter
      * 
@@ -53,4 +117,190 @@ public class EngineHolder {
     public ScriptEngineFactory getScriptEngineFactory() {
         return scriptEngineFactory;
     }
+
+    /**
+     * TransformCache getter
+     * 
+     * @return the cache of the values computed from the source document during
+     *         the transform method execution
+     */
+    public TransformCache getCache() {
+        return cache;
+    }
+
+    /**
+     * TransformBudget getter
+     * 
+     * @return the transform budget
+     */
+    public TransformBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * JsonProvider getter
+     * 
+     * @return the JSON provider used by the transformations
+     */
+    public JsonProvider getJsonProvider() {
+        return jsonProvider;
+    }
+
+    /**
+     * JsonBuilderFactory getter
+     * 
+     * @return the builder factory of the JSON provider
+     */
+    public JsonBuilderFactory getBuilderFactory() {
+        return builderFactory;
+    }
+
+    /**
+     * Spill threshold getter
+     * 
+     * @return the size above which the result arrays growing by appending are
+     *         spilled to temporary files, or 0 when they are kept on the heap
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Spill threshold setter (see
+     * {@link TransformerFactory#withSpillThreshold(int)})
+     * 
+     * @param spillThreshold the size above which the result arrays growing by
+     *                       appending are spilled to temporary files, or 0 when
+     *                       they are kept on the heap
+     */
+    public void setSpillThreshold(final int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Batched scripts getter
+     * 
+     * @return true if the scripts of the filter, map and reduce functions are
+     *         evaluated for all values in a single call of the script engine
+     */
+    public boolean isBatchedScripts() {
+        return batchedScripts;
+    }
+
+    /**
+     * Batched scripts setter (see
+     * {@link TransformerFactory#withBatchedScripts(boolean)})
+     * 
+     * @param batchedScripts true if the scripts of the filter, map and reduce
+     *                       functions are evaluated for all values in a single
+     *                       call of the script engine
+     */
+    public void setBatchedScripts(final boolean batchedScripts) {
+        this.batchedScripts = batchedScripts;
+    }
+
+    /**
+     * Registers the temporary file of an array spilled during the transform
+     * method execution, deleted by {@link #releaseSpills()}.
+     * 
+     * @param spill closes and deletes the temporary file
+     */
+    void addSpill(final Cleaner.Cleanable spill) {
+        spills.add(spill);
+    }
+
+    /**
+     * Checks if arrays were spilled to temporary files since the last
+     * {@link #releaseSpills()} call.
+     * 
+     * @return true if the temporary files of the spilled arrays still exist
+     */
+    boolean hasSpills() {
+        return !spills.isEmpty();
+    }
+
+    /**
+     * Closes and deletes the temporary files of the arrays spilled during the
+     * transform method execution. Called by the transformer at the end of the
+     * transform call, once the resulting document is materialized or written.
+     */
+    void releaseSpills() {
+        spills.forEach(Cleaner.Cleanable::clean);
+        spills.clear();
+    }
+
+    /**
+     * Checks the time limits of the transform budget.
+     * 
+     * @throws BudgetExceededException thrown when a time limit is exceeded (the
+     *                                 script engine is then dropped)
+     */
+    public void checkBudget() {
+        if (budget.getMaxDurationNanos() > 0 && System.nanoTime() - startNanos > budget.getMaxDurationNanos()) {
+            abort(BudgetExceededException.Limit.DURATION, "maximum duration of "
+                    + budget.getMaxDurationNanos() / 1000000 + " ms exceeded");
+        }
+        if (startCpuNanos >= 0 && cpuTime() - startCpuNanos > budget.getMaxCpuTimeNanos()) {
+            abort(BudgetExceededException.Limit.CPU_TIME, "maximum CPU time of "
+                    + budget.getMaxCpuTimeNanos() / 1000000 + " ms exceeded");
+        }
+    }
+
+    /**
+     * Checks the number of elements of an [i] iteration, before the iteration
+     * starts, and the time limits of the transform budget.
+     * 
+     * @param elements the number of elements of the iterated array
+     * @throws BudgetExceededException thrown when a limit is exceeded (the script
+     *                                 engine is then dropped)
+     */
+    public void checkIterationElements(final int elements) {
+        if (budget.getMaxIterationElements() > 0 && elements > budget.getMaxIterationElements()) {
+            abort(BudgetExceededException.Limit.ITERATION_ELEMENTS, "iteration over " + elements
+                    + " elements exceeds the maximum of " + budget.getMaxIterationElements() + " elements");
+        }
+        checkBudget();
+    }
+
+    /**
+     * Marks an element processed by an [i] iteration, the time limits of the
+     * transform budget are checked every 16 elements.
+     * 
+     * @throws BudgetExceededException thrown when a time limit is exceeded (the
+     *                                 script engine is then dropped)
+     */
+    public void countIterationElement() {
+        // the elements are typically cheap, the time is not checked for each of them
+        if ((++steps & 15) == 0) {
+            checkBudget();
+        }
+    }
+
+    /**
+     * Checks the number of elements passed to the script of a single filter, map
+     * or reduce function call, before the script is evaluated, and the time
+     * limits of the transform budget.
+     * 
+     * @param elements the number of elements passed to the script
+     * @throws BudgetExceededException thrown when a limit is exceeded (the script
+     *                                 engine is then dropped)
+     */
+    public void checkScriptElements(final int elements) {
+        if (budget.getMaxScriptElements() > 0 && elements > budget.getMaxScriptElements()) {
+            abort(BudgetExceededException.Limit.SCRIPT_ELEMENTS, "script call with " + elements
+                    + " elements exceeds the maximum of " + budget.getMaxScriptElements() + " elements");
+        }
+        checkBudget();
+    }
+
+    private void abort(final BudgetExceededException.Limit limit, final String message) {
+        // the engine state is unknown after an aborted script, it is not reused
+        engine = null;
+        throw new BudgetExceededException(limit, message);
+    }
+
+    private static long cpuTime() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : -1;
+    }
 }
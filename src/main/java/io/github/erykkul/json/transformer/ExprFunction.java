@@ -4,11 +4,14 @@ package io.github.erykkul.json.transformer;
 
 import static jakarta.json.JsonValue.NULL;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonValue;
 import jakarta.json.JsonValue.ValueType;
 
@@ -18,7 +21,7 @@ import jakarta.json.JsonValue.ValueType;
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#functions">Functions</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.1
+ * @version 1.1.0
  * @since 1.0.0
  */
 @FunctionalInterface
@@ -32,17 +35,20 @@ public interface ExprFunction {
      * transformation are left empty. In fact, the default functionality is
      * identical to copy(, ) (or simply copy(), where both; the /fromPointer and the
      * /toPointer are empty string pointers, and the value is copied from the
-     * /sourcePointer to the resultPointer).
+     * /sourcePointer to the resultPointer). The /fromPointer can also point to an
+     * ancestor of the iterated element, e.g., copy(../a, /a) (see
+     * {@link TransformationCtx#getAncestorValue(String)}).
      */
     ExprFunction COPY = (ctx, source, result, expression) -> {
         final String[] args = expression.split(",");
         final String from = args.length > 0 ? args[0].trim() : "";
         final String to = args.length > 1 ? args[1].trim() : "";
-        final JsonValue sourceValue = Utils.getValue(source, from);
+        final JsonValue sourceValue = ctx.getSourceValue(source, from);
         if (NULL.equals(sourceValue)) {
             return result;
         }
-        return Utils.replace(Utils.fixPath(result, ValueType.OBJECT, to), to, sourceValue);
+        return Utils.replace(ctx.getJsonProvider(),
+                Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, to), to, sourceValue);
     };
 
     /**
@@ -55,12 +61,13 @@ public interface ExprFunction {
         final String[] args = expression.split(",");
         final String from = args.length > 0 ? args[0].trim() : "";
         final String to = args.length > 1 ? args[1].trim() : "";
-        final JsonValue resultValue = Utils.getValue(result, from);
+        final JsonValue resultValue = Utils.getValue(ctx.getJsonProvider(), result, from);
         if (NULL.equals(resultValue)) {
             return result;
         }
-        final JsonValue res = Utils.replace(Utils.fixPath(result, ValueType.OBJECT, to), to, resultValue);
-        return Utils.remove(res, from);
+        final JsonValue res = Utils.replace(ctx.getJsonProvider(),
+                Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, to), to, resultValue);
+        return Utils.remove(ctx.getJsonProvider(), res, from);
     };
 
     /**
@@ -68,15 +75,30 @@ public interface ExprFunction {
      * resultPointer) in the resulting document. The \atPointer cannot be an empty
      * string pointer, as remove operations are not permitted on the root.
      */
-    ExprFunction REMOVE = (ctx, source, result, expression) -> Utils.remove(result, expression);
+    ExprFunction REMOVE = (ctx, source, result, expression) -> Utils.remove(ctx.getJsonProvider(), result,
+            expression);
 
     /**
      * generateUuid(/atPointer): generates a UUID at the /atPointer (relative to the
      * resultPointer) in the resulting document.
      */
-    ExprFunction GENERATE_UUID = (ctx, source, result, expression) -> Utils.replace(
-            Utils.fixPath(result, ValueType.OBJECT, expression), expression,
-            Json.createValue(UUID.randomUUID().toString()));
+    ExprFunction GENERATE_UUID = (ctx, source, result, expression) -> Utils.replace(ctx.getJsonProvider(),
+            Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, expression), expression,
+            ctx.getJsonProvider().createValue(UUID.randomUUID().toString()));
+
+    /**
+     * Creates the generateUuid function writing the identifiers of the given
+     * generator instead of the random UUIDs (see
+     * {@link TransformerFactory#withIdGenerator(IdGenerator)}).
+     *
+     * @param generator the identifier generator
+     * @return the generateUuid function
+     */
+    static ExprFunction generateId(final IdGenerator generator) {
+        return (ctx, source, result, expression) -> Utils.replace(ctx.getJsonProvider(),
+                Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, expression), expression,
+                ctx.getJsonProvider().createValue(generator.nextId()));
+    }
 
     /**
      * script(res = myFunction(x)): executes the JavaScript script sent as an
@@ -86,11 +108,12 @@ public interface ExprFunction {
     ExprFunction SCRIPT = (ctx, source, result, expression) -> {
         Utils.eval(ctx.engine(), "res = null");
         Utils.eval(ctx.engine(), expression, source, "x");
+        ctx.engine().checkBudget();
         final Object resultObject = Utils.getObject(ctx.engine(), "res");
         if (resultObject == null) {
             return result;
         }
-        return Utils.asJsonValue(resultObject);
+        return Utils.asJsonValue(ctx.getJsonProvider(), ctx.getBuilderFactory(), resultObject);
     };
 
     /**
@@ -99,18 +122,42 @@ public interface ExprFunction {
      * true in the JavaScript script provided as argument to this function. The
      * values or fields being filtered are passed as x variables to the script
      * engine by the library. The result of the expression is written at the
-     * resultPointer in the resulting document.
+     * resultPointer in the resulting document. When the argument is a JSON
+     * object, e.g., filter({"pointer": "/status", "equals": "OK"}), it is a
+     * condition as used in the "when" clauses (see {@link Guard}), evaluated
+     * natively without the script engine; on large homogeneous arrays of objects
+     * over the columns of the compared values, keeping only the matching
+     * elements.
      */
     ExprFunction FILTER = (ctx, source, result, expression) -> {
         if (Utils.isEmpty(source)) {
             return result;
         }
-        Utils.eval(ctx.engine(), "res = null");
-        final List<JsonValue> res = Utils.stream(source).filter(x -> {
-            Utils.eval(ctx.engine(), expression, x, "x");
-            return Boolean.TRUE.equals(Utils.getObject(ctx.engine(), "res"));
-        }).collect(Collectors.toList());
-        return Json.createArrayBuilder(res).build();
+        if (expression.trim().startsWith("{")) {
+            final Guard.Condition condition = ctx.engine().getCache().getCondition(expression, ctx.getJsonProvider());
+            if (source instanceof JsonArray && ((JsonArray) source).size() >= Column.MIN_ROWS) {
+                final JsonArray rows = (JsonArray) source;
+                final boolean[] mask = condition.mask(rows, ctx.engine().getCache());
+                final JsonArrayBuilder builder = ctx.getBuilderFactory().createArrayBuilder();
+                for (int i = 0; i < mask.length; i++) {
+                    if (mask[i]) {
+                        builder.add(rows.get(i));
+                    }
+                }
+                return builder.build();
+            }
+            return ctx.getBuilderFactory()
+                    .createArrayBuilder(Utils.stream(source).filter(condition).collect(Collectors.toList())).build();
+        }
+        final List<JsonValue> values = Utils.stream(source).collect(Collectors.toList());
+        final Object[] results = evalScript(ctx, expression, values, Boolean.TRUE::equals);
+        final JsonArrayBuilder builder = ctx.getBuilderFactory().createArrayBuilder();
+        for (int i = 0; i < results.length; i++) {
+            if (Boolean.TRUE.equals(results[i])) {
+                builder.add(values.get(i));
+            }
+        }
+        return builder.build();
     };
 
     /**
@@ -125,12 +172,13 @@ public interface ExprFunction {
         if (Utils.isEmpty(source)) {
             return result;
         }
-        Utils.eval(ctx.engine(), "res = null");
-        final List<JsonValue> res = Utils.stream(source).map(x -> {
-            Utils.eval(ctx.engine(), expression, x, "x");
-            return Utils.asJsonValue(Utils.getObject(ctx.engine(), "res"));
-        }).collect(Collectors.toList());
-        return Json.createArrayBuilder(res).build();
+        final Object[] results = evalScript(ctx, expression, Utils.stream(source).collect(Collectors.toList()),
+                res -> Utils.asJsonValue(ctx.getJsonProvider(), ctx.getBuilderFactory(), res));
+        final JsonArrayBuilder builder = ctx.getBuilderFactory().createArrayBuilder();
+        for (final Object res : results) {
+            builder.add((JsonValue) res);
+        }
+        return builder.build();
     };
 
     /**
@@ -145,11 +193,150 @@ public interface ExprFunction {
         if (Utils.isEmpty(source)) {
             return result;
         }
-        Utils.eval(ctx.engine(), "res = null");
-        Utils.stream(source).forEach(x -> Utils.eval(ctx.engine(), expression, x, "x"));
-        return Utils.asJsonValue(Utils.getObject(ctx.engine(), "res"));
+        evalScript(ctx, expression, Utils.stream(source).collect(Collectors.toList()), null);
+        return Utils.asJsonValue(ctx.getJsonProvider(), ctx.getBuilderFactory(),
+                Utils.getObject(ctx.engine(), "res"));
     };
 
+    /**
+     * sum(/pointer, exact): sums the numbers at the /pointer (relative to each
+     * value) of the values from an array (or fields in an object) at the
+     * sourcePointer in the source document. The numbers are summed natively with
+     * primitive accumulators, or as BigDecimal values when the optional second
+     * argument is set to "exact" (e.g., for money amounts). Non-numeric values are
+     * ignored. The result is written at the resultPointer in the resulting
+     * document.
+     */
+    ExprFunction SUM = (ctx, source, result, expression) ->
+            Aggregates.sum(ctx.getJsonProvider(), ctx.engine().getCache(), source, expression);
+
+    /**
+     * count(/pointer): counts the values from an array (or fields in an object) at
+     * the sourcePointer in the source document that have a (non-null) value at the
+     * /pointer (relative to each value). The count() without argument counts all
+     * non-null values. The result is written at the resultPointer in the resulting
+     * document.
+     */
+    ExprFunction COUNT = (ctx, source, result, expression) ->
+            Aggregates.count(ctx.getJsonProvider(), ctx.engine().getCache(), source, expression);
+
+    /**
+     * min(/pointer): writes the smallest number found at the /pointer (relative to
+     * each value) of the values from an array (or fields in an object) at the
+     * sourcePointer in the source document at the resultPointer in the resulting
+     * document.
+     */
+    ExprFunction MIN = (ctx, source, result, expression) ->
+            Aggregates.minMax(ctx.engine().getCache(), source, result, expression, false);
+
+    /**
+     * max(/pointer): writes the largest number found at the /pointer (relative to
+     * each value) of the values from an array (or fields in an object) at the
+     * sourcePointer in the source document at the resultPointer in the resulting
+     * document.
+     */
+    ExprFunction MAX = (ctx, source, result, expression) ->
+            Aggregates.minMax(ctx.engine().getCache(), source, result, expression, true);
+
+    /**
+     * avg(/pointer, exact): writes the average of the numbers found at the
+     * /pointer (relative to each value) of the values from an array (or fields in
+     * an object) at the sourcePointer in the source document at the resultPointer
+     * in the resulting document. The optional "exact" argument computes the
+     * average using BigDecimal values.
+     */
+    ExprFunction AVG = (ctx, source, result, expression) ->
+            Aggregates.avg(ctx.getJsonProvider(), ctx.engine().getCache(), source, result, expression);
+
+    /**
+     * distinctCount(/pointer): counts the distinct (non-null) values at the
+     * /pointer (relative to each value) of the values from an array (or fields in
+     * an object) at the sourcePointer in the source document. The numbers are
+     * compared by their numeric value (e.g., 1 and 1.0 are counted once). The
+     * result is written at the resultPointer in the resulting document.
+     */
+    ExprFunction DISTINCT_COUNT = (ctx, source, result, expression) ->
+            Aggregates.distinctCount(ctx.getJsonProvider(), ctx.engine().getCache(), source, expression);
+
+    /**
+     * lookup(/arrayPointer, /keyPointer, /fromPointer, /toPointer): looks up the
+     * first value in the array (or the fields of the object) at the /arrayPointer
+     * in the source document, having the value at its /keyPointer equal to the
+     * value at the /fromPointer (relative to the sourcePointer). The found value
+     * is written at the /toPointer (relative to the resultPointer, empty by
+     * default) in the resulting document. The hash index used for the lookups is
+     * built only once for each transform call, and it is shared by all
+     * transformations and iterations.
+     */
+    ExprFunction LOOKUP = (ctx, source, result, expression) -> {
+        final String[] args = expression.split(",");
+        final List<JsonValue> matches = matches(ctx, source, args);
+        if (matches.isEmpty()) {
+            return result;
+        }
+        final String to = args.length > 3 ? args[3].trim() : "";
+        return Utils.replace(ctx.getJsonProvider(),
+                Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, to), to, matches.get(0));
+    };
+
+    /**
+     * join(/arrayPointer, /keyPointer, /fromPointer, /toPointer): identical to the
+     * lookup function, but it writes an array of all matching values instead of
+     * only the first matching value.
+     */
+    ExprFunction JOIN = (ctx, source, result, expression) -> {
+        final String[] args = expression.split(",");
+        final List<JsonValue> matches = matches(ctx, source, args);
+        if (matches.isEmpty()) {
+            return result;
+        }
+        final String to = args.length > 3 ? args[3].trim() : "";
+        return Utils.replace(ctx.getJsonProvider(),
+                Utils.fixPath(ctx.getJsonProvider(), result, ValueType.OBJECT, to), to,
+                ctx.getBuilderFactory().createArrayBuilder(matches).build());
+    };
+
+    private static List<JsonValue> matches(final TransformationCtx ctx, final JsonValue source,
+            final String[] args) {
+        if (args.length < 3) {
+            return Collections.emptyList();
+        }
+        final JsonValue key = ctx.getSourceValue(source, args[2].trim());
+        if (NULL.equals(key)) {
+            return Collections.emptyList();
+        }
+        return ctx.cache().getIndex(ctx.getGlobalSource(), args[0].trim(), args[1].trim())
+                .getOrDefault(TransformCache.indexKey(key), Collections.emptyList());
+    }
+
+    // the values of res converted right after each value (the script may reuse and modify the same object),
+    // evaluated in a single call when the scripts are batched
+    private static Object[] evalScript(final TransformationCtx ctx, final String expression,
+            final List<JsonValue> values, final Function<Object, Object> collect) {
+        final EngineHolder engineHolder = ctx.engine();
+        final boolean batched = engineHolder.isBatchedScripts();
+        engineHolder.checkScriptElements(values.size());
+        if (batched) {
+            final Object[] results = Utils.evalBatch(engineHolder, expression, values, collect);
+            if (results != null) {
+                engineHolder.checkBudget();
+                return results;
+            }
+        }
+        Utils.eval(engineHolder, "res = null");
+        final Object[] results = new Object[values.size()];
+        for (int i = 0; i < results.length; i++) {
+            if (i > 0) {
+                engineHolder.checkBudget();
+            }
+            Utils.eval(engineHolder, expression, values.get(i), "x");
+            if (collect != null) {
+                results[i] = collect.apply(Utils.getObject(engineHolder, "res"));
+            }
+        }
+        return results;
+    }
+
     /**
      * The only method of this interface, see documentation: <a href=
      * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#functions">Functions</a>
@@ -0,0 +1,130 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import static jakarta.json.JsonValue.EMPTY_JSON_OBJECT;
+import static jakarta.json.JsonValue.NULL;
+import static jakarta.json.JsonValue.ValueType.ARRAY;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * Consecutive transformations iterating over the same source array (with the
+ * same "sourcePointer" prefix before the [i] notation) into the same result
+ * array, that are executed in a single pass over the source array. The
+ * expressions of each transformation are applied to each element in the order
+ * of the transformations, producing the same result as executing the
+ * transformations one after another. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#optimizations">Optimizations</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class FusedTransformation extends Transformation {
+    private final List<Transformation> members;
+    private final String sourcePrefix;
+    private final String resultPrefix;
+    private final String[] sourceSuffixes;
+    private final String[] resultSuffixes;
+
+    FusedTransformation(final List<Transformation> members) {
+        super(members.get(0).isAppend(), members.get(0).useResultAsSource(), members.get(0).getSourcePointer(),
+                members.get(0).getResultPointer(), members.get(0).getExpressions(), members.get(0).getFunctions());
+        this.members = Collections.unmodifiableList(new ArrayList<>(members));
+        this.sourcePrefix = getSourcePointer().split("\\[i\\]", -1)[0];
+        this.resultPrefix = getResultPointer().split("\\[i\\]", -1)[0];
+        this.sourceSuffixes = new String[members.size()];
+        this.resultSuffixes = new String[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            sourceSuffixes[i] = members.get(i).getSourcePointer().split("\\[i\\]", -1)[1];
+            resultSuffixes[i] = members.get(i).getResultPointer().split("\\[i\\]", -1)[1];
+        }
+    }
+
+    /**
+     * Checks if two consecutive transformations can be executed in a single pass:
+     * both iterate with a single [i] notation over the same source array into the
+     * same result array, where each produced value is an object in the result
+     * array (the "resultPointer" continues after the [i] notation).
+     *
+     * @param first  the first transformation
+     * @param second the transformation executed after the first transformation
+     * @return true if the transformations can be fused
+     */
+    static boolean canFuse(final Transformation first, final Transformation second) {
+        return isFusible(first) && isFusible(second)
+                && first.getSourcePointer().split("\\[i\\]", -1)[0]
+                        .equals(second.getSourcePointer().split("\\[i\\]", -1)[0])
+                && first.getResultPointer().split("\\[i\\]", -1)[0]
+                        .equals(second.getResultPointer().split("\\[i\\]", -1)[0]);
+    }
+
+    private static boolean isFusible(final Transformation t) {
+        final String[] sourcePointers = t.getSourcePointer().split("\\[i\\]", -1);
+        final String[] resultPointers = t.getResultPointer().split("\\[i\\]", -1);
+        return !t.isAppend() && !t.useResultAsSource() && t.getMemoSize() == 0 && sourcePointers.length == 2
+                && resultPointers.length == 2 && resultPointers[1].startsWith("/");
+    }
+
+    /**
+     * Getter for the fused transformations.
+     *
+     * @return the transformations, in the execution order
+     */
+    List<Transformation> getMembers() {
+        return members;
+    }
+
+    @Override
+    public JsonObject transform(final JsonObject source, final JsonObject result, final EngineHolder engineHolder) {
+        final TransformationCtx ctx = new TransformationCtx(source, result, source, result, this, engineHolder);
+        final JsonValue sourceValue = ctx.getSourceValue(source, sourcePrefix);
+        if (NULL.equals(sourceValue)) {
+            return result;
+        }
+        final JsonProvider provider = engineHolder.getJsonProvider();
+        final JsonValue fixedResult = Utils.fixPath(provider, result, ARRAY, resultPrefix);
+        final JsonValue existing = Utils.getValue(provider, fixedResult, resultPrefix);
+        final List<JsonValue> elements = Utils.isArray(existing) ? existing.asJsonArray() : Collections.emptyList();
+        if (!elements.stream().allMatch(Utils::isObject)) {
+            // the values that are not objects are merged differently, execute unfused
+            JsonObject res = result;
+            for (final Transformation t : members) {
+                res = t.transform(source, res, engineHolder);
+            }
+            return res;
+        }
+        final JsonArray sourceArray = Utils.isArray(sourceValue) ? sourceValue.asJsonArray()
+                : engineHolder.getBuilderFactory().createArrayBuilder().add(sourceValue).build();
+        final List<JsonValue> resultArray = new ArrayList<>(elements);
+        engineHolder.checkIterationElements(sourceArray.size());
+        for (int i = 0; i < sourceArray.size(); i++) {
+            JsonValue element = i < elements.size() ? elements.get(i) : EMPTY_JSON_OBJECT;
+            for (int m = 0; m < members.size(); m++) {
+                // each member counts its iteration elements for the time checks, as when executed unfused
+                engineHolder.countIterationElement();
+                if (!members.get(m).test(sourceArray.get(i))) {
+                    continue;
+                }
+                final TransformationCtx localContext = new TransformationCtx(source, result, sourceArray.get(i),
+                        element, members.get(m), engineHolder, ctx, i);
+                element = members.get(m).doTransform(localContext, sourceSuffixes[m], resultSuffixes[m]);
+            }
+            if (i < resultArray.size()) {
+                resultArray.set(i, element);
+            } else {
+                resultArray.add(element);
+            }
+        }
+        return Utils.replace(provider, fixedResult, resultPrefix,
+                engineHolder.getBuilderFactory().createArrayBuilder(resultArray).build()).asJsonObject();
+    }
+}
@@ -0,0 +1,267 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import static jakarta.json.JsonValue.NULL;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.JsonValue.ValueType;
+
+/**
+ * The "when" clause of a transformation, compiled into a predicate evaluated on
+ * the source document, or on each element of the innermost [i] iteration,
+ * before any expression is executed. The conditions are JSON objects:
+ * <ul>
+ * <li>{"exists": "/pointer"}: the value exists (and is not null)</li>
+ * <li>{"pointer": "/pointer", "equals": value}: the value is equal to the given
+ * value (the numbers are compared by their numeric values)</li>
+ * <li>{"pointer": "/pointer", "type": "string"}: the value has the given type
+ * (string, number, boolean, object or array)</li>
+ * <li>{"not": condition}, {"allOf": [conditions]} and {"anyOf":
+ * [conditions]}: boolean combinations of the conditions</li>
+ * </ul>
+ * The pointers are resolved without creating any objects, and the script engine
+ * is never used. The conditions can also be evaluated at once for all elements
+ * of a homogeneous array of objects, over the primitive {@link Column}s of the
+ * compared values (see {@link Condition#mask(JsonArray, TransformCache)}). See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#conditional-transformations">Conditional
+ * transformations</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class Guard {
+    private Guard() {
+    }
+
+    /**
+     * Compiles the "when" clause into a condition.
+     *
+     * @param when the "when" clause
+     * @return the condition testing the local source values
+     * @throws JsonException thrown when the clause is not a valid condition
+     */
+    static Condition compile(final JsonValue when) {
+        if (!(when instanceof JsonObject)) {
+            throw new JsonException("invalid \"when\" condition: " + when);
+        }
+        final JsonObject condition = when.asJsonObject();
+        if (condition.containsKey("exists")) {
+            final String pointer = condition.getString("exists", null);
+            final String[] tokens = tokens(condition, "exists");
+            return new Condition() {
+                @Override
+                public boolean test(final JsonValue x) {
+                    return !NULL.equals(Utils.getValue(x, tokens));
+                }
+
+                @Override
+                public boolean[] mask(final JsonArray rows, final TransformCache cache) {
+                    final Column column = cache.getColumn(rows, pointer);
+                    return column == null ? Condition.super.mask(rows, cache) : column.present.clone();
+                }
+            };
+        }
+        if (condition.containsKey("not")) {
+            final Condition negated = compile(condition.get("not"));
+            return new Condition() {
+                @Override
+                public boolean test(final JsonValue x) {
+                    return !negated.test(x);
+                }
+
+                @Override
+                public boolean[] mask(final JsonArray rows, final TransformCache cache) {
+                    final boolean[] mask = negated.mask(rows, cache);
+                    for (int i = 0; i < mask.length; i++) {
+                        mask[i] = !mask[i];
+                    }
+                    return mask;
+                }
+            };
+        }
+        if (condition.containsKey("allOf") || condition.containsKey("anyOf")) {
+            final boolean all = condition.containsKey("allOf");
+            final List<Condition> conditions = new ArrayList<>();
+            condition.getJsonArray(all ? "allOf" : "anyOf").forEach(x -> conditions.add(compile(x)));
+            final Condition[] array = conditions.toArray(new Condition[0]);
+            return new Condition() {
+                @Override
+                public boolean test(final JsonValue x) {
+                    for (final Condition c : array) {
+                        if (c.test(x) != all) {
+                            return !all;
+                        }
+                    }
+                    return all;
+                }
+
+                @Override
+                public boolean[] mask(final JsonArray rows, final TransformCache cache) {
+                    final boolean[] mask = new boolean[rows.size()];
+                    Arrays.fill(mask, all);
+                    for (final Condition c : array) {
+                        final boolean[] m = c.mask(rows, cache);
+                        for (int i = 0; i < mask.length; i++) {
+                            mask[i] = all ? mask[i] && m[i] : mask[i] || m[i];
+                        }
+                    }
+                    return mask;
+                }
+            };
+        }
+        final String[] tokens = tokens(condition, "pointer");
+        if (condition.containsKey("equals")) {
+            return equals(condition.getString("pointer"), tokens, condition.get("equals"));
+        }
+        if (condition.containsKey("type")) {
+            final ValueType type = type(condition.getString("type"));
+            return x -> {
+                final ValueType actual = Utils.getValue(x, tokens).getValueType();
+                return actual == type || (type == ValueType.TRUE && actual == ValueType.FALSE);
+            };
+        }
+        throw new JsonException("invalid \"when\" condition: " + when);
+    }
+
+    /**
+     * Returns the pointers read by the "when" clause, relative to the local source
+     * values.
+     *
+     * @param when the "when" clause
+     * @return the pointers
+     */
+    static List<String> pointers(final JsonValue when) {
+        final List<String> pointers = new ArrayList<>();
+        if (when instanceof JsonObject) {
+            final JsonObject condition = when.asJsonObject();
+            for (final String key : List.of("exists", "pointer")) {
+                if (condition.containsKey(key)) {
+                    pointers.add(condition.getString(key));
+                }
+            }
+            if (condition.containsKey("not")) {
+                pointers.addAll(pointers(condition.get("not")));
+            }
+            for (final String key : List.of("allOf", "anyOf")) {
+                if (condition.containsKey(key)) {
+                    condition.getJsonArray(key).forEach(x -> pointers.addAll(pointers(x)));
+                }
+            }
+        }
+        return pointers;
+    }
+
+    private static Condition equals(final String pointer, final String[] tokens, final JsonValue value) {
+        final Object expected = TransformCache.indexKey(value);
+        final Long expectedLong = longKey(expected);
+        return new Condition() {
+            @Override
+            public boolean test(final JsonValue x) {
+                return expected.equals(TransformCache.indexKey(Utils.getValue(x, tokens)));
+            }
+
+            @Override
+            public boolean[] mask(final JsonArray rows, final TransformCache cache) {
+                final Column column = value instanceof JsonString || value instanceof JsonNumber
+                        ? cache.getColumn(rows, pointer)
+                        : null;
+                if (column == null) {
+                    return Condition.super.mask(rows, cache);
+                }
+                final boolean[] mask = new boolean[column.size];
+                if (value instanceof JsonString) {
+                    final int code = column.dictionary.getOrDefault(((JsonString) value).getString(), -1);
+                    final int[] codes = column.codes;
+                    for (int i = 0; i < mask.length; i++) {
+                        mask[i] = code >= 0 && codes[i] == code;
+                    }
+                    return mask;
+                }
+                final long v = expectedLong == null ? 0 : expectedLong;
+                for (int i = 0; i < mask.length; i++) {
+                    if (column.integral[i]) {
+                        mask[i] = expectedLong != null && column.longs[i] == v;
+                    } else if (column.number[i]) {
+                        // e.g., 2.0 is equal to 2
+                        mask[i] = test(rows.get(i));
+                    }
+                }
+                return mask;
+            }
+        };
+    }
+
+    private static Long longKey(final Object key) {
+        if (!(key instanceof BigDecimal)) {
+            return null;
+        }
+        try {
+            return ((BigDecimal) key).longValueExact();
+        } catch (final ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static String[] tokens(final JsonObject condition, final String key) {
+        final String pointer = condition.getString(key, null);
+        final String[] tokens = pointer == null ? null : Utils.tokens(pointer);
+        if (tokens == null) {
+            throw new JsonException("invalid pointer in \"when\" condition: " + condition);
+        }
+        return tokens;
+    }
+
+    private static ValueType type(final String type) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "string":
+                return ValueType.STRING;
+            case "number":
+                return ValueType.NUMBER;
+            case "boolean":
+                return ValueType.TRUE;
+            case "object":
+                return ValueType.OBJECT;
+            case "array":
+                return ValueType.ARRAY;
+            default:
+                throw new JsonException("invalid type in \"when\" condition: " + type);
+        }
+    }
+
+    /**
+     * A compiled condition. The mask of a homogeneous array of objects is
+     * computed over the columns of the compared values when possible, and with
+     * the test of each element otherwise.
+     */
+    interface Condition extends Predicate<JsonValue> {
+        /**
+         * Evaluates the condition for all elements of the array.
+         *
+         * @param rows  the array
+         * @param cache the transform cache holding the columns of the array
+         * @return the results of the condition for each element
+         */
+        default boolean[] mask(final JsonArray rows, final TransformCache cache) {
+            final boolean[] mask = new boolean[rows.size()];
+            for (int i = 0; i < mask.length; i++) {
+                mask[i] = test(rows.get(i));
+            }
+            return mask;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+/**
+ * Generates the identifiers written by the generateUuid function (see
+ * {@link ExprFunction#GENERATE_UUID} and
+ * {@link TransformerFactory#withIdGenerator(IdGenerator)}). The generators
+ * are called concurrently by the transformers and must be thread safe. The
+ * built-in generators are provided by {@link IdGenerators}. See documentation:
+ * <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#id-generators">ID
+ * generators</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    /**
+     * Generates a new identifier.
+     *
+     * @return the identifier
+     */
+    String nextId();
+
+    /**
+     * Generates the given number of new identifiers at once. Generators that can
+     * produce many identifiers cheaper than one by one (e.g., with a single call
+     * to a shared random number generator) override this method.
+     *
+     * @param count the number of identifiers
+     * @return the identifiers
+     */
+    default String[] nextIds(final int count) {
+        final String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+}
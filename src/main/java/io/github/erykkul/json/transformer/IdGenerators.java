@@ -0,0 +1,179 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The built-in identifier generators (see {@link IdGenerator}). See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#id-generators">ID
+ * generators</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class IdGenerators {
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private IdGenerators() {
+    }
+
+    /**
+     * Random (version 4) UUIDs from the shared cryptographically strong random
+     * number generator, as generated by UUID.randomUUID(). This is the default
+     * generator. The batches of identifiers (see {@link #batched(IdGenerator, int)})
+     * are generated with a single call to the shared random number generator.
+     *
+     * @return the generator
+     */
+    public static IdGenerator secureRandomUuid() {
+        return new IdGenerator() {
+            @Override
+            public String nextId() {
+                return UUID.randomUUID().toString();
+            }
+
+            @Override
+            public String[] nextIds(final int count) {
+                final byte[] bytes = new byte[16 * count];
+                secureRandom.nextBytes(bytes);
+                final String[] ids = new String[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = uuid4(toLong(bytes, 16 * i), toLong(bytes, 16 * i + 8));
+                }
+                return ids;
+            }
+        };
+    }
+
+    /**
+     * Random (version 4) UUIDs from the random number generator of the current
+     * thread (ThreadLocalRandom). These UUIDs are generated without any
+     * contention between the threads, but they are predictable and must not be
+     * used as secrets.
+     *
+     * @return the generator
+     */
+    public static IdGenerator randomUuid() {
+        return () -> uuid4(ThreadLocalRandom.current().nextLong(), ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Time-ordered (version 7) UUIDs: the first 48 bits are the Unix time in
+     * milliseconds, followed by a 12-bit counter and 62 random bits from the
+     * random number generator of the current thread. The counter starts at a
+     * random value in each millisecond and is incremented for each UUID generated
+     * by the same thread in the same millisecond, such that the UUIDs generated by
+     * a thread are strictly increasing (also in their string form).
+     *
+     * @return the generator
+     */
+    public static IdGenerator uuidV7() {
+        final ThreadLocal<long[]> state = ThreadLocal.withInitial(() -> new long[2]);
+        return () -> {
+            final long[] last = state.get();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final long now = System.currentTimeMillis();
+            if (now > last[0]) {
+                last[0] = now;
+                last[1] = random.nextInt(0x800);
+            } else if (++last[1] > 0xFFF) {
+                // the counter overflowed, continue in the next millisecond
+                last[0]++;
+                last[1] = random.nextInt(0x800);
+            }
+            final long msb = (last[0] << 16) | 0x7000L | last[1];
+            final long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+            return new UUID(msb, lsb).toString();
+        };
+    }
+
+    /**
+     * Time-ordered ULIDs: 26 characters in the Crockford's base32 encoding of the
+     * 48-bit Unix time in milliseconds followed by 80 random bits from the random
+     * number generator of the current thread. The random part is incremented for
+     * each ULID generated by the same thread in the same millisecond, such that
+     * the ULIDs generated by a thread are strictly increasing.
+     *
+     * @return the generator
+     */
+    public static IdGenerator ulid() {
+        final ThreadLocal<long[]> state = ThreadLocal.withInitial(() -> new long[3]);
+        return () -> {
+            final long[] last = state.get();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final long now = System.currentTimeMillis();
+            if (now > last[0]) {
+                last[0] = now;
+                last[1] = random.nextLong(0x10000);
+                last[2] = random.nextLong();
+            } else if (++last[2] == 0 && ++last[1] > 0xFFFF) {
+                // the random part overflowed, continue in the next millisecond
+                last[0]++;
+                last[1] = 0;
+            }
+            final long hi = (last[0] << 16) | last[1];
+            final long lo = last[2];
+            final char[] chars = new char[26];
+            for (int i = 0; i < chars.length; i++) {
+                final int shift = 125 - 5 * i;
+                final long bits;
+                if (shift >= 64) {
+                    bits = hi >>> (shift - 64);
+                } else if (shift > 59) {
+                    bits = (lo >>> shift) | (hi << (64 - shift));
+                } else {
+                    bits = lo >>> shift;
+                }
+                chars[i] = CROCKFORD[(int) (bits & 31)];
+            }
+            return new String(chars);
+        };
+    }
+
+    /**
+     * Pre-generates the identifiers of the given generator in batches (see
+     * {@link IdGenerator#nextIds(int)}), kept in a buffer of each thread, such
+     * that, e.g., the identifiers of a whole [i] iteration are generated at once.
+     * Notice that the time-ordered identifiers are then timestamped when their
+     * batch is generated.
+     *
+     * @param generator the generator
+     * @param batchSize the number of identifiers generated at once
+     * @return the batched generator
+     */
+    public static IdGenerator batched(final IdGenerator generator, final int batchSize) {
+        final int size = Math.max(batchSize, 1);
+        final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+        return () -> {
+            final Batch batch = batches.get();
+            if (batch.ids == null || batch.next == batch.ids.length) {
+                batch.ids = generator.nextIds(size);
+                batch.next = 0;
+            }
+            return batch.ids[batch.next++];
+        };
+    }
+
+    private static String uuid4(final long msb, final long lsb) {
+        return new UUID((msb & ~0xF000L) | 0x4000L, (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L).toString();
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long res = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            res = (res << 8) | (bytes[i] & 0xFF);
+        }
+        return res;
+    }
+
+    private static final class Batch {
+        private String[] ids;
+        private int next;
+    }
+}
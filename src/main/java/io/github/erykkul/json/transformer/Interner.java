@@ -0,0 +1,164 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import jakarta.json.JsonPointer;
+import jakarta.json.JsonString;
+
+/**
+ * The bounded tables of the interned object keys, short string values and JSON
+ * pointers of a transformer (see
+ * {@link TransformerFactory#withInterning(int)}). The resulting documents with
+ * a repetitive structure then share the instances of their keys and of their
+ * frequent string values, and the pointers are parsed only once. Each table is
+ * a least recently used cache: when it is full, a new value replaces the value
+ * that was not looked up for the longest time, so the values repeated in the
+ * current documents stay interned while the one-off values (e.g., the
+ * identifiers) pass through. The tables are split into segments locked
+ * independently, and are safe for concurrent use. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#interning">Interning</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class Interner {
+    /**
+     * The maximum length of the interned strings, the longer strings are rarely
+     * repeated.
+     */
+    static final int MAX_LENGTH = 64;
+    private static final int SEGMENTS = 16;
+
+    private final Table<String> strings;
+    private final Table<JsonString> values;
+    private final Table<JsonPointer> pointers;
+
+    /**
+     * Class constructor.
+     *
+     * @param maxEntries the maximum number of entries of each table
+     */
+    Interner(final int maxEntries) {
+        this.strings = new Table<>(maxEntries);
+        this.values = new Table<>(maxEntries);
+        this.pointers = new Table<>(maxEntries);
+    }
+
+    /**
+     * Interns the pointer tokens and the string literals known when the
+     * transformer is created.
+     *
+     * @param transformations the transformations of the transformer
+     * @param provider        the JSON provider creating the pointers and the
+     *                        values
+     */
+    void seed(final List<Transformation> transformations, final InterningJsonProvider provider) {
+        for (final Transformation t : transformations) {
+            for (final String pointer : List.of(t.getSourcePointer(), t.getResultPointer())) {
+                for (final String part : pointer.split("\\[i\\]", -1)) {
+                    final String[] tokens = Utils.tokens(part);
+                    if (tokens != null) {
+                        provider.createPointer(part);
+                        for (final String token : tokens) {
+                            intern(token);
+                        }
+                    }
+                }
+            }
+            for (final String expression : t.getExpressions() == null ? List.<String>of() : t.getExpressions()) {
+                if (expression.startsWith("\"") && expression.length() > 1) {
+                    provider.createValue(expression.substring(1, expression.length() - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Interns the string, e.g., an object key.
+     *
+     * @param s the string
+     * @return the interned string, or the string itself when it is too long
+     */
+    String intern(final String s) {
+        return s == null || s.length() > MAX_LENGTH ? s : strings.lookup(s, Function.identity());
+    }
+
+    /**
+     * Interns the JSON string value.
+     *
+     * @param s       the string
+     * @param factory creates the JSON string value when it is not interned yet
+     * @return the interned JSON string value, or a new value when the string is
+     *         too long
+     */
+    JsonString value(final String s, final Function<String, JsonString> factory) {
+        return s.length() > MAX_LENGTH ? factory.apply(s) : values.lookup(s, factory);
+    }
+
+    /**
+     * Interns the JSON pointer.
+     *
+     * @param pointer the JSON pointer string
+     * @param factory parses the JSON pointer when it is not interned yet
+     * @return the interned JSON pointer
+     */
+    JsonPointer pointer(final String pointer, final Function<String, JsonPointer> factory) {
+        return pointers.lookup(pointer, factory);
+    }
+
+    /**
+     * Returns the number of interned strings, values and pointers.
+     *
+     * @return the number of entries in all tables
+     */
+    int size() {
+        return strings.size() + values.size() + pointers.size();
+    }
+
+    /**
+     * A bounded table split into segments, each of them a least recently used
+     * cache holding its share of the entries.
+     */
+    private static final class Table<T> {
+        private final List<Map<String, T>> segments = new ArrayList<>();
+
+        private Table(final int maxEntries) {
+            final int count = Math.max(1, Math.min(SEGMENTS, maxEntries));
+            final int capacity = Math.max(1, maxEntries / count);
+            for (int i = 0; i < count; i++) {
+                segments.add(new LinkedHashMap<>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<String, T> eldest) {
+                        return size() > capacity;
+                    }
+                });
+            }
+        }
+
+        private T lookup(final String key, final Function<String, T> factory) {
+            final Map<String, T> segment = segments.get(Math.floorMod(key.hashCode(), segments.size()));
+            synchronized (segment) {
+                return segment.computeIfAbsent(key, factory);
+            }
+        }
+
+        private int size() {
+            int size = 0;
+            for (final Map<String, T> segment : segments) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
+            }
+            return size;
+        }
+    }
+}
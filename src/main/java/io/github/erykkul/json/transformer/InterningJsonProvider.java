@@ -0,0 +1,414 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonMergePatch;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonPatch;
+import jakarta.json.JsonPatchBuilder;
+import jakarta.json.JsonPointer;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonReaderFactory;
+import jakarta.json.JsonString;
+import jakarta.json.JsonStructure;
+import jakarta.json.JsonValue;
+import jakarta.json.JsonWriter;
+import jakarta.json.JsonWriterFactory;
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+
+/**
+ * The JSON provider of a transformer with interning (see
+ * {@link TransformerFactory#withInterning(int)}), delegating to the configured
+ * provider. The keys of the objects built with its builders, the short string
+ * values and the JSON pointers are looked up in the {@link Interner} of the
+ * transformer. The pointers are parsed only once, so the objects created by
+ * the pointer operations share the key instances of the pointer tokens. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#interning">Interning</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class InterningJsonProvider extends JsonProvider {
+    private final JsonProvider delegate;
+    private final Interner interner;
+
+    /**
+     * Class constructor.
+     *
+     * @param delegate the JSON provider creating the values, builders and
+     *                 pointers
+     * @param interner the interner
+     */
+    InterningJsonProvider(final JsonProvider delegate, final Interner interner) {
+        this.delegate = delegate;
+        this.interner = interner;
+    }
+
+    /**
+     * Interner getter.
+     *
+     * @return the interner of this provider
+     */
+    Interner getInterner() {
+        return interner;
+    }
+
+    @Override
+    public JsonParser createParser(final Reader reader) {
+        return delegate.createParser(reader);
+    }
+
+    @Override
+    public JsonParser createParser(final InputStream in) {
+        return delegate.createParser(in);
+    }
+
+    @Override
+    public JsonParserFactory createParserFactory(final Map<String, ?> config) {
+        return delegate.createParserFactory(config);
+    }
+
+    @Override
+    public JsonGenerator createGenerator(final Writer writer) {
+        return delegate.createGenerator(writer);
+    }
+
+    @Override
+    public JsonGenerator createGenerator(final OutputStream out) {
+        return delegate.createGenerator(out);
+    }
+
+    @Override
+    public JsonGeneratorFactory createGeneratorFactory(final Map<String, ?> config) {
+        return delegate.createGeneratorFactory(config);
+    }
+
+    @Override
+    public JsonReader createReader(final Reader reader) {
+        return delegate.createReader(reader);
+    }
+
+    @Override
+    public JsonReader createReader(final InputStream in) {
+        return delegate.createReader(in);
+    }
+
+    @Override
+    public JsonWriter createWriter(final Writer writer) {
+        return delegate.createWriter(writer);
+    }
+
+    @Override
+    public JsonWriter createWriter(final OutputStream out) {
+        return delegate.createWriter(out);
+    }
+
+    @Override
+    public JsonWriterFactory createWriterFactory(final Map<String, ?> config) {
+        return delegate.createWriterFactory(config);
+    }
+
+    @Override
+    public JsonReaderFactory createReaderFactory(final Map<String, ?> config) {
+        return delegate.createReaderFactory(config);
+    }
+
+    @Override
+    public JsonObjectBuilder createObjectBuilder() {
+        return new ObjectBuilder(delegate.createObjectBuilder());
+    }
+
+    @Override
+    public JsonObjectBuilder createObjectBuilder(final JsonObject object) {
+        return new ObjectBuilder(delegate.createObjectBuilder(object));
+    }
+
+    @Override
+    public JsonObjectBuilder createObjectBuilder(final Map<String, ?> map) {
+        return new ObjectBuilder(delegate.createObjectBuilder(internMap(map)));
+    }
+
+    @Override
+    public JsonArrayBuilder createArrayBuilder() {
+        return delegate.createArrayBuilder();
+    }
+
+    @Override
+    public JsonArrayBuilder createArrayBuilder(final JsonArray array) {
+        return delegate.createArrayBuilder(array);
+    }
+
+    @Override
+    public JsonArrayBuilder createArrayBuilder(final Collection<?> collection) {
+        return delegate.createArrayBuilder(internCollection(collection));
+    }
+
+    @Override
+    public JsonPointer createPointer(final String jsonPointer) {
+        return interner.pointer(jsonPointer, delegate::createPointer);
+    }
+
+    @Override
+    public JsonPatchBuilder createPatchBuilder() {
+        return delegate.createPatchBuilder();
+    }
+
+    @Override
+    public JsonPatchBuilder createPatchBuilder(final JsonArray array) {
+        return delegate.createPatchBuilder(array);
+    }
+
+    @Override
+    public JsonPatch createPatch(final JsonArray array) {
+        return delegate.createPatch(array);
+    }
+
+    @Override
+    public JsonPatch createDiff(final JsonStructure source, final JsonStructure target) {
+        return delegate.createDiff(source, target);
+    }
+
+    @Override
+    public JsonMergePatch createMergePatch(final JsonValue patch) {
+        return delegate.createMergePatch(patch);
+    }
+
+    @Override
+    public JsonMergePatch createMergeDiff(final JsonValue source, final JsonValue target) {
+        return delegate.createMergeDiff(source, target);
+    }
+
+    @Override
+    public JsonBuilderFactory createBuilderFactory(final Map<String, ?> config) {
+        return new BuilderFactory(delegate.createBuilderFactory(config));
+    }
+
+    @Override
+    public JsonString createValue(final String value) {
+        return interner.value(value, delegate::createValue);
+    }
+
+    @Override
+    public JsonNumber createValue(final int value) {
+        return delegate.createValue(value);
+    }
+
+    @Override
+    public JsonNumber createValue(final long value) {
+        return delegate.createValue(value);
+    }
+
+    @Override
+    public JsonNumber createValue(final double value) {
+        return delegate.createValue(value);
+    }
+
+    @Override
+    public JsonNumber createValue(final BigDecimal value) {
+        return delegate.createValue(value);
+    }
+
+    @Override
+    public JsonNumber createValue(final BigInteger value) {
+        return delegate.createValue(value);
+    }
+
+    @Override
+    public JsonNumber createValue(final Number value) {
+        return delegate.createValue(value);
+    }
+
+    private JsonValue internValue(final JsonValue value) {
+        return value instanceof JsonString ? createValue(((JsonString) value).getString()) : value;
+    }
+
+    // the maps and collections from the script engine are copied with their keys and strings interned
+    private Map<String, Object> internMap(final Map<String, ?> map) {
+        final Map<String, Object> res = new LinkedHashMap<>();
+        map.forEach((k, v) -> res.put(interner.intern(k), internObject(v)));
+        return res;
+    }
+
+    private List<Object> internCollection(final Collection<?> collection) {
+        final List<Object> res = new ArrayList<>(collection.size());
+        collection.forEach(x -> res.add(internObject(x)));
+        return res;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object internObject(final Object o) {
+        if (o instanceof String) {
+            return createValue((String) o);
+        } else if (o instanceof JsonValue) {
+            return internValue((JsonValue) o);
+        } else if (o instanceof Map) {
+            return internMap((Map<String, ?>) o);
+        } else if (o instanceof Collection) {
+            return internCollection((Collection<?>) o);
+        }
+        return o;
+    }
+
+    /**
+     * The builder factory creating the interning object builders.
+     */
+    final class BuilderFactory implements JsonBuilderFactory {
+        private final JsonBuilderFactory factory;
+
+        private BuilderFactory(final JsonBuilderFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public JsonObjectBuilder createObjectBuilder() {
+            return new ObjectBuilder(factory.createObjectBuilder());
+        }
+
+        @Override
+        public JsonObjectBuilder createObjectBuilder(final JsonObject object) {
+            return new ObjectBuilder(factory.createObjectBuilder(object));
+        }
+
+        @Override
+        public JsonObjectBuilder createObjectBuilder(final Map<String, Object> object) {
+            return new ObjectBuilder(factory.createObjectBuilder(internMap(object)));
+        }
+
+        @Override
+        public JsonArrayBuilder createArrayBuilder() {
+            return factory.createArrayBuilder();
+        }
+
+        @Override
+        public JsonArrayBuilder createArrayBuilder(final JsonArray array) {
+            return factory.createArrayBuilder(array);
+        }
+
+        @Override
+        public JsonArrayBuilder createArrayBuilder(final Collection<?> collection) {
+            return factory.createArrayBuilder(internCollection(collection));
+        }
+
+        @Override
+        public Map<String, ?> getConfigInUse() {
+            return factory.getConfigInUse();
+        }
+    }
+
+    /**
+     * The object builder interning the keys and the string values.
+     */
+    private final class ObjectBuilder implements JsonObjectBuilder {
+        private final JsonObjectBuilder builder;
+
+        private ObjectBuilder(final JsonObjectBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final JsonValue value) {
+            builder.add(interner.intern(name), internValue(value));
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final String value) {
+            builder.add(interner.intern(name), createValue(value));
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final BigInteger value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final BigDecimal value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final int value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final long value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final double value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final boolean value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder addNull(final String name) {
+            builder.addNull(interner.intern(name));
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final JsonObjectBuilder value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder add(final String name, final JsonArrayBuilder value) {
+            builder.add(interner.intern(name), value);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder addAll(final JsonObjectBuilder other) {
+            other.build().forEach(this::add);
+            return this;
+        }
+
+        @Override
+        public JsonObjectBuilder remove(final String name) {
+            builder.remove(name);
+            return this;
+        }
+
+        @Override
+        public JsonObject build() {
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,625 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonGenerator;
+
+/**
+ * Source documents backed by memory-mapped files, that are parsed lazily. The
+ * objects and arrays index the offsets of their members (or elements) only when
+ * they are accessed for the first time, and the values are parsed only when
+ * they are retrieved, e.g., by the JSON Pointers of the transformations or by
+ * the scripts. This way, the parse time and the heap used by a transformation
+ * depend on the parts of the document read by the transformer, and not on the
+ * size of the file. The returned objects are immutable and can be used
+ * anywhere a JsonObject is accepted. Note that the syntax of the document is
+ * validated only for the parts that are accessed. See documentation:
+ * <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#memory-mapped-source-documents">Memory-mapped
+ * source documents</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class MappedJson {
+    private MappedJson() {
+    }
+
+    /**
+     * Maps the file containing a JSON object into memory, and returns the lazily
+     * parsed object. The file must not be modified while the object is used.
+     *
+     * @param file the path of the file (UTF-8 encoded)
+     * @return the JSON object
+     * @throws IOException   thrown when the file can not be mapped (e.g., when it
+     *                       is larger than 2 GB)
+     * @throws JsonException thrown when the file does not contain a JSON object
+     */
+    public static JsonObject open(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file too large to be mapped: " + file);
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int pos = skipWhitespace(buffer, 0);
+            if (pos + 2 < buffer.limit() && (buffer.get(pos) & 0xFF) == 0xEF) {
+                // UTF-8 byte order mark
+                pos = skipWhitespace(buffer, pos + 3);
+            }
+            if (pos >= buffer.limit() || buffer.get(pos) != '{') {
+                throw new JsonException("JSON object expected at offset " + pos + " of " + file);
+            }
+            return new LazyObject(buffer, pos);
+        }
+    }
+
+    private static JsonValue parseValue(final ByteBuffer buffer, final int pos) {
+        final byte b = buffer.get(pos);
+        switch (b) {
+            case '{':
+                return new LazyObject(buffer, pos);
+            case '[':
+                return new LazyArray(buffer, pos);
+            case '"':
+                return Utils.provider().createValue(parseString(buffer, pos));
+            case 't':
+                expectLiteral(buffer, pos, "true");
+                return JsonValue.TRUE;
+            case 'f':
+                expectLiteral(buffer, pos, "false");
+                return JsonValue.FALSE;
+            case 'n':
+                expectLiteral(buffer, pos, "null");
+                return JsonValue.NULL;
+            default:
+                return parseNumber(buffer, pos);
+        }
+    }
+
+    private static JsonNumber parseNumber(final ByteBuffer buffer, final int pos) {
+        final int end = skipValue(buffer, pos);
+        final String text = ascii(buffer, pos, end);
+        try {
+            final BigDecimal number = new BigDecimal(text);
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                if (text.length() < 10) {
+                    return Utils.provider().createValue(number.intValue());
+                }
+                if (text.length() < 19) {
+                    return Utils.provider().createValue(number.longValue());
+                }
+            }
+            return Utils.provider().createValue(number);
+        } catch (final NumberFormatException e) {
+            throw new JsonException("invalid value at offset " + pos + ": " + text);
+        }
+    }
+
+    private static void expectLiteral(final ByteBuffer buffer, final int pos, final String literal) {
+        final int end = skipValue(buffer, pos);
+        if (!literal.equals(ascii(buffer, pos, end))) {
+            throw new JsonException("invalid value at offset " + pos + ": " + ascii(buffer, pos, end));
+        }
+    }
+
+    private static String ascii(final ByteBuffer buffer, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String parseString(final ByteBuffer buffer, final int pos) {
+        int i = pos + 1;
+        while (i < buffer.limit()) {
+            final byte b = buffer.get(i);
+            if (b == '"') {
+                final byte[] bytes = new byte[i - pos - 1];
+                buffer.get(pos + 1, bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                return parseEscapedString(buffer, pos);
+            }
+            i++;
+        }
+        throw new JsonException("unterminated string at offset " + pos);
+    }
+
+    private static String parseEscapedString(final ByteBuffer buffer, final int pos) {
+        final StringBuilder builder = new StringBuilder();
+        int start = pos + 1;
+        int i = start;
+        while (i < buffer.limit()) {
+            final byte b = buffer.get(i);
+            if (b == '"') {
+                builder.append(utf8(buffer, start, i));
+                return builder.toString();
+            }
+            if (b != '\\') {
+                i++;
+                continue;
+            }
+            builder.append(utf8(buffer, start, i));
+            final byte e = buffer.get(i + 1);
+            switch (e) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    builder.append((char) Integer.parseInt(ascii(buffer, i + 2, i + 6), 16));
+                    i += 4;
+                    break;
+                default:
+                    builder.append((char) e);
+            }
+            i += 2;
+            start = i;
+        }
+        throw new JsonException("unterminated string at offset " + pos);
+    }
+
+    private static String utf8(final ByteBuffer buffer, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipWhitespace(final ByteBuffer buffer, final int pos) {
+        int i = pos;
+        while (i < buffer.limit()) {
+            final byte b = buffer.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipString(final ByteBuffer buffer, final int pos) {
+        int i = pos + 1;
+        while (i < buffer.limit()) {
+            final byte b = buffer.get(i);
+            if (b == '"') {
+                return i + 1;
+            }
+            i += b == '\\' ? 2 : 1;
+        }
+        throw new JsonException("unterminated string at offset " + pos);
+    }
+
+    /**
+     * Returns the offset directly after the value starting at the given offset,
+     * without parsing it (only the strings and the nesting depth are tracked).
+     */
+    private static int skipValue(final ByteBuffer buffer, final int pos) {
+        final byte first = buffer.get(pos);
+        if (first == '"') {
+            return skipString(buffer, pos);
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            int i = pos;
+            while (i < buffer.limit()) {
+                final byte b = buffer.get(i);
+                if (b == '"') {
+                    i = skipString(buffer, i);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+            throw new JsonException("unterminated value at offset " + pos);
+        }
+        int i = pos;
+        while (i < buffer.limit()) {
+            final byte b = buffer.get(i);
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int expect(final ByteBuffer buffer, final int pos, final char expected) {
+        final int i = skipWhitespace(buffer, pos);
+        if (i >= buffer.limit() || buffer.get(i) != expected) {
+            throw new JsonException("'" + expected + "' expected at offset " + i);
+        }
+        return i + 1;
+    }
+
+    private static String toJson(final JsonValue value) {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(writer)) {
+            generator.write(value);
+        }
+        return writer.toString();
+    }
+
+    private static final class LazyObject extends AbstractMap<String, JsonValue> implements JsonObject {
+        private final ByteBuffer buffer;
+        private final int start;
+        private volatile ObjectIndex index;
+
+        private LazyObject(final ByteBuffer buffer, final int start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+
+        private ObjectIndex index() {
+            ObjectIndex result = index;
+            if (result == null) {
+                result = new ObjectIndex(buffer, start);
+                index = result;
+            }
+            return result;
+        }
+
+        @Override
+        public JsonValue get(final Object key) {
+            final Integer i = index().positions.get(key);
+            return i == null ? null : index().value(i);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return index().positions.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return index().keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, JsonValue>> entrySet() {
+            final ObjectIndex idx = index();
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, JsonValue>> iterator() {
+                    return new Iterator<>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < idx.keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, JsonValue> next() {
+                            final String key = idx.keys.get(i);
+                            i++;
+                            return new SimpleImmutableEntry<>(key, idx.value(idx.positions.get(key)));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return idx.keys.size();
+                }
+            };
+        }
+
+        @Override
+        public JsonArray getJsonArray(final String name) {
+            return (JsonArray) get(name);
+        }
+
+        @Override
+        public JsonObject getJsonObject(final String name) {
+            return (JsonObject) get(name);
+        }
+
+        @Override
+        public JsonNumber getJsonNumber(final String name) {
+            return (JsonNumber) get(name);
+        }
+
+        @Override
+        public JsonString getJsonString(final String name) {
+            return (JsonString) get(name);
+        }
+
+        @Override
+        public String getString(final String name) {
+            return getJsonString(name).getString();
+        }
+
+        @Override
+        public String getString(final String name, final String defaultValue) {
+            final JsonValue value = get(name);
+            return value instanceof JsonString ? ((JsonString) value).getString() : defaultValue;
+        }
+
+        @Override
+        public int getInt(final String name) {
+            return getJsonNumber(name).intValue();
+        }
+
+        @Override
+        public int getInt(final String name, final int defaultValue) {
+            final JsonValue value = get(name);
+            return value instanceof JsonNumber ? ((JsonNumber) value).intValue() : defaultValue;
+        }
+
+        @Override
+        public boolean getBoolean(final String name) {
+            final JsonValue value = get(name);
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            if (value == JsonValue.TRUE) {
+                return true;
+            }
+            if (value == JsonValue.FALSE) {
+                return false;
+            }
+            throw new ClassCastException();
+        }
+
+        @Override
+        public boolean getBoolean(final String name, final boolean defaultValue) {
+            final JsonValue value = get(name);
+            return value == JsonValue.TRUE || (value != JsonValue.FALSE && defaultValue);
+        }
+
+        @Override
+        public boolean isNull(final String name) {
+            return JsonValue.NULL.equals(get(name));
+        }
+
+        @Override
+        public ValueType getValueType() {
+            return ValueType.OBJECT;
+        }
+
+        @Override
+        public String toString() {
+            return toJson(this);
+        }
+    }
+
+    private static final class ObjectIndex {
+        private final ByteBuffer buffer;
+        private final List<String> keys = new ArrayList<>();
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final List<Integer> offsets = new ArrayList<>();
+        private final JsonValue[] values;
+
+        private ObjectIndex(final ByteBuffer buffer, final int start) {
+            this.buffer = buffer;
+            int pos = skipWhitespace(buffer, start + 1);
+            if (pos < buffer.limit() && buffer.get(pos) == '}') {
+                values = new JsonValue[0];
+                return;
+            }
+            while (true) {
+                pos = skipWhitespace(buffer, pos);
+                if (pos >= buffer.limit() || buffer.get(pos) != '"') {
+                    throw new JsonException("member name expected at offset " + pos);
+                }
+                final String key = parseString(buffer, pos);
+                pos = skipWhitespace(buffer, expect(buffer, skipString(buffer, pos), ':'));
+                final Integer existing = positions.get(key);
+                if (existing == null) {
+                    positions.put(key, offsets.size());
+                    keys.add(key);
+                    offsets.add(pos);
+                } else {
+                    // duplicate member names: the last value wins
+                    offsets.set(existing, pos);
+                }
+                pos = skipWhitespace(buffer, skipValue(buffer, pos));
+                if (pos < buffer.limit() && buffer.get(pos) == ',') {
+                    pos++;
+                } else {
+                    expect(buffer, pos, '}');
+                    break;
+                }
+            }
+            values = new JsonValue[offsets.size()];
+        }
+
+        private JsonValue value(final int i) {
+            // the values are parsed once, such that the same instance is returned on each access
+            synchronized (values) {
+                if (values[i] == null) {
+                    values[i] = parseValue(buffer, offsets.get(i));
+                }
+                return values[i];
+            }
+        }
+    }
+
+    private static final class LazyArray extends AbstractList<JsonValue> implements JsonArray {
+        private final ByteBuffer buffer;
+        private final int start;
+        private volatile ArrayIndex index;
+
+        private LazyArray(final ByteBuffer buffer, final int start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+
+        private ArrayIndex index() {
+            ArrayIndex result = index;
+            if (result == null) {
+                result = new ArrayIndex(buffer, start);
+                index = result;
+            }
+            return result;
+        }
+
+        @Override
+        public JsonValue get(final int i) {
+            return index().value(i);
+        }
+
+        @Override
+        public int size() {
+            return index().offsets.length;
+        }
+
+        @Override
+        public JsonObject getJsonObject(final int i) {
+            return (JsonObject) get(i);
+        }
+
+        @Override
+        public JsonArray getJsonArray(final int i) {
+            return (JsonArray) get(i);
+        }
+
+        @Override
+        public JsonNumber getJsonNumber(final int i) {
+            return (JsonNumber) get(i);
+        }
+
+        @Override
+        public JsonString getJsonString(final int i) {
+            return (JsonString) get(i);
+        }
+
+        @Override
+        public <T extends JsonValue> List<T> getValuesAs(final Class<T> clazz) {
+            return stream().map(clazz::cast).collect(Collectors.toUnmodifiableList());
+        }
+
+        @Override
+        public String getString(final int i) {
+            return getJsonString(i).getString();
+        }
+
+        @Override
+        public String getString(final int i, final String defaultValue) {
+            final JsonValue value = i >= 0 && i < size() ? get(i) : null;
+            return value instanceof JsonString ? ((JsonString) value).getString() : defaultValue;
+        }
+
+        @Override
+        public int getInt(final int i) {
+            return getJsonNumber(i).intValue();
+        }
+
+        @Override
+        public int getInt(final int i, final int defaultValue) {
+            final JsonValue value = i >= 0 && i < size() ? get(i) : null;
+            return value instanceof JsonNumber ? ((JsonNumber) value).intValue() : defaultValue;
+        }
+
+        @Override
+        public boolean getBoolean(final int i) {
+            final JsonValue value = get(i);
+            if (value == JsonValue.TRUE) {
+                return true;
+            }
+            if (value == JsonValue.FALSE) {
+                return false;
+            }
+            throw new ClassCastException();
+        }
+
+        @Override
+        public boolean getBoolean(final int i, final boolean defaultValue) {
+            final JsonValue value = i >= 0 && i < size() ? get(i) : null;
+            return value == JsonValue.TRUE || (value != JsonValue.FALSE && defaultValue);
+        }
+
+        @Override
+        public boolean isNull(final int i) {
+            return JsonValue.NULL.equals(get(i));
+        }
+
+        @Override
+        public ValueType getValueType() {
+            return ValueType.ARRAY;
+        }
+
+        @Override
+        public String toString() {
+            return toJson(this);
+        }
+    }
+
+    private static final class ArrayIndex {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final JsonValue[] values;
+
+        private ArrayIndex(final ByteBuffer buffer, final int start) {
+            this.buffer = buffer;
+            final List<Integer> found = new ArrayList<>();
+            int pos = skipWhitespace(buffer, start + 1);
+            if (pos >= buffer.limit() || buffer.get(pos) != ']') {
+                while (true) {
+                    pos = skipWhitespace(buffer, pos);
+                    found.add(pos);
+                    pos = skipWhitespace(buffer, skipValue(buffer, pos));
+                    if (pos < buffer.limit() && buffer.get(pos) == ',') {
+                        pos++;
+                    } else {
+                        expect(buffer, pos, ']');
+                        break;
+                    }
+                }
+            }
+            offsets = found.stream().mapToInt(Integer::intValue).toArray();
+            values = new JsonValue[offsets.length];
+        }
+
+        private JsonValue value(final int i) {
+            synchronized (values) {
+                if (values[i] == null) {
+                    values[i] = parseValue(buffer, offsets[i]);
+                }
+                return values[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonPatch;
+import jakarta.json.JsonPatchBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * The regions of the resulting document that can be written by the
+ * transformations of a transformer. Each transformation edits the resulting
+ * document only below the static prefix of its "resultPointer" (the part
+ * before the [i] notation), creating the missing objects on the way there, so
+ * the resulting document consists of these regions only. The regions are kept
+ * in a tree, where the edits of a region overwrite the edits of the regions
+ * below it. A JSON Patch (RFC 6902) transforming a previous version of the
+ * resulting document into the new one is then computed after the transform, by
+ * comparing only the values in these regions, and by removing everything else
+ * from the previous version: a region-pruned diff, not a record of the edits
+ * made by the transformations. The arrays are compared after skipping their
+ * common first and last elements, so the elements inserted in (or removed
+ * from) one place of an array produce only the "add" (or "remove") operations
+ * of these elements. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#json-patch-output">JSON
+ * Patch output</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class PatchScope {
+    private final Node root;
+
+    private PatchScope(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Computes the regions of the resulting document written by the
+     * transformations.
+     *
+     * @param transformations the transformations
+     * @return the patch scope
+     */
+    static PatchScope of(final List<Transformation> transformations) {
+        final Node root = new Node();
+        for (final Transformation t : transformations) {
+            final String[] tokens = Utils.tokens(t.getResultPointer().split("\\[i\\]", -1)[0]);
+            Node node = root;
+            for (int i = 0; tokens != null && i < tokens.length && !node.written; i++) {
+                node = node.children.computeIfAbsent(tokens[i], x -> new Node());
+            }
+            // an invalid pointer leaves the whole document as written
+            node.written = true;
+            node.children.clear();
+        }
+        return new PatchScope(root);
+    }
+
+    /**
+     * Computes the JSON Patch transforming the base document into the resulting
+     * document, where the resulting document was produced by the transformations
+     * of this scope.
+     *
+     * @param provider the JSON provider creating the patch
+     * @param base     the base document, e.g., the previously stored resulting
+     *                 document
+     * @param result   the resulting document
+     * @return the patch
+     */
+    JsonPatch diff(final JsonProvider provider, final JsonObject base, final JsonObject result) {
+        final JsonPatchBuilder builder = provider.createPatchBuilder();
+        diff(builder, root, "", base, result);
+        return builder.build();
+    }
+
+    private static void diff(final JsonPatchBuilder builder, final Node node, final String path,
+            final JsonValue base, final JsonValue result) {
+        if (node.written || !(base instanceof JsonObject) || !(result instanceof JsonObject)) {
+            diffValues(builder, path, base, result);
+            return;
+        }
+        final JsonObject baseObject = (JsonObject) base;
+        final JsonObject resultObject = (JsonObject) result;
+        for (final String key : baseObject.keySet()) {
+            if (!node.children.containsKey(key)) {
+                // not written by any transformation, it is not present in the resulting document
+                builder.remove(path + "/" + escape(key));
+            }
+        }
+        node.children.forEach((k, v) -> diff(builder, v, path + "/" + escape(k), baseObject.get(k),
+                resultObject.get(k)));
+    }
+
+    private static void diffValues(final JsonPatchBuilder builder, final String path, final JsonValue base,
+            final JsonValue result) {
+        if (base == null || result == null) {
+            if (result != null) {
+                builder.add(path, result);
+            } else if (base != null) {
+                builder.remove(path);
+            }
+            return;
+        }
+        if (base == result || base.equals(result)) {
+            return;
+        }
+        if (base instanceof JsonObject && result instanceof JsonObject) {
+            final JsonObject baseObject = (JsonObject) base;
+            final JsonObject resultObject = (JsonObject) result;
+            baseObject.keySet().stream().filter(x -> !resultObject.containsKey(x))
+                    .forEach(x -> builder.remove(path + "/" + escape(x)));
+            resultObject.forEach((k, v) -> diffValues(builder, path + "/" + escape(k), baseObject.get(k), v));
+        } else if (base instanceof JsonArray && result instanceof JsonArray) {
+            diffArrays(builder, path, (JsonArray) base, (JsonArray) result);
+        } else {
+            builder.replace(path, result);
+        }
+    }
+
+    // the common first and last elements are skipped, the elements in between are compared by index: the extra
+    // elements are inserted before the common last elements (or added at the end), the missing ones are removed
+    // (starting with the last one)
+    private static void diffArrays(final JsonPatchBuilder builder, final String path, final JsonArray base,
+            final JsonArray result) {
+        final int min = Math.min(base.size(), result.size());
+        int prefix = 0;
+        while (prefix < min && equal(base.get(prefix), result.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < min - prefix && equal(base.get(base.size() - 1 - suffix),
+                result.get(result.size() - 1 - suffix))) {
+            suffix++;
+        }
+        final int baseEnd = base.size() - suffix;
+        final int resultEnd = result.size() - suffix;
+        final int common = Math.min(baseEnd, resultEnd);
+        for (int i = prefix; i < common; i++) {
+            diffValues(builder, path + "/" + i, base.get(i), result.get(i));
+        }
+        for (int i = common; i < resultEnd; i++) {
+            builder.add(path + "/" + (suffix == 0 ? "-" : String.valueOf(i)), result.get(i));
+        }
+        for (int i = baseEnd - 1; i >= common; i--) {
+            builder.remove(path + "/" + i);
+        }
+    }
+
+    private static boolean equal(final JsonValue a, final JsonValue b) {
+        return a == b || a.equals(b);
+    }
+
+    private static String escape(final String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * A node of the region tree: a written node is the root of a region written
+     * by a transformation, the other nodes are the objects containing the
+     * regions.
+     */
+    private static final class Node {
+        private boolean written;
+        private final Map<String, Node> children = new HashMap<>();
+    }
+}
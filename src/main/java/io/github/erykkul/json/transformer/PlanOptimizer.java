@@ -0,0 +1,317 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Optimizations of the transformations plan, executed by the transformer
+ * factory when a new transformer is created. The optimizations never change the
+ * resulting documents, they only skip work that is proven to be redundant. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class PlanOptimizer {
+    private static final Logger logger = Logger.getLogger(PlanOptimizer.class.getName());
+    private static final Set<String> engineFunctions = Set.of("script", "filter", "map", "reduce");
+    private static final Set<String> regionFunctions = Set.of("copy", "move", "remove", "generateUuid", "sum",
+            "count", "min", "max", "avg", "distinctCount", "lookup", "join");
+
+    private PlanOptimizer() {
+    }
+
+    /**
+     * Removes the transformations that only write values in the resulting document
+     * that are overwritten or removed by a later transformation, before any other
+     * transformation can read them. The analysis is conservative: transformations
+     * using the result as source, or calling functions registered by the user (or
+     * unknown functions) are treated as reading the whole resulting document.
+     * Transformations using the script engine are only removed when no later
+     * transformation uses the script engine (they could define variables used by
+     * later scripts).
+     *
+     * @param transformations the transformations in the execution order
+     * @param userFunctions   the names of the functions registered by the user
+     * @param diagnostics     the list where the skipped transformations are
+     *                        reported
+     * @return the transformations that need to be executed
+     */
+    static List<Transformation> eliminateDeadStores(final List<Transformation> transformations,
+            final Set<String> userFunctions, final List<String> diagnostics) {
+        final List<Info> plan = new ArrayList<>();
+        for (int i = 0; i < transformations.size(); i++) {
+            plan.add(new Info(i, transformations.get(i), userFunctions));
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int j = 0; j < plan.size() && !changed; j++) {
+                final int k = killedBy(plan, j);
+                if (k >= 0) {
+                    final String diagnostic = "transformation " + plan.get(j).index + " (" + plan.get(j).description()
+                            + ") skipped: its result is overwritten by transformation " + plan.get(k).index + " ("
+                            + plan.get(k).description() + ")";
+                    logger.fine(diagnostic);
+                    diagnostics.add(diagnostic);
+                    plan.remove(j);
+                    changed = true;
+                }
+            }
+        }
+        final List<Transformation> result = new ArrayList<>();
+        plan.forEach(x -> result.add(x.transformation));
+        return result;
+    }
+
+    /**
+     * Fuses the runs of consecutive transformations iterating over the same source
+     * array into the same result array (see
+     * {@link FusedTransformation#canFuse(Transformation, Transformation)}), such
+     * that they are executed in a single pass over that array. Transformations
+     * calling functions registered by the user (or unknown functions) are not
+     * fused, and at most one transformation in each run can use the script
+     * engine, such that the scripts are executed in the same order as without
+     * fusing.
+     *
+     * @param transformations the transformations in the execution order
+     * @param userFunctions   the names of the functions registered by the user
+     * @param diagnostics     the list where the fused transformations are reported
+     * @return the transformations that need to be executed
+     */
+    static List<Transformation> fuse(final List<Transformation> transformations, final Set<String> userFunctions,
+            final List<String> diagnostics) {
+        final List<Transformation> result = new ArrayList<>();
+        int start = 0;
+        while (start < transformations.size()) {
+            final Info first = new Info(start, transformations.get(start), userFunctions);
+            int engines = first.engine ? 1 : 0;
+            int end = start + 1;
+            while (!first.opaque && end < transformations.size()
+                    && FusedTransformation.canFuse(transformations.get(end - 1), transformations.get(end))) {
+                final Info next = new Info(end, transformations.get(end), userFunctions);
+                if (next.opaque || engines + (next.engine ? 1 : 0) > 1) {
+                    break;
+                }
+                engines += next.engine ? 1 : 0;
+                end++;
+            }
+            if (end - start > 1) {
+                final String prefix = first.transformation.getSourcePointer().split("\\[i\\]", -1)[0];
+                final String diagnostic = (end - start) + " transformations over \"" + prefix
+                        + "[i]\" fused into a single pass";
+                logger.fine(diagnostic);
+                diagnostics.add(diagnostic);
+                result.add(new FusedTransformation(transformations.subList(start, end)));
+            } else {
+                result.add(first.transformation);
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Splits the transformations into the groups writing the same field of the
+     * resulting document, when the transformer can be streamed: no transformation
+     * reads the resulting document (uses the result as source or calls functions
+     * registered by the user, or unknown functions), every transformation writes
+     * inside a single field of the resulting document, and all transformations
+     * writing the same field are consecutive. Each field is then written only
+     * once, in the order of the groups, and it can be written to the output as
+     * soon as its group is executed.
+     *
+     * @param transformations the transformations in the execution order
+     * @param userFunctions   the names of the functions registered by the user
+     * @return the groups in the execution order, or null when the transformer can
+     *         not be streamed
+     */
+    static List<StreamingGroup> streamingGroups(final List<Transformation> transformations,
+            final Set<String> userFunctions) {
+        final List<StreamingGroup> groups = new ArrayList<>();
+        final Set<String> written = new HashSet<>();
+        for (int i = 0; i < transformations.size(); i++) {
+            final Transformation t = transformations.get(i);
+            final List<String> region = staticTokens(t.getResultPointer());
+            if (t.useResultAsSource() || new Info(i, t, userFunctions).opaque || region.isEmpty()) {
+                return null;
+            }
+            final String field = region.get(0);
+            final StreamingGroup last = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (last != null && last.field.equals(field)) {
+                last.transformations.add(t);
+                continue;
+            }
+            if (!written.add(field)) {
+                return null;
+            }
+            groups.add(new StreamingGroup(field));
+            groups.get(groups.size() - 1).transformations.add(t);
+        }
+        return groups;
+    }
+
+    private static int killedBy(final List<Info> plan, final int j) {
+        final Info dead = plan.get(j);
+        if (dead.opaque) {
+            return -1;
+        }
+        if (dead.engine && plan.subList(j + 1, plan.size()).stream().anyMatch(x -> x.engine || x.opaque)) {
+            return -1;
+        }
+        for (int m = j + 1; m < plan.size(); m++) {
+            final Info later = plan.get(m);
+            if (later.opaque || later.useResultAsSource) {
+                return -1;
+            }
+            for (final Kill kill : later.kills) {
+                if (isPrefix(kill.pointer, dead.region) && notTouchedBetween(plan, j, m, kill.anchor)) {
+                    return m;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean notTouchedBetween(final List<Info> plan, final int j, final int k,
+            final List<String> anchor) {
+        if (anchor.isEmpty()) {
+            return true;
+        }
+        // the anchor value and each of its ancestors might be created by the dead
+        // transformation, any write outside of the anchor (next to one of them, or
+        // replacing one of them) could then change the order of the fields in the
+        // resulting document
+        for (int m = j + 1; m < k; m++) {
+            if (!isPrefix(anchor, plan.get(m).region)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPrefix(final List<String> prefix, final List<String> tokens) {
+        return prefix.size() <= tokens.size() && prefix.equals(tokens.subList(0, prefix.size()));
+    }
+
+    private static boolean isIndex(final String token) {
+        return "-".equals(token) || (!token.isEmpty() && token.chars().allMatch(Character::isDigit));
+    }
+
+    private static List<String> staticTokens(final String pointer) {
+        final String[] tokens = Utils.tokens(pointer.split("\\[i\\]", -1)[0]);
+        return tokens == null ? Collections.emptyList() : Arrays.asList(tokens);
+    }
+
+    private static final class Info {
+        private final int index;
+        private final Transformation transformation;
+        private final List<String> region;
+        private final boolean useResultAsSource;
+        private final List<Kill> kills = new ArrayList<>();
+        private boolean opaque;
+        private boolean engine;
+
+        private Info(final int index, final Transformation t, final Set<String> userFunctions) {
+            this.index = index;
+            this.transformation = t;
+            this.region = staticTokens(t.getResultPointer());
+            this.useResultAsSource = t.useResultAsSource();
+            final List<String> removed = new ArrayList<>();
+            boolean overwritten = t.getExpressions().isEmpty();
+            boolean onlyRemoves = true;
+            for (final String expression : t.getExpressions()) {
+                if (expression.startsWith("\"")) {
+                    overwritten = true;
+                    continue;
+                }
+                if (expression.isEmpty()) {
+                    continue;
+                }
+                final int idx = expression.indexOf('(');
+                final String name = idx < 0 ? expression : expression.substring(0, idx);
+                opaque |= userFunctions.contains(name)
+                        || (!engineFunctions.contains(name) && !regionFunctions.contains(name));
+                engine |= engineFunctions.contains(name);
+                final String[] tokens = "remove".equals(name) && idx > 0
+                        ? Utils.tokens(expression.substring(idx + 1, expression.length() - 1).trim())
+                        : null;
+                if (tokens != null && tokens.length == 1 && !isIndex(tokens[0])) {
+                    removed.add(tokens[0]);
+                } else {
+                    onlyRemoves = false;
+                }
+            }
+            final boolean unconditional = !t.isAppend() && !t.useResultAsSource() && t.getWhen() == null
+                    && t.getSourcePointer().isEmpty()
+                    && !t.getResultPointer().contains("[i]") && Utils.tokens(t.getResultPointer()) != null
+                    && region.stream().noneMatch(PlanOptimizer::isIndex);
+            if (!unconditional || opaque) {
+                return;
+            }
+            if (overwritten) {
+                kills.add(new Kill(region, region));
+            } else if (onlyRemoves) {
+                for (final String token : removed) {
+                    final List<String> pointer = new ArrayList<>(region);
+                    pointer.add(token);
+                    kills.add(new Kill(pointer, region));
+                }
+            }
+        }
+
+        private String description() {
+            return "\"" + transformation.getSourcePointer() + "\" -> \"" + transformation.getResultPointer() + "\"";
+        }
+    }
+
+    /**
+     * The consecutive transformations writing the same field of the resulting
+     * document.
+     */
+    static final class StreamingGroup {
+        private final String field;
+        private final List<Transformation> transformations = new ArrayList<>();
+
+        private StreamingGroup(final String field) {
+            this.field = field;
+        }
+
+        String getField() {
+            return field;
+        }
+
+        List<Transformation> getTransformations() {
+            return transformations;
+        }
+
+        boolean isAppendOnly() {
+            return transformations.stream().allMatch(Transformation::isStreamableAppend);
+        }
+    }
+
+    /**
+     * A value that is overwritten (or removed) by a transformation, together with
+     * the anchor: the value that remains in the resulting document at the same
+     * position in its parent object, i.e., the value itself when overwritten, or
+     * its parent when removed.
+     */
+    private static final class Kill {
+        private final List<String> pointer;
+        private final List<String> anchor;
+
+        private Kill(final List<String> pointer, final List<String> anchor) {
+            this.pointer = pointer;
+            this.anchor = anchor;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import jakarta.json.stream.JsonParsingException;
+
+/**
+ * The parts of the source documents that can be read by the transformations of
+ * a transformer, computed from the source pointers and the static arguments of
+ * the built-in functions. A projection is used to parse only these parts of a
+ * source document, skipping everything else. It is widened to whole subtrees
+ * wherever the transformations can see everything: the values passed to the
+ * scripts, the values copied without expressions, and the whole document when
+ * a function registered by the user (or an unknown function) is called. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#projection-pushdown">Projection
+ * pushdown</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class SourceProjection {
+    private static final Set<String> aggregateFunctions = Set.of("sum", "count", "min", "max", "avg",
+            "distinctCount");
+    private static final Set<String> scriptFunctions = Set.of("script", "filter", "map", "reduce");
+    private static final Set<String> lookupFunctions = Set.of("lookup", "join");
+    private static final Set<String> builtinFunctions = Set.of("copy", "move", "remove", "generateUuid", "script",
+            "filter", "map", "reduce", "sum", "count", "min", "max", "avg", "distinctCount", "lookup", "join");
+
+    /**
+     * The projection keeping the whole source document.
+     */
+    static final SourceProjection WHOLE_DOCUMENT = new SourceProjection(Node.fullNode());
+
+    private final Node root;
+
+    private SourceProjection(final Node root) {
+        this.root = root;
+        root.resolve();
+    }
+
+    /**
+     * Computes the projection of the source documents read by the
+     * transformations.
+     *
+     * @param transformations the transformations in the execution order
+     * @param userFunctions   the names of the functions registered by the user
+     * @return the projection
+     */
+    static SourceProjection of(final List<Transformation> transformations, final Set<String> userFunctions) {
+        final Node root = new Node();
+        for (final Transformation t : transformations) {
+            if (t instanceof FusedTransformation) {
+                ((FusedTransformation) t).getMembers().forEach(x -> add(root, x, userFunctions));
+            } else {
+                add(root, t, userFunctions);
+            }
+        }
+        return new SourceProjection(root);
+    }
+
+    /**
+     * Parses the JSON object from the input stream with the default JSON provider
+     * (see {@link Utils#provider()}), skipping the values outside this
+     * projection. The input stream is not closed.
+     *
+     * @param in the input stream
+     * @return the projected object
+     */
+    JsonObject read(final InputStream in) {
+        return read(in, Utils.provider(), Utils.builderFactory());
+    }
+
+    /**
+     * Parses the JSON object from the input stream, skipping the values outside
+     * this projection. The input stream is not closed.
+     *
+     * @param in             the input stream
+     * @param provider       the JSON provider creating the parser
+     * @param builderFactory the builder factory of the projected objects and
+     *                       arrays
+     * @return the projected object
+     */
+    JsonObject read(final InputStream in, final JsonProvider provider, final JsonBuilderFactory builderFactory) {
+        final JsonParser parser = provider.createParser(new FilterInputStream(in) {
+            @Override
+            public void close() {
+            }
+        });
+        try (parser) {
+            return readObject(parser, builderFactory);
+        }
+    }
+
+    /**
+     * Reads the JSON object starting at the next event of the parser, skipping the values outside this projection.
+     *
+     * @param parser         the parser
+     * @param builderFactory the builder factory of the projected objects and
+     *                       arrays
+     * @return the projected object
+     */
+    JsonObject readObject(final JsonParser parser, final JsonBuilderFactory builderFactory) {
+        if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+            throw new JsonParsingException("JSON object expected", parser.getLocation());
+        }
+        if (root.full) {
+            return interning(builderFactory) ? readAll(parser, builderFactory, Event.START_OBJECT).asJsonObject()
+                    : parser.getObject();
+        }
+        return readObject(parser, builderFactory, root);
+    }
+
+    /**
+     * Combines the projections, e.g., of several transformers transforming the
+     * same source document.
+     *
+     * @param projections the projections
+     * @return the projection reading everything read by any of the projections
+     */
+    static SourceProjection union(final List<SourceProjection> projections) {
+        Node root = new Node();
+        for (final SourceProjection projection : projections) {
+            root = Node.union(root, projection.root);
+        }
+        return new SourceProjection(root);
+    }
+
+    /**
+     * Synthesizes a source document with all the paths of this projection: the
+     * object fields are present, the iterated arrays have two elements, the
+     * aggregated values are numbers and all other values are strings.
+     *
+     * @return the sample document
+     */
+    JsonObject sample() {
+        final JsonValue sample = sample(root, false);
+        return sample instanceof JsonObject ? (JsonObject) sample : JsonValue.EMPTY_JSON_OBJECT;
+    }
+
+    private static JsonValue sample(final Node node, final boolean number) {
+        if (!node.fields.isEmpty()) {
+            final JsonObjectBuilder builder = Json.createObjectBuilder();
+            node.fields.forEach((k, v) -> builder.add(k, sample(v, false)));
+            return builder.build();
+        }
+        if (node.elements != null || node.members != null) {
+            final JsonValue element = node.elements != null ? sample(node.elements, false)
+                    : sample(node.members, true);
+            return Json.createArrayBuilder().add(element).add(element).build();
+        }
+        return number ? Json.createValue(1) : Json.createValue("sample");
+    }
+
+    private static void add(final Node root, final Transformation t, final Set<String> userFunctions) {
+        if (t.useResultAsSource()) {
+            return;
+        }
+        // the nodes of the document and of the elements of each [i] iteration, followed by the source node
+        final List<Node> levels = path(root, t.getSourcePointer());
+        if (levels != null && t.getWhen() != null) {
+            // the condition is evaluated on the element of the innermost [i] iteration, or on the document
+            Guard.pointers(t.getWhen()).forEach(x -> widen(relative(levels.subList(0, levels.size() - 1), x)));
+        }
+        if (levels == null || t.getExpressions().isEmpty()) {
+            widen(levels == null ? root : levels.get(levels.size() - 1));
+            return;
+        }
+        final Node node = levels.get(levels.size() - 1);
+        for (final String expression : t.getExpressions()) {
+            if (expression.startsWith("\"") || expression.isEmpty()) {
+                continue;
+            }
+            final int idx = expression.indexOf('(');
+            final String name = idx < 0 ? expression : expression.substring(0, idx);
+            final String arg = idx < 0 || !expression.endsWith(")") ? ""
+                    : expression.substring(idx + 1, expression.length() - 1);
+            final String[] args = arg.split(",");
+            if (userFunctions.contains(name) || !builtinFunctions.contains(name)) {
+                widen(root);
+            } else if ("copy".equals(name)) {
+                widen(relative(levels, args[0].trim()));
+            } else if (scriptFunctions.contains(name)) {
+                widen(node);
+            } else if (aggregateFunctions.contains(name)) {
+                if (node.members == null) {
+                    node.members = new Node();
+                }
+                widen(relative(List.of(node.members), args[0].trim()));
+            } else if (lookupFunctions.contains(name) && args.length > 2) {
+                widen(relative(List.of(root), args[0].trim()));
+                widen(relative(levels, args[2].trim()));
+            }
+        }
+    }
+
+    private static Node relative(final List<Node> levels, final String pointer) {
+        int level = levels.size() - 1;
+        String rest = pointer;
+        while (TransformationCtx.isAncestorPointer(rest)) {
+            // the source node is below the element node of the last [i] iteration
+            level = level == levels.size() - 1 ? level - 2 : level - 1;
+            rest = rest.substring(Math.min(3, rest.length()));
+        }
+        if (level < 0) {
+            return new Node();
+        }
+        final List<Node> res = path(levels.get(level),
+                level == levels.size() - 1 || rest.isEmpty() ? rest : "/" + rest);
+        return res == null ? levels.get(level) : res.get(res.size() - 1);
+    }
+
+    private static List<Node> path(final Node from, final String pointer) {
+        final String[] parts = pointer.split("\\[i\\]", -1);
+        final List<Node> levels = new ArrayList<>();
+        Node node = from;
+        levels.add(node);
+        for (int i = 0; i < parts.length; i++) {
+            final String[] tokens = Utils.tokens(parts[i]);
+            if (tokens == null) {
+                return null;
+            }
+            for (final String token : tokens) {
+                node = node.fields.computeIfAbsent(token, x -> new Node());
+            }
+            if (i < parts.length - 1) {
+                if (node.elements == null) {
+                    node.elements = new Node();
+                }
+                node = node.elements;
+                levels.add(node);
+            }
+        }
+        levels.add(node);
+        return levels;
+    }
+
+    private static void widen(final Node node) {
+        node.full = true;
+    }
+
+    private static JsonObject readObject(final JsonParser parser, final JsonBuilderFactory builderFactory,
+            final Node node) {
+        final JsonObjectBuilder builder = builderFactory.createObjectBuilder();
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            final String key = parser.getString();
+            event = parser.next();
+            final Node child = node.objectFields.getOrDefault(key, node.otherObjectFields);
+            if (child == null) {
+                skip(parser, event);
+            } else {
+                builder.add(key, readValue(parser, builderFactory, event, child));
+            }
+        }
+        return builder.build();
+    }
+
+    private static JsonValue readArray(final JsonParser parser, final JsonBuilderFactory builderFactory,
+            final Node node) {
+        final JsonArrayBuilder builder = builderFactory.createArrayBuilder();
+        Event event;
+        int idx = 0;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            final Node child = node.arrayIndexes.getOrDefault(idx++, node.otherArrayElements);
+            if (child == null) {
+                // the skipped elements are kept as null values, such that the indexes do not change
+                skip(parser, event);
+                builder.addNull();
+            } else {
+                builder.add(readValue(parser, builderFactory, event, child));
+            }
+        }
+        return builder.build();
+    }
+
+    private static JsonValue readValue(final JsonParser parser, final JsonBuilderFactory builderFactory,
+            final Event event, final Node node) {
+        if (node.full) {
+            return interning(builderFactory) ? readAll(parser, builderFactory, event) : parser.getValue();
+        }
+        if (event == Event.START_OBJECT) {
+            return readObject(parser, builderFactory, node);
+        }
+        if (event == Event.START_ARRAY) {
+            return readArray(parser, builderFactory, node);
+        }
+        return parser.getValue();
+    }
+
+    // the interning builders intern only the keys and strings read through them, not the parsed values
+    private static boolean interning(final JsonBuilderFactory builderFactory) {
+        return builderFactory instanceof InterningJsonProvider.BuilderFactory;
+    }
+
+    private static JsonValue readAll(final JsonParser parser, final JsonBuilderFactory builderFactory,
+            final Event event) {
+        if (event == Event.START_OBJECT) {
+            final JsonObjectBuilder builder = builderFactory.createObjectBuilder();
+            while (parser.next() != Event.END_OBJECT) {
+                final String key = parser.getString();
+                builder.add(key, readAll(parser, builderFactory, parser.next()));
+            }
+            return builder.build();
+        }
+        if (event == Event.START_ARRAY) {
+            // the elements are added as a collection, such that the strings are interned as well
+            final List<JsonValue> elements = new ArrayList<>();
+            Event next;
+            while ((next = parser.next()) != Event.END_ARRAY) {
+                elements.add(readAll(parser, builderFactory, next));
+            }
+            return builderFactory.createArrayBuilder(elements).build();
+        }
+        return parser.getValue();
+    }
+
+    private static void skip(final JsonParser parser, final Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    /**
+     * A node of the projection tree. The fields are the object fields (or array
+     * indexes) read by the pointers, the elements node is applied to the elements
+     * iterated with the [i] notation (i.e., to each array element, or to the value
+     * itself when it is not an array), and the members node is applied to all
+     * values iterated by the aggregates (each array element or object field value).
+     * A full node keeps the whole subtree. The resolved views combine these nodes
+     * for the case where the value turns out to be an object or an array.
+     */
+    private static final class Node {
+        private boolean full;
+        private final Map<String, Node> fields = new HashMap<>();
+        private Node elements;
+        private Node members;
+        private Map<String, Node> objectFields;
+        private Node otherObjectFields;
+        private Map<Integer, Node> arrayIndexes;
+        private Node otherArrayElements;
+
+        private void resolve() {
+            if (full || objectFields != null) {
+                return;
+            }
+            final Node object = union(this, objectView(elements));
+            objectFields = new HashMap<>();
+            object.fields.forEach((k, v) -> objectFields.put(k, union(v, object.members)));
+            otherObjectFields = object.members;
+            arrayIndexes = new HashMap<>();
+            otherArrayElements = union(elements, members);
+            fields.forEach((k, v) -> {
+                if (!k.isEmpty() && k.chars().allMatch(Character::isDigit) && k.length() < 10
+                        && (k.length() == 1 || k.charAt(0) != '0')) {
+                    arrayIndexes.put(Integer.valueOf(k), union(v, otherArrayElements));
+                }
+            });
+            final List<Node> children = new ArrayList<>(objectFields.values());
+            children.addAll(arrayIndexes.values());
+            children.addAll(Arrays.asList(otherObjectFields, otherArrayElements));
+            children.stream().filter(x -> x != null).forEach(Node::resolve);
+        }
+
+        private static Node fullNode() {
+            final Node res = new Node();
+            res.full = true;
+            return res;
+        }
+
+        private static Node objectView(final Node node) {
+            return node == null ? null : union(node, objectView(node.elements));
+        }
+
+        private static Node union(final Node a, final Node b) {
+            if (a == null || b == null) {
+                return a == null ? b : a;
+            }
+            final Node res = new Node();
+            res.full = a.full || b.full;
+            if (res.full) {
+                return res;
+            }
+            for (final Map.Entry<String, Node> e : a.fields.entrySet()) {
+                res.fields.put(e.getKey(), union(e.getValue(), b.fields.get(e.getKey())));
+            }
+            b.fields.forEach(res.fields::putIfAbsent);
+            res.elements = union(a.elements, b.elements);
+            res.members = union(a.members, b.members);
+            return res;
+        }
+    }
+}
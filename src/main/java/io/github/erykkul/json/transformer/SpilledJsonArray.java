@@ -0,0 +1,374 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.ref.Cleaner;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import jakarta.json.JsonWriter;
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * A read-through JSON array whose elements are stored in a temporary file, one
+ * serialized element per line. The result arrays growing by appending (with
+ * the "append" flag or by flattening an [i] iteration) are spilled to such a
+ * file when their size exceeds the spill threshold (see
+ * {@link TransformerFactory#withSpillThreshold(int)}), such that the heap holds
+ * only the offsets of every {@value #BLOCK_SIZE}th element and one block of
+ * elements read from the file. Appending to the last version of a spilled array
+ * writes only the new elements to the shared file, the older versions keep
+ * seeing their own prefix of it. The file is open only while it is written or
+ * read, and it is deleted at the end of the transform call (see
+ * {@link EngineHolder#releaseSpills()}), after the spilled arrays of the
+ * resulting document are materialized or written to the output. The file is
+ * also deleted when the array is no longer reachable, or when the JVM exits.
+ * See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#spilling-large-arrays">Spilling
+ * large arrays</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class SpilledJsonArray extends AbstractList<JsonValue> implements JsonArray, RandomAccess {
+    static final int BLOCK_SIZE = 64;
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final Storage storage;
+    private final int size;
+
+    private SpilledJsonArray(final Storage storage, final int size) {
+        this.storage = storage;
+        this.size = size;
+    }
+
+    /**
+     * Appends the values to the array, spilling the result to a temporary file
+     * when the array is already spilled or when its new size exceeds the spill
+     * threshold of the engine holder.
+     *
+     * @param engineHolder the engine holder with the spill threshold and the JSON
+     *                     provider
+     * @param array        the array
+     * @param values       the appended values
+     * @return the new array
+     */
+    static JsonArray append(final EngineHolder engineHolder, final JsonArray array,
+            final List<JsonValue> values) {
+        if (array instanceof SpilledJsonArray) {
+            return ((SpilledJsonArray) array).append(engineHolder, values);
+        }
+        final int threshold = engineHolder.getSpillThreshold();
+        if (threshold <= 0 || array.size() + values.size() <= threshold) {
+            final JsonBuilderFactory builderFactory = engineHolder.getBuilderFactory();
+            return builderFactory.createArrayBuilder(array).addAll(builderFactory.createArrayBuilder(values))
+                    .build();
+        }
+        final Storage storage = new Storage(engineHolder);
+        synchronized (storage) {
+            storage.write(array);
+            storage.write(values);
+            return new SpilledJsonArray(storage, storage.size);
+        }
+    }
+
+    private JsonArray append(final EngineHolder engineHolder, final List<JsonValue> values) {
+        synchronized (storage) {
+            if (storage.size == size) {
+                storage.write(values);
+                return new SpilledJsonArray(storage, storage.size);
+            }
+        }
+        // an older version of the array, the file already continues with other elements
+        final Storage copy = new Storage(engineHolder);
+        synchronized (copy) {
+            copy.write(this);
+            copy.write(values);
+            return new SpilledJsonArray(copy, copy.size);
+        }
+    }
+
+    /**
+     * Replaces the spilled arrays in the value by arrays built on the heap, e.g.,
+     * before the temporary files of the resulting document are deleted.
+     *
+     * @param value          the value, e.g., the resulting document
+     * @param builderFactory the builder factory
+     * @return the value without the spilled arrays, or the value itself when it
+     *         contains none of them
+     */
+    static JsonValue materialize(final JsonValue value, final JsonBuilderFactory builderFactory) {
+        if (value instanceof SpilledJsonArray) {
+            return builderFactory.createArrayBuilder((JsonArray) value).build();
+        }
+        if (value instanceof JsonObject) {
+            JsonObjectBuilder builder = null;
+            for (final Map.Entry<String, JsonValue> entry : value.asJsonObject().entrySet()) {
+                final JsonValue materialized = materialize(entry.getValue(), builderFactory);
+                if (materialized != entry.getValue() && builder == null) {
+                    builder = builderFactory.createObjectBuilder(value.asJsonObject());
+                }
+                if (builder != null) {
+                    builder.add(entry.getKey(), materialized);
+                }
+            }
+            return builder == null ? value : builder.build();
+        }
+        if (value instanceof JsonArray) {
+            final List<JsonValue> values = new ArrayList<>(value.asJsonArray());
+            boolean changed = false;
+            for (int i = 0; i < values.size(); i++) {
+                final JsonValue materialized = materialize(values.get(i), builderFactory);
+                changed |= materialized != values.get(i);
+                values.set(i, materialized);
+            }
+            return changed ? builderFactory.createArrayBuilder(values).build() : value;
+        }
+        return value;
+    }
+
+    @Override
+    public JsonValue get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return storage.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public JsonObject getJsonObject(final int index) {
+        return (JsonObject) get(index);
+    }
+
+    @Override
+    public JsonArray getJsonArray(final int index) {
+        return (JsonArray) get(index);
+    }
+
+    @Override
+    public JsonNumber getJsonNumber(final int index) {
+        return (JsonNumber) get(index);
+    }
+
+    @Override
+    public JsonString getJsonString(final int index) {
+        return (JsonString) get(index);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends JsonValue> List<T> getValuesAs(final Class<T> clazz) {
+        return (List<T>) this;
+    }
+
+    @Override
+    public String getString(final int index) {
+        return getJsonString(index).getString();
+    }
+
+    @Override
+    public String getString(final int index, final String defaultValue) {
+        final JsonValue value = index >= 0 && index < size ? get(index) : null;
+        return value instanceof JsonString ? ((JsonString) value).getString() : defaultValue;
+    }
+
+    @Override
+    public int getInt(final int index) {
+        return getJsonNumber(index).intValue();
+    }
+
+    @Override
+    public int getInt(final int index, final int defaultValue) {
+        final JsonValue value = index >= 0 && index < size ? get(index) : null;
+        return value instanceof JsonNumber ? ((JsonNumber) value).intValue() : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(final int index) {
+        final JsonValue value = get(index);
+        if (JsonValue.TRUE.equals(value)) {
+            return true;
+        }
+        if (JsonValue.FALSE.equals(value)) {
+            return false;
+        }
+        throw new ClassCastException("Not a boolean value at index " + index + ": " + value);
+    }
+
+    @Override
+    public boolean getBoolean(final int index, final boolean defaultValue) {
+        final JsonValue value = index >= 0 && index < size ? get(index) : null;
+        return JsonValue.TRUE.equals(value) || (!JsonValue.FALSE.equals(value) && defaultValue);
+    }
+
+    @Override
+    public boolean isNull(final int index) {
+        return JsonValue.NULL.equals(get(index));
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return ValueType.ARRAY;
+    }
+
+    @Override
+    public String toString() {
+        final StringWriter out = new StringWriter();
+        try (JsonWriter writer = storage.provider.createWriter(out)) {
+            writer.writeArray(this);
+        }
+        return out.toString();
+    }
+
+    /**
+     * The temporary file shared by the versions of a spilled array, with the
+     * offsets of the blocks of elements and the last block read.
+     */
+    private static final class Storage {
+        private final JsonProvider provider;
+        private final Resources resources;
+        private long[] blocks = new long[16];
+        private long length;
+        private int size;
+        private int cachedBlock = -1;
+        private List<JsonValue> cached;
+
+        Storage(final EngineHolder engineHolder) {
+            this.provider = engineHolder.getJsonProvider();
+            try {
+                final Path file = Files.createTempFile("json-transformer-", ".ndjson");
+                file.toFile().deleteOnExit();
+                this.resources = new Resources(file);
+                engineHolder.addSpill(cleaner.register(this, resources));
+            } catch (final IOException e) {
+                throw new JsonException("Failed to create the spill file: " + e, e);
+            }
+        }
+
+        void write(final List<JsonValue> values) {
+            try {
+                for (final JsonValue value : values) {
+                    if (size % BLOCK_SIZE == 0) {
+                        final int block = size / BLOCK_SIZE;
+                        if (block == blocks.length) {
+                            blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+                        }
+                        blocks[block] = length;
+                    }
+                    final byte[] line = (value.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+                    resources.out().write(line);
+                    length += line.length;
+                    size++;
+                }
+            } catch (final IOException e) {
+                throw new JsonException("Failed to write to the spill file: " + e, e);
+            }
+        }
+
+        synchronized JsonValue get(final int index) {
+            final int block = index / BLOCK_SIZE;
+            if (block != cachedBlock || index % BLOCK_SIZE >= cached.size()) {
+                cached = read(block);
+                cachedBlock = block;
+            }
+            return cached.get(index % BLOCK_SIZE);
+        }
+
+        private List<JsonValue> read(final int block) {
+            final int count = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+            final List<JsonValue> values = new ArrayList<>(count);
+            try {
+                resources.closeOut();
+            } catch (final IOException e) {
+                throw new JsonException("Failed to write to the spill file: " + e, e);
+            }
+            try (FileChannel channel = FileChannel.open(resources.file, StandardOpenOption.READ);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(
+                            Channels.newInputStream(channel.position(blocks[block])), StandardCharsets.UTF_8))) {
+                for (int i = 0; i < count; i++) {
+                    try (JsonReader jsonReader = provider.createReader(new StringReader(reader.readLine()))) {
+                        values.add(jsonReader.readValue());
+                    }
+                }
+            } catch (final IOException e) {
+                throw new JsonException("Failed to read from the spill file: " + e, e);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The temporary file and its output stream, open only while the elements are
+     * appended. The stream is closed and the file is deleted at the end of the
+     * transform call, or when the storage is no longer reachable.
+     */
+    private static final class Resources implements Runnable {
+        private final Path file;
+        private OutputStream out;
+
+        Resources(final Path file) {
+            this.file = file;
+        }
+
+        synchronized OutputStream out() throws IOException {
+            if (out == null) {
+                out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND));
+            }
+            return out;
+        }
+
+        synchronized void closeOut() throws IOException {
+            if (out != null) {
+                final OutputStream closed = out;
+                out = null;
+                closed.close();
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            try {
+                closeOut();
+            } catch (final IOException e) {
+                // the file is deleted regardless
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException e) {
+                // the file is deleted when the JVM exits
+            }
+        }
+    }
+}
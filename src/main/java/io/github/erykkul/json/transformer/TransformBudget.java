@@ -0,0 +1,136 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.time.Duration;
+
+/**
+ * The limits of the work done by a single Transformer::transform method call:
+ * the wall-clock time and the CPU time of the transforming thread, the number
+ * of elements of each [i] iteration and the number of elements passed to each
+ * call of the filter, map and reduce functions. The element limits are checked
+ * before the iteration or the script starts, so an oversized array is rejected
+ * without processing any of its elements; the time limits bound the total work
+ * of the call (e.g., of nested iterations). When a limit is exceeded, the
+ * transformation is aborted with a
+ * {@link BudgetExceededException}. The budgets are immutable, the "with"
+ * methods return new budgets with the changed limits. See documentation:
+ * <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#budgets">Budgets</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class TransformBudget {
+    /**
+     * The budget without limits, used by default.
+     */
+    public static final TransformBudget UNLIMITED = new TransformBudget(0, 0, 0, 0);
+
+    private final long maxDurationNanos;
+    private final long maxCpuTimeNanos;
+    private final long maxIterationElements;
+    private final long maxScriptElements;
+
+    private TransformBudget(final long maxDurationNanos, final long maxCpuTimeNanos,
+            final long maxIterationElements, final long maxScriptElements) {
+        this.maxDurationNanos = Math.max(maxDurationNanos, 0);
+        this.maxCpuTimeNanos = Math.max(maxCpuTimeNanos, 0);
+        this.maxIterationElements = Math.max(maxIterationElements, 0);
+        this.maxScriptElements = Math.max(maxScriptElements, 0);
+    }
+
+    /**
+     * Creates a copy of this budget with the maximum wall-clock time of a
+     * transform call.
+     *
+     * @param maxDuration the maximum duration, zero for no limit
+     * @return the new budget
+     */
+    public TransformBudget withMaxDuration(final Duration maxDuration) {
+        return new TransformBudget(maxDuration.toNanos(), maxCpuTimeNanos, maxIterationElements,
+                maxScriptElements);
+    }
+
+    /**
+     * Creates a copy of this budget with the maximum CPU time of the thread
+     * executing a transform call. The CPU time is ignored when the Java virtual
+     * machine does not support measuring it.
+     *
+     * @param maxCpuTime the maximum CPU time, zero for no limit
+     * @return the new budget
+     */
+    public TransformBudget withMaxCpuTime(final Duration maxCpuTime) {
+        return new TransformBudget(maxDurationNanos, maxCpuTime.toNanos(), maxIterationElements,
+                maxScriptElements);
+    }
+
+    /**
+     * Creates a copy of this budget with the maximum number of elements of a
+     * single [i] iteration, i.e., the maximum size of each iterated array.
+     *
+     * @param maxIterationElements the maximum number of elements, zero for no
+     *                             limit
+     * @return the new budget
+     */
+    public TransformBudget withMaxIterationElements(final long maxIterationElements) {
+        return new TransformBudget(maxDurationNanos, maxCpuTimeNanos, maxIterationElements, maxScriptElements);
+    }
+
+    /**
+     * Creates a copy of this budget with the maximum number of elements passed to
+     * the script of a single filter, map or reduce function call.
+     *
+     * @param maxScriptElements the maximum number of elements, zero for no limit
+     * @return the new budget
+     */
+    public TransformBudget withMaxScriptElements(final long maxScriptElements) {
+        return new TransformBudget(maxDurationNanos, maxCpuTimeNanos, maxIterationElements, maxScriptElements);
+    }
+
+    /**
+     * Getter for the maximum wall-clock time.
+     *
+     * @return the maximum duration in nanoseconds, zero for no limit
+     */
+    public long getMaxDurationNanos() {
+        return maxDurationNanos;
+    }
+
+    /**
+     * Getter for the maximum CPU time.
+     *
+     * @return the maximum CPU time in nanoseconds, zero for no limit
+     */
+    public long getMaxCpuTimeNanos() {
+        return maxCpuTimeNanos;
+    }
+
+    /**
+     * Getter for the maximum number of elements of a single [i] iteration.
+     *
+     * @return the maximum number of elements, zero for no limit
+     */
+    public long getMaxIterationElements() {
+        return maxIterationElements;
+    }
+
+    /**
+     * Getter for the maximum number of elements passed to a single script call.
+     *
+     * @return the maximum number of elements, zero for no limit
+     */
+    public long getMaxScriptElements() {
+        return maxScriptElements;
+    }
+
+    /**
+     * Checks if this budget has no limits.
+     *
+     * @return true when no limit is set
+     */
+    public boolean isUnlimited() {
+        return maxDurationNanos == 0 && maxCpuTimeNanos == 0 && maxIterationElements == 0 && maxScriptElements == 0;
+    }
+}
@@ -0,0 +1,189 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import static jakarta.json.JsonValue.NULL;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * Values computed from the source document that are cached during the
+ * Transformer::transform method execution, e.g., the values resolved by the
+ * JSON Pointers or the hash indexes used by the lookup and join functions. The
+ * cache is held by the engine holder, and it is shared by all transformations
+ * and [i] iterations of one transform call. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#functions">Functions</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class TransformCache {
+    private static final Map<String, Column> NO_COLUMNS = Collections.emptyMap();
+
+    // only the values resolved from the roots are cached, not the values resolved from each iterated element
+    private final Map<JsonValue, Map<String, JsonValue>> values = new IdentityHashMap<>();
+    private final Map<JsonValue, Map<List<String>, Map<Object, List<JsonValue>>>> indexes = new IdentityHashMap<>();
+    // the arrays that are not homogeneous arrays of objects are mapped to NO_COLUMNS
+    private final Map<JsonValue, Map<String, Column>> columns = new IdentityHashMap<>();
+    private final Map<String, Guard.Condition> conditions = new HashMap<>();
+
+    /**
+     * Adds a root of the cached values, e.g., the source document of the
+     * transform call, resolved by the pointers of all transformations. The values
+     * resolved from the other nodes (e.g., from each element of an [i] iteration)
+     * are not cached, such that the cache does not retain memory proportional to
+     * the iterated arrays for the whole transform call.
+     *
+     * @param root the root, identified by its identity
+     */
+    void addRoot(final JsonValue root) {
+        values.computeIfAbsent(root, x -> new HashMap<>());
+    }
+
+    /**
+     * Returns the number of nodes with cached values, i.e., the number of roots.
+     *
+     * @return the number of nodes with cached values
+     */
+    int cachedNodes() {
+        return values.size();
+    }
+
+    /**
+     * Retrieves the value as pointed by the JSON Pointer from the given value,
+     * just like {@link Utils#getValue(JsonValue, String)}. When the value is a
+     * root of this cache (e.g., the source document, see
+     * {@link #addRoot(JsonValue)}), each pointer is resolved only once during the
+     * transform call, where the values are identified by their identity (JSON
+     * values are immutable). The pointers are then resolved through their (also
+     * cached) parent pointers, e.g., "/a/b/c" and "/a/b/d" both walk the "/a/b"
+     * path only once.
+     *
+     * @param node    the value (typically, a node in the source document)
+     * @param pointer the JSON Pointer
+     * @return the value, or JsonValue.NULL when the value does not exist
+     */
+    public JsonValue getValue(final JsonValue node, final String pointer) {
+        if (pointer.isEmpty()) {
+            return node;
+        }
+        final Map<String, JsonValue> resolved = values.get(node);
+        if (resolved == null) {
+            return Utils.getValue(node, Utils.tokens(pointer));
+        }
+        JsonValue value = resolved.get(pointer);
+        if (value == null) {
+            final int idx = pointer.lastIndexOf('/');
+            if (idx < 0) {
+                value = NULL;
+            } else {
+                final JsonValue parent = idx == 0 ? node : getValue(node, pointer.substring(0, idx));
+                value = Utils.getValue(parent, Utils.tokens(pointer.substring(idx)));
+            }
+            resolved.put(pointer, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the hash index of the values from the array (or the fields of the
+     * object) at the arrayPointer in the given document, keyed by the values at
+     * the keyPointer (relative to each indexed value). The index is built only
+     * once for each document (by identity) and pointers pair.
+     *
+     * @param document     the (global) document containing the indexed array
+     * @param arrayPointer the JSON Pointer to the indexed array in the document
+     * @param keyPointer   the JSON Pointer to the key, relative to each element
+     * @return the index, mapping the keys (see {@link #indexKey(JsonValue)}) to
+     *         the values having these keys, in the document order
+     */
+    public Map<Object, List<JsonValue>> getIndex(final JsonValue document, final String arrayPointer,
+            final String keyPointer) {
+        return indexes.computeIfAbsent(document, x -> new HashMap<>())
+                .computeIfAbsent(List.of(arrayPointer, keyPointer), x -> buildIndex(document, arrayPointer, keyPointer));
+    }
+
+    /**
+     * Returns the columns of the values at the pointer of each element of the
+     * given array, when it is a homogeneous array of objects (see
+     * {@link Column#applies(JsonValue)}). The columns are built only once for
+     * each array (by identity) and pointer.
+     *
+     * @param source  the array, e.g., the source of an aggregate
+     * @param pointer the JSON Pointer, relative to each element
+     * @return the columns, or null when the source can not be processed as
+     *         columns
+     */
+    Column getColumn(final JsonValue source, final String pointer) {
+        if (!(source instanceof JsonArray) || ((JsonArray) source).size() < Column.MIN_ROWS) {
+            return null;
+        }
+        final Map<String, Column> arrayColumns = columns.computeIfAbsent(source,
+                x -> Column.applies(x) ? new HashMap<>() : NO_COLUMNS);
+        return arrayColumns == NO_COLUMNS ? null
+                : arrayColumns.computeIfAbsent(pointer, x -> Column.of((JsonArray) source, x));
+    }
+
+    /**
+     * Returns the compiled condition (see {@link Guard#compile(JsonValue)}) of
+     * the JSON object argument of a function, e.g., filter({"pointer":
+     * "/status", "equals": "OK"}). Each condition is parsed and compiled only
+     * once during the transform call, also when the function is called for each
+     * element of an [i] iteration.
+     *
+     * @param expression the condition as a JSON object string
+     * @param provider   the JSON provider parsing the condition
+     * @return the condition
+     */
+    Guard.Condition getCondition(final String expression, final JsonProvider provider) {
+        return conditions.computeIfAbsent(expression, x -> {
+            try (JsonReader reader = provider.createReader(new StringReader(x))) {
+                return Guard.compile(reader.readValue());
+            }
+        });
+    }
+
+    /**
+     * Returns the key as used in the indexes for the given value. Numbers are
+     * normalized, such that, e.g., 1 and 1.0 are the same key.
+     *
+     * @param value the value
+     * @return the key of the value in the indexes
+     */
+    public static Object indexKey(final JsonValue value) {
+        if (value instanceof JsonNumber) {
+            return ((JsonNumber) value).bigDecimalValue().stripTrailingZeros();
+        }
+        return value;
+    }
+
+    private Map<Object, List<JsonValue>> buildIndex(final JsonValue document, final String arrayPointer,
+            final String keyPointer) {
+        final JsonValue indexed = getValue(document, arrayPointer);
+        if (Utils.isEmpty(indexed)) {
+            return Collections.emptyMap();
+        }
+        final String[] keyTokens = Utils.tokens(keyPointer);
+        final Map<Object, List<JsonValue>> index = new HashMap<>();
+        Utils.stream(indexed).forEach(x -> {
+            final JsonValue key = Utils.getValue(x, keyTokens);
+            if (!NULL.equals(key)) {
+                index.computeIfAbsent(indexKey(key), k -> new ArrayList<>(1)).add(x);
+            }
+        });
+        return index;
+    }
+}
@@ -0,0 +1,272 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.JsonObject;
+
+/**
+ * A Flow.Processor transforming the documents published upstream with a
+ * transformer, and publishing the transformed documents to a single subscriber.
+ * The documents are transformed asynchronously on the given executor, and the
+ * processor applies backpressure: it requests the documents from upstream only
+ * when the subscriber has demand for them, and it never has more than
+ * "maxInFlight" documents requested but not yet delivered to the subscriber,
+ * i.e., it does not need unbounded queues. The transformed documents are
+ * delivered in the order of the source documents (ordered) or as soon as they
+ * are transformed (unordered). A failed transformation cancels the upstream
+ * subscription and is signaled to the subscriber with onError. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#asynchronous-transformations">Asynchronous
+ * transformations</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class TransformProcessor implements Flow.Processor<JsonObject, JsonObject> {
+    private final Transformer transformer;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final Object lock = new Object();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Queue<Slot> slots = new ArrayDeque<>();
+    private Flow.Subscription upstream;
+    private boolean subscribed;
+    private Flow.Subscriber<? super JsonObject> downstream;
+    private long demand;
+    private long outstanding;
+    private long received;
+    private boolean upstreamDone;
+    private Throwable upstreamError;
+    private boolean terminated;
+
+    /**
+     * Class constructor.
+     *
+     * @param transformer the transformer
+     * @param executor    the executor running the transformations
+     * @param maxInFlight the maximum number of documents requested from upstream
+     *                    and not yet delivered to the subscriber
+     * @param ordered     true for delivering the transformed documents in the
+     *                    order of the source documents
+     */
+    public TransformProcessor(final Transformer transformer, final Executor executor, final int maxInFlight,
+            final boolean ordered) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.transformer = transformer;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super JsonObject> subscriber) {
+        synchronized (lock) {
+            if (!subscribed) {
+                subscribed = true;
+            } else {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(final long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("TransformProcessor allows only one subscriber"));
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                if (n <= 0) {
+                    final Flow.Subscription up;
+                    synchronized (lock) {
+                        upstreamDone = true;
+                        upstreamError = new IllegalArgumentException("non-positive request: " + n);
+                        received = 0;
+                        slots.clear();
+                        up = upstream;
+                    }
+                    if (up != null) {
+                        up.cancel();
+                    }
+                    drain();
+                    return;
+                }
+                synchronized (lock) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                final Flow.Subscription up;
+                synchronized (lock) {
+                    terminated = true;
+                    slots.clear();
+                    up = upstream;
+                }
+                if (up != null) {
+                    up.cancel();
+                }
+            }
+        });
+        // the subscriber receives its signals only after onSubscribe (rule 1.9)
+        synchronized (lock) {
+            downstream = subscriber;
+        }
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        synchronized (lock) {
+            if (upstream != null || terminated) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(final JsonObject item) {
+        final Slot slot = new Slot();
+        synchronized (lock) {
+            if (terminated) {
+                return;
+            }
+            received++;
+            if (ordered) {
+                slots.add(slot);
+            }
+        }
+        try {
+            transformer.transformAsync(item, executor).whenComplete((result, error) -> complete(slot, result, error));
+        } catch (final Throwable e) {
+            complete(slot, null, e);
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        synchronized (lock) {
+            upstreamDone = true;
+            upstreamError = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    private void complete(final Slot slot, final JsonObject result, final Throwable error) {
+        synchronized (lock) {
+            slot.result = result;
+            slot.error = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            slot.done = true;
+            if (!ordered && !terminated) {
+                slots.add(slot);
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (emit()) {
+                // emit the ready documents
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private boolean emit() {
+        final Flow.Subscriber<? super JsonObject> subscriber;
+        final Flow.Subscription up;
+        Slot slot = null;
+        Throwable error = null;
+        boolean complete = false;
+        long request = 0;
+        synchronized (lock) {
+            if (downstream == null || terminated) {
+                return false;
+            }
+            subscriber = downstream;
+            up = upstream;
+            final Slot head = slots.peek();
+            if (head != null && head.done && (head.error != null || demand > 0)) {
+                slot = slots.poll();
+                outstanding--;
+                received--;
+                if (slot.error != null) {
+                    terminated = true;
+                    error = slot.error;
+                    slots.clear();
+                } else {
+                    demand--;
+                }
+            } else if (upstreamDone && received == 0) {
+                terminated = true;
+                error = upstreamError;
+                complete = error == null;
+            }
+            if (!terminated && up != null && !upstreamDone) {
+                request = Math.min(maxInFlight, demand) - outstanding;
+                if (request > 0) {
+                    outstanding += request;
+                }
+            }
+        }
+        if (error != null) {
+            if (slot != null && up != null) {
+                up.cancel();
+            }
+            subscriber.onError(error);
+            return false;
+        }
+        if (complete) {
+            subscriber.onComplete();
+            return false;
+        }
+        if (slot != null) {
+            subscriber.onNext(slot.result);
+        }
+        // requested after the delivery, such that at most maxInFlight documents are
+        // requested and not yet passed to the subscriber
+        if (request > 0) {
+            up.request(request);
+        }
+        return slot != null;
+    }
+
+    private static final class Slot {
+        private JsonObject result;
+        private Throwable error;
+        private boolean done;
+    }
+}
@@ -9,27 +9,47 @@ import static jakarta.json.JsonValue.ValueType.ARRAY;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonBuilderFactory;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
 
 /**
  * The transformation as used by the transformer. See documentation: <a href=
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.4
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class Transformation {
     private static final Logger logger = Logger.getLogger(Utils.class.getName());
 
+    /**
+     * The default maximum number of memoized element results, used when the
+     * "memoize" field of the transformation is set to true.
+     */
+    public static final int DEFAULT_MEMO_SIZE = 1000;
+
+    /**
+     * Marker that can be placed in a script (it is a valid JavaScript comment) to
+     * indicate that the script is not deterministic, which disables the
+     * memoization of the transformation using it.
+     */
+    public static final String IMPURE_MARKER = "/*impure*/";
+
+    private static final List<String> impureFunctions = List.of("generateUuid(");
+
     /**
      * Executes the expressions. You can call this, e.g., when wrapping a function.
      * See, for example, the "withLogger" function in the documentation: <a href=
@@ -59,7 +79,7 @@ public class Transformation {
             final JsonValue result, final String expression) {
         if (expression.startsWith("\"")) {
             final String literal = expression.length() > 1 ? expression.substring(1, expression.length() - 1) : "";
-            return Json.createValue(literal);
+            return ctx.getJsonProvider().createValue(literal);
         } else if (!expression.isEmpty()) {
             final String[] functionParts = expression.split("\\(");
             final String functionName = functionParts.length > 0 ? functionParts[0] : "";
@@ -83,6 +103,10 @@ public class Transformation {
     private final String resultPointer;
     private final List<String> expressions;
     private final Map<String, ExprFunction> functions;
+    private final int memoize;
+    private final int memoSize;
+    private final JsonValue when;
+    private final Guard.Condition guard;
 
     /**
      * Class constructor. See documentation: <a href=
@@ -104,12 +128,76 @@ public class Transformation {
     public Transformation(final boolean append, final boolean useResultAsSource, final String sourcePointer,
             final String resultPointer, final List<String> expressions,
             final Map<String, ExprFunction> functions) {
+        this(append, useResultAsSource, sourcePointer, resultPointer, expressions, functions, 0);
+    }
+
+    /**
+     * Class constructor. See documentation: <a href=
+     * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
+     * 
+     * @param append            determines if the produced values are appended to
+     *                          the array at the "resultPointer" or are merged with
+     *                          already existing values
+     * @param useResultAsSource when set to true the result is also used as the
+     *                          source of this transformation, where the source
+     *                          itself is ignored
+     * @param sourcePointer     a JSON Pointer extended with [i] notation pointing
+     *                          to a value in the source document.
+     * @param resultPointer     a JSON Pointer extended with [i] notation pointing
+     *                          to a value in the resulting document.
+     * @param expressions       the expressions to be executed
+     * @param functions         functions registered in the transformer factory
+     * @param memoize           the maximum number of memoized results of the [i]
+     *                          iteration elements, 0 disables the memoization
+     */
+    public Transformation(final boolean append, final boolean useResultAsSource, final String sourcePointer,
+            final String resultPointer, final List<String> expressions,
+            final Map<String, ExprFunction> functions, final int memoize) {
+        this(append, useResultAsSource, sourcePointer, resultPointer, expressions, functions, memoize, null);
+    }
+
+    /**
+     * Class constructor. See documentation: <a href=
+     * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#conditional-transformations">Conditional
+     * transformations</a>
+     * 
+     * @param append            determines if the produced values are appended to
+     *                          the array at the "resultPointer" or are merged with
+     *                          already existing values
+     * @param useResultAsSource when set to true the result is also used as the
+     *                          source of this transformation, where the source
+     *                          itself is ignored
+     * @param sourcePointer     a JSON Pointer extended with [i] notation pointing
+     *                          to a value in the source document.
+     * @param resultPointer     a JSON Pointer extended with [i] notation pointing
+     *                          to a value in the resulting document.
+     * @param expressions       the expressions to be executed
+     * @param functions         functions registered in the transformer factory
+     * @param memoize           the maximum number of memoized results of the [i]
+     *                          iteration elements, 0 disables the memoization
+     * @param when              the condition evaluated on the source document, or
+     *                          on each element of the innermost [i] iteration,
+     *                          before the transformation is executed, null for
+     *                          unconditional transformations
+     * @throws jakarta.json.JsonException thrown when the condition is not valid
+     */
+    public Transformation(final boolean append, final boolean useResultAsSource, final String sourcePointer,
+            final String resultPointer, final List<String> expressions,
+            final Map<String, ExprFunction> functions, final int memoize, final JsonValue when) {
+        this.when = when;
+        this.guard = when == null ? null : Guard.compile(when);
         this.append = append;
         this.useResultAsSource = useResultAsSource;
         this.sourcePointer = sourcePointer;
         this.resultPointer = resultPointer;
         this.expressions = expressions;
         this.functions = functions;
+        this.memoize = Math.max(memoize, 0);
+        this.memoSize = isPure(expressions) && !readsAncestors(expressions) ? this.memoize : 0;
+        if (this.memoize > 0 && this.memoSize == 0) {
+            logger.fine("memoization disabled for non-deterministic (or reading ancestors) transformation "
+                    + sourcePointer);
+        }
     }
 
     /**
@@ -125,13 +213,17 @@ public class Transformation {
      */
     public JsonObject transform(final JsonObject source, final JsonObject result, final EngineHolder engineHolder) {
         final JsonObject srcOrRes = useResultAsSource ? result : source;
+        if (guard != null && !sourcePointer.contains("[i]") && !guard.test(srcOrRes)) {
+            return result;
+        }
         final TransformationCtx ctx = new TransformationCtx(srcOrRes, result, srcOrRes, result, this, engineHolder);
         if (!sourcePointer.contains("[i]")) {
             return doTransform(ctx, sourcePointer, resultPointer).asJsonObject();
         }
         final List<String> sourcePointers = Arrays.asList(sourcePointer.split("\\[i\\]", -1));
         final List<String> resultPointers = Arrays.asList(resultPointer.split("\\[i\\]", -1));
-        return transform(ctx, sourcePointers, resultPointers, false, engineHolder).asJsonObject();
+        final Map<List<Object>, JsonValue> memo = memoSize > 0 ? newMemo(memoSize) : null;
+        return transform(ctx, sourcePointers, resultPointers, false, engineHolder, memo).asJsonObject();
     }
 
     /**
@@ -140,9 +232,16 @@ public class Transformation {
      * @return the JSON representation of the Transformation object
      */
     public JsonObject toJsonObject() {
-        return Json.createObjectBuilder().add("append", append).add("useResultAsSource", useResultAsSource)
-                .add("sourcePointer", sourcePointer).add("resultPointer", resultPointer)
-                .add("expressions", Json.createArrayBuilder(expressions)).build();
+        final JsonObjectBuilder builder = Json.createObjectBuilder().add("append", append)
+                .add("useResultAsSource", useResultAsSource).add("sourcePointer", sourcePointer)
+                .add("resultPointer", resultPointer).add("expressions", Json.createArrayBuilder(expressions));
+        if (memoize > 0) {
+            builder.add("memoize", memoize);
+        }
+        if (when != null) {
+            builder.add("when", when);
+        }
+        return builder.build();
     }
 
     /**
@@ -166,20 +265,119 @@ public class Transformation {
         return useResultAsSource;
     }
 
+    /**
+     * Getter for the "append" Transformation field.
+     * 
+     * @return true if the produced values are appended to the array at the
+     *         "resultPointer"
+     */
+    public boolean isAppend() {
+        return append;
+    }
+
+    /**
+     * Getter for the "sourcePointer" Transformation field.
+     * 
+     * @return the source pointer, possibly extended with the [i] notation
+     */
+    public String getSourcePointer() {
+        return sourcePointer;
+    }
+
+    /**
+     * Getter for the "resultPointer" Transformation field.
+     * 
+     * @return the result pointer, possibly extended with the [i] notation
+     */
+    public String getResultPointer() {
+        return resultPointer;
+    }
+
+    /**
+     * Getter for the "expressions" Transformation field.
+     * 
+     * @return the expressions of this transformation
+     */
+    public List<String> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * Getter for the "when" Transformation field.
+     * 
+     * @return the condition of this transformation, null for unconditional
+     *         transformations
+     */
+    public JsonValue getWhen() {
+        return when;
+    }
+
+    /**
+     * Tests the condition of this transformation on a local source value, i.e., on
+     * the source document or on an element of the innermost [i] iteration.
+     * 
+     * @param localSource the local source value
+     * @return true when the transformation is unconditional or the condition holds
+     */
+    boolean test(final JsonValue localSource) {
+        return guard == null || guard.test(localSource);
+    }
+
+    /**
+     * Getter for the maximum number of memoized [i] iteration element results.
+     * 
+     * @return the memo size as effectively used by this transformation, 0 when the
+     *         memoization is disabled or the transformation is not deterministic
+     */
+    public int getMemoSize() {
+        return memoSize;
+    }
+
+    private static boolean isPure(final List<String> expressions) {
+        for (final String expression : expressions) {
+            if (expression.contains(IMPURE_MARKER)) {
+                return false;
+            }
+            for (final String function : impureFunctions) {
+                if (expression.contains(function)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean readsAncestors(final List<String> expressions) {
+        // the memoized results depend only on the iterated elements, not on their ancestors
+        return expressions.stream().anyMatch(x -> x.contains(".."));
+    }
+
+    private static Map<List<Object>, JsonValue> newMemo(final int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, JsonValue> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
     private JsonValue transform(final TransformationCtx ctx, final List<String> sourcePointers,
-            final List<String> resultPointers, final boolean flatten, final EngineHolder engineHolder) {
+            final List<String> resultPointers, final boolean flatten, final EngineHolder engineHolder,
+            final Map<List<Object>, JsonValue> memo) {
         if (sourcePointers.size() == 1) {
             return doTransform(ctx, sourcePointers.get(0), String.join("[i]", resultPointers));
         }
-        final JsonValue sourceValue = Utils.getValue(ctx.getLocalSource(), sourcePointers.get(0));
+        final JsonValue sourceValue = ctx.getSourceValue(ctx.getLocalSource(), sourcePointers.get(0));
         if (NULL.equals(sourceValue)) {
             return ctx.getLocalResult();
         }
         final String rootOrResultPointer = resultPointers.isEmpty() ? "" : resultPointers.get(0);
-        final JsonValue fixedResult = Utils.fixPath(ctx.getLocalResult(), ARRAY, rootOrResultPointer);
+        final JsonProvider provider = ctx.getJsonProvider();
+        final JsonBuilderFactory builderFactory = ctx.getBuilderFactory();
+        final JsonValue fixedResult = Utils.fixPath(provider, ctx.getLocalResult(), ARRAY, rootOrResultPointer);
         final JsonArray sourceArray;
         if (!Utils.isArray(sourceValue)) {
-            sourceArray = Json.createArrayBuilder().add(sourceValue).build();
+            sourceArray = builderFactory.createArrayBuilder().add(sourceValue).build();
         } else {
             sourceArray = sourceValue.asJsonArray();
         }
@@ -188,62 +386,143 @@ public class Transformation {
         final List<String> remainingResultPointers = resultPointers.isEmpty() ? Collections.emptyList()
                 : resultPointers.subList(1, resultPointers.size());
         final boolean doFlatten = flatten || resultPointers.size() == 1;
-        JsonValue result = Utils.getValue(fixedResult, rootOrResultPointer);
+        JsonValue result = Utils.getValue(provider, fixedResult, rootOrResultPointer);
         int flattenedMergeIdx = 0;
+        engineHolder.checkIterationElements(sourceArray.size());
+        final boolean guarded = guard != null && remainingSourcePointers.size() == 1;
+        // the guard of a large homogeneous array is evaluated at once, over the columns of its elements
+        final boolean[] mask = guarded && sourceArray.size() >= Column.MIN_ROWS
+                ? guard.mask(sourceArray, engineHolder.getCache())
+                : null;
         for (int i = 0; i < sourceArray.size(); i++) {
+            engineHolder.countIterationElement();
             result = Utils.isArray(result) ? result : EMPTY_JSON_ARRAY;
             final JsonArray resultArray = result.asJsonArray();
+            if (guarded && !(mask != null ? mask[i] : guard.test(sourceArray.get(i)))) {
+                if (!append && !doFlatten && resultArray.size() <= i) {
+                    // keeps the indexes of the following elements aligned, as for the missing values
+                    result = SpilledJsonArray.append(engineHolder, resultArray, List.of(EMPTY_JSON_OBJECT));
+                }
+                continue;
+            }
             final JsonValue resultObject = (!append && resultArray.size() > i) ? resultArray.get(i) : EMPTY_JSON_OBJECT;
-            final TransformationCtx localContext = new TransformationCtx(ctx.getGlobalSource(), ctx.getGlobalResult(),
-                    sourceArray.get(i), resultObject, this, engineHolder);
-            final JsonValue transformed = transform(localContext, remainingSourcePointers, remainingResultPointers,
-                    doFlatten, engineHolder);
-            if (doFlatten && !append && Utils.isArray(transformed)) {
-                result = mergeValues(transformed.asJsonArray(), result.asJsonArray(), flattenedMergeIdx);
+            final List<Object> key = memo == null ? null
+                    : List.of(remainingSourcePointers.size(), sourceArray.get(i), resultObject);
+            JsonValue transformed = key == null ? null : memo.get(key);
+            if (transformed == null) {
+                final TransformationCtx localContext = new TransformationCtx(ctx.getGlobalSource(),
+                        ctx.getGlobalResult(), sourceArray.get(i), resultObject, this, engineHolder, ctx, i);
+                transformed = transform(localContext, remainingSourcePointers, remainingResultPointers, doFlatten,
+                        engineHolder, memo);
+                if (key != null) {
+                    memo.put(key, transformed);
+                }
+            }
+            if (doFlatten && !append && Utils.isArray(transformed) && resultArray.size() <= flattenedMergeIdx) {
+                // nothing to merge with, the flattened values are appended
+                result = SpilledJsonArray.append(engineHolder, resultArray, transformed.asJsonArray());
+                flattenedMergeIdx += transformed.asJsonArray().size();
+            } else if (doFlatten && !append && Utils.isArray(transformed)) {
+                result = mergeValues(builderFactory, transformed.asJsonArray(), result.asJsonArray(), flattenedMergeIdx);
                 flattenedMergeIdx += transformed.asJsonArray().size();
             } else if (!append && !Utils.isArray(transformed) && resultArray.size() > i) {
-                result = Json.createArrayBuilder(resultArray).set(i, transformed).build();
+                result = builderFactory.createArrayBuilder(resultArray).set(i, transformed).build();
             } else if (doFlatten && Utils.isArray(transformed)) {
-                result = Json.createArrayBuilder(resultArray)
-                        .addAll(Json.createArrayBuilder(transformed.asJsonArray())).build();
+                result = SpilledJsonArray.append(engineHolder, resultArray, transformed.asJsonArray());
+            } else {
+                result = SpilledJsonArray.append(engineHolder, resultArray, List.of(transformed));
+            }
+        }
+        return Utils.replace(provider, fixedResult, rootOrResultPointer, result);
+    }
+
+    /**
+     * Checks if the values appended by this transformation can be streamed: the
+     * transformation appends with a single [i] iteration (e.g., "/items[i]/a")
+     * directly to the array in a field of the resulting document (e.g., "/a"),
+     * where each appended value depends only on its source element.
+     *
+     * @return true if the appended values can be streamed
+     */
+    boolean isStreamableAppend() {
+        final String[] tokens = Utils.tokens(resultPointer);
+        return append && !useResultAsSource && sourcePointer.split("\\[i\\]", -1).length == 2
+                && !resultPointer.contains("[i]") && tokens != null && tokens.length == 1;
+    }
+
+    /**
+     * Passes the values appended by this transformation to the consumer, in the
+     * order they would be appended to the array in the resulting document (see
+     * {@link #isStreamableAppend()}).
+     *
+     * @param source       the source document
+     * @param engineHolder the engine holder
+     * @param consumer     the consumer of the appended values
+     * @return false when the source array does not exist, i.e., when the
+     *         transformation does not create the array in the resulting document
+     */
+    boolean streamAppended(final JsonObject source, final EngineHolder engineHolder,
+            final Consumer<JsonValue> consumer) {
+        final String[] sourcePointers = sourcePointer.split("\\[i\\]", -1);
+        final TransformationCtx ctx = new TransformationCtx(source, EMPTY_JSON_OBJECT, source, EMPTY_JSON_OBJECT, this,
+                engineHolder);
+        final JsonValue sourceValue = ctx.getSourceValue(source, sourcePointers[0]);
+        if (NULL.equals(sourceValue)) {
+            return false;
+        }
+        final List<JsonValue> sourceArray = Utils.isArray(sourceValue) ? sourceValue.asJsonArray()
+                : List.of(sourceValue);
+        engineHolder.checkIterationElements(sourceArray.size());
+        for (int i = 0; i < sourceArray.size(); i++) {
+            engineHolder.countIterationElement();
+            if (!test(sourceArray.get(i))) {
+                continue;
+            }
+            final TransformationCtx localContext = new TransformationCtx(source, EMPTY_JSON_OBJECT,
+                    sourceArray.get(i), EMPTY_JSON_OBJECT, this, engineHolder, ctx, i);
+            final JsonValue transformed = doTransform(localContext, sourcePointers[1], "");
+            if (Utils.isArray(transformed)) {
+                transformed.asJsonArray().forEach(consumer);
             } else {
-                result = Json.createArrayBuilder(resultArray).add(transformed).build();
+                consumer.accept(transformed);
             }
         }
-        return Utils.replace(fixedResult, rootOrResultPointer, result);
+        return true;
     }
 
-    private JsonValue doTransform(final TransformationCtx ctx, final String sourcePointer, final String resultPointer) {
-        final JsonValue sourceValue = Utils.getValue(ctx.getLocalSource(), sourcePointer);
+    JsonValue doTransform(final TransformationCtx ctx, final String sourcePointer, final String resultPointer) {
+        final JsonValue sourceValue = ctx.getSourceValue(ctx.getLocalSource(), sourcePointer);
         if (NULL.equals(sourceValue)) {
             return ctx.getLocalResult();
         }
+        final JsonProvider provider = ctx.getJsonProvider();
         if (append) {
-            final JsonValue fixedResult = Utils.fixPath(ctx.getLocalResult(), ARRAY, resultPointer);
+            final JsonValue fixedResult = Utils.fixPath(provider, ctx.getLocalResult(), ARRAY, resultPointer);
             final JsonValue result = executeExpressions(ctx, sourceValue, EMPTY_JSON_OBJECT, expressions);
-            final JsonValue resultArray = Utils.getValue(fixedResult, resultPointer);
+            final JsonValue resultArray = Utils.getValue(provider, fixedResult, resultPointer);
             if (!Utils.isArray(resultArray)) {
                 return result;
             }
-            return Utils.replace(fixedResult, resultPointer,
-                    Json.createArrayBuilder(resultArray.asJsonArray()).add(result).build());
+            return Utils.replace(provider, fixedResult, resultPointer,
+                    SpilledJsonArray.append(ctx.engine(), resultArray.asJsonArray(), List.of(result)));
         } else {
-            final JsonValue fixedResult = Utils.fixPath(ctx.getLocalResult(), sourceValue.getValueType(),
+            final JsonValue fixedResult = Utils.fixPath(provider, ctx.getLocalResult(), sourceValue.getValueType(),
                     resultPointer);
-            final JsonValue result = executeExpressions(ctx, sourceValue, Utils.getValue(fixedResult, resultPointer),
-                    expressions);
+            final JsonValue result = executeExpressions(ctx, sourceValue,
+                    Utils.getValue(provider, fixedResult, resultPointer), expressions);
             if (Utils.isEmpty(fixedResult)) {
                 return result;
             }
-            return Utils.replace(fixedResult, resultPointer, result);
+            return Utils.replace(provider, fixedResult, resultPointer, result);
         }
     }
 
-    private JsonArray mergeValues(final JsonArray source, final JsonArray result, final int startIdx) {
-        final JsonArrayBuilder builder = Json.createArrayBuilder(result);
+    private JsonArray mergeValues(final JsonBuilderFactory builderFactory, final JsonArray source,
+            final JsonArray result, final int startIdx) {
+        final JsonArrayBuilder builder = builderFactory.createArrayBuilder(result);
         for (int i = 0; i < source.size(); i++) {
             if (result.size() > startIdx + i) {
-                builder.set(startIdx + i, mergeValue(source.get(i), result.get(startIdx + i)));
+                builder.set(startIdx + i, mergeValue(builderFactory, source.get(i), result.get(startIdx + i)));
             } else {
                 builder.add(source.get(i));
             }
@@ -251,13 +530,14 @@ public class Transformation {
         return builder.build();
     }
 
-    private JsonValue mergeValue(final JsonValue source, final JsonValue result) {
+    private JsonValue mergeValue(final JsonBuilderFactory builderFactory, final JsonValue source,
+            final JsonValue result) {
         if (Utils.isArray(source) && Utils.isArray(result)) {
-            return mergeValues(source.asJsonArray(), result.asJsonArray(), 0);
+            return mergeValues(builderFactory, source.asJsonArray(), result.asJsonArray(), 0);
         }
         if (Utils.isObject(source) && Utils.isObject(result)) {
-            return Json.createObjectBuilder(result.asJsonObject())
-                    .addAll(Json.createObjectBuilder(source.asJsonObject())).build();
+            return builderFactory.createObjectBuilder(result.asJsonObject())
+                    .addAll(builderFactory.createObjectBuilder(source.asJsonObject())).build();
         }
         return result;
     }
@@ -5,8 +5,10 @@ package io.github.erykkul.json.transformer;
 import java.util.Map;
 
 import jakarta.json.Json;
+import jakarta.json.JsonBuilderFactory;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
 
 /**
  * The transformation context object as exposed in the functions interface. See
@@ -14,7 +16,7 @@ import jakarta.json.JsonValue;
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.0
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class TransformationCtx {
@@ -24,6 +26,8 @@ public class TransformationCtx {
     private final JsonValue localSource;
     private final JsonValue localResult;
     private final EngineHolder engineHolder;
+    private final TransformationCtx parent;
+    private final int index;
 
     /**
      * The class constructor.
@@ -39,12 +43,34 @@ public class TransformationCtx {
     public TransformationCtx(final JsonObject globalSource, final JsonObject globalResult,
             final JsonValue localSource, final JsonValue localResult, final Transformation transformation,
             final EngineHolder engineHolder) {
+        this(globalSource, globalResult, localSource, localResult, transformation, engineHolder, null, -1);
+    }
+
+    /**
+     * The class constructor of the context of an element iterated with the [i]
+     * notation.
+     * 
+     * @param globalSource   the global source document of the transformation
+     * @param globalResult   the global resulting document of the transformation
+     * @param localSource    the local source document, i.e., the iterated element
+     * @param localResult    the local resulting document
+     * @param transformation the transformation to which this context belongs
+     * @param engineHolder   the script engine holder
+     * @param parent         the context of the enclosing [i] iteration (or the
+     *                       context of the whole document)
+     * @param index          the index of the iterated element
+     */
+    public TransformationCtx(final JsonObject globalSource, final JsonObject globalResult,
+            final JsonValue localSource, final JsonValue localResult, final Transformation transformation,
+            final EngineHolder engineHolder, final TransformationCtx parent, final int index) {
         this.globalSource = globalSource;
         this.globalResult = globalResult;
         this.localSource = localSource;
         this.localResult = localResult;
         this.transformation = transformation;
         this.engineHolder = engineHolder;
+        this.parent = parent;
+        this.index = index;
     }
 
     /**
@@ -94,6 +120,85 @@ public class TransformationCtx {
         return localResult;
     }
 
+    /**
+     * Parent context getter.
+     * 
+     * @return the context of the enclosing [i] iteration (or of the whole
+     *         document), null when this context is not the context of an iterated
+     *         element
+     */
+    public TransformationCtx getParent() {
+        return parent;
+    }
+
+    /**
+     * Index getter.
+     * 
+     * @return the index of the iterated element, -1 when this context is not the
+     *         context of an iterated element
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Retrieves the value as pointed by the JSON Pointer from the source value,
+     * e.g., the source value passed to a function. When the transformation does
+     * not use the result as source, the values are resolved through the transform
+     * cache, such that the same (value, pointer) pair is resolved only once during
+     * the transform call. The pointers starting with "../" are resolved from the
+     * element of the enclosing [i] iteration instead (see
+     * {@link #getAncestorValue(String)}).
+     * 
+     * @param source  the source value
+     * @param pointer the JSON Pointer relative to the source value
+     * @return the value, or JsonValue.NULL when the value does not exist
+     */
+    public JsonValue getSourceValue(final JsonValue source, final String pointer) {
+        if (isAncestorPointer(pointer)) {
+            return getAncestorValue(pointer);
+        }
+        if (useResultAsSource()) {
+            return Utils.getValue(getJsonProvider(), source, pointer);
+        }
+        return cache().getValue(source, pointer);
+    }
+
+    /**
+     * Retrieves the value from an ancestor of the iterated element: each leading
+     * "../" (or a single "..") moves one [i] iteration up, i.e., "../a" points to
+     * the "/a" value of the element of the enclosing [i] iteration, or of the
+     * source document when there is only one [i] iteration, and "../../a" points
+     * to the "/a" value one iteration further up.
+     * 
+     * @param pointer the pointer starting with "../" or equal to ".."
+     * @return the value, or JsonValue.NULL when the value or the ancestor does not
+     *         exist
+     */
+    public JsonValue getAncestorValue(final String pointer) {
+        TransformationCtx ancestor = this;
+        String rest = pointer;
+        while (isAncestorPointer(rest)) {
+            ancestor = ancestor.parent;
+            if (ancestor == null) {
+                return JsonValue.NULL;
+            }
+            rest = rest.substring(Math.min(3, rest.length()));
+        }
+        return ancestor.getSourceValue(ancestor.localSource, rest.isEmpty() ? "" : "/" + rest);
+    }
+
+    /**
+     * Checks if the pointer points to an ancestor of the iterated element (see
+     * {@link #getAncestorValue(String)}).
+     * 
+     * @param pointer the pointer
+     * @return true if the pointer starts with "../" or is equal to ".."
+     */
+    public static boolean isAncestorPointer(final String pointer) {
+        return "..".equals(pointer) || pointer.startsWith("../");
+    }
+
     /**
      * Functions getter.
      * 
@@ -120,4 +225,33 @@ public class TransformationCtx {
     public EngineHolder engine() {
         return engineHolder;
     }
+
+    /**
+     * JSON provider getter.
+     * 
+     * @return the JSON provider of the transformer, e.g., for creating the JSON
+     *         values and pointers in the functions
+     */
+    public JsonProvider getJsonProvider() {
+        return engineHolder.getJsonProvider();
+    }
+
+    /**
+     * JSON builder factory getter.
+     * 
+     * @return the builder factory of the JSON provider of the transformer, e.g.,
+     *         for creating the JSON objects and arrays in the functions
+     */
+    public JsonBuilderFactory getBuilderFactory() {
+        return engineHolder.getBuilderFactory();
+    }
+
+    /**
+     * Transform cache getter.
+     * 
+     * @return the cache shared by all transformations of the transform call
+     */
+    public TransformCache cache() {
+        return engineHolder.getCache();
+    }
 }
@@ -2,23 +2,50 @@
 
 package io.github.erykkul.json.transformer;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.script.ScriptEngineFactory;
 
+import jakarta.json.JsonBuilderFactory;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonPatch;
+import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonGenerator;
 
 /**
  * The transformer. See documentation: <a href=
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.2
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class Transformer {
     private final List<Transformation> transformations;
     private final ScriptEngineFactory scriptEngineFactory;
+    private final List<String> diagnostics;
+    private final TransformBudget budget;
+    private final List<PlanOptimizer.StreamingGroup> streamingGroups;
+    private final SourceProjection projection;
+    private final PatchScope patchScope;
+    private final JsonProvider jsonProvider;
+    private final JsonBuilderFactory builderFactory;
+    private final int spillThreshold;
+    private final boolean batchedScripts;
 
     /**
      * Class constructor.
@@ -28,8 +55,39 @@ public class Transformer {
      * @param scriptEngineFactory the script engine factory
      */
     public Transformer(final List<Transformation> transformations, final ScriptEngineFactory scriptEngineFactory) {
+        this(transformations, scriptEngineFactory, Collections.emptyList(), TransformBudget.UNLIMITED, null, null,
+                null, 0, false);
+    }
+
+    Transformer(final List<Transformation> transformations, final ScriptEngineFactory scriptEngineFactory,
+            final List<String> diagnostics, final TransformBudget budget,
+            final List<PlanOptimizer.StreamingGroup> streamingGroups, final SourceProjection projection,
+            final JsonProvider jsonProvider, final int spillThreshold, final boolean batchedScripts) {
         this.transformations = transformations;
         this.scriptEngineFactory = scriptEngineFactory;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        this.budget = budget;
+        this.streamingGroups = streamingGroups;
+        this.projection = projection == null ? SourceProjection.WHOLE_DOCUMENT : projection;
+        this.patchScope = PatchScope.of(transformations);
+        this.jsonProvider = jsonProvider == null ? Utils.provider() : jsonProvider;
+        this.builderFactory = jsonProvider == null ? Utils.builderFactory()
+                : jsonProvider.createBuilderFactory(null);
+        this.spillThreshold = spillThreshold;
+        this.batchedScripts = batchedScripts;
+    }
+
+    /**
+     * Creates a copy of this transformer with the given transform budget. When a
+     * transform call exceeds the budget, it is aborted with a
+     * {@link BudgetExceededException}.
+     * 
+     * @param budget the transform budget
+     * @return the new transformer
+     */
+    public Transformer withBudget(final TransformBudget budget) {
+        return new Transformer(transformations, scriptEngineFactory, diagnostics, budget, streamingGroups,
+                projection, jsonProvider, spillThreshold, batchedScripts);
     }
 
     /**
@@ -37,13 +95,400 @@ public class Transformer {
      * 
      * @param source the source JSON document
      * @return the transformed JSON document
+     * @throws BudgetExceededException thrown when the transform budget of this
+     *                                 transformer is exceeded
      */
     public JsonObject transform(final JsonObject source) {
-        final EngineHolder engineHolder = new EngineHolder(scriptEngineFactory);
+        return transform(source, newEngineHolder());
+    }
+
+    /**
+     * The transform method using the given engine holder, e.g., holding a script
+     * engine reused from the previous transformations. Note that the variables
+     * defined by the scripts of the previous transformations remain defined in a
+     * reused script engine. The arrays spilled to temporary files during the call
+     * (see {@link TransformerFactory#withSpillThreshold(int)}) are materialized on
+     * the heap in the returned document, and their files are deleted.
+     * 
+     * @param source       the source JSON document
+     * @param engineHolder the engine holder, see also
+     *                     {@link #getScriptEngineFactory()} and
+     *                     {@link #getBudget()}
+     * @return the transformed JSON document
+     * @throws BudgetExceededException thrown when the transform budget of the
+     *                                 engine holder is exceeded
+     */
+    public JsonObject transform(final JsonObject source, final EngineHolder engineHolder) {
+        try {
+            final JsonObject result = transformAll(source, engineHolder);
+            return engineHolder.hasSpills()
+                    ? SpilledJsonArray.materialize(result, engineHolder.getBuilderFactory()).asJsonObject()
+                    : result;
+        } finally {
+            engineHolder.releaseSpills();
+        }
+    }
+
+    // the resulting document may still read its spilled arrays from the temporary files
+    private JsonObject transformAll(final JsonObject source, final EngineHolder engineHolder) {
         JsonObject result = JsonObject.EMPTY_JSON_OBJECT;
+        engineHolder.getCache().addRoot(source);
         for (final Transformation t : transformations) {
+            engineHolder.checkBudget();
             result = t.transform(source, result, engineHolder);
         }
         return result;
     }
+
+    /**
+     * The transform method parsing the source JSON document from the input stream
+     * (encoded in UTF-8, UTF-16 or UTF-32). Only the parts of the source document
+     * that can be read by the transformations, as computed by the transformer
+     * factory, are parsed into the JSON object passed to
+     * {@link #transform(JsonObject)}, all other values are skipped by the parser.
+     * The input stream is not closed.
+     * 
+     * @param in the input stream with the source JSON document
+     * @return the transformed JSON document
+     * @throws jakarta.json.JsonException thrown when the source document can not
+     *                                    be parsed
+     * @throws BudgetExceededException    thrown when the transform budget of this
+     *                                    transformer is exceeded
+     */
+    public JsonObject transform(final InputStream in) {
+        return transform(parse(in));
+    }
+
+    /**
+     * Transforms the source document and returns the region-pruned diff of the
+     * base document, e.g., the previously stored resulting document of the same
+     * source, and the new resulting document: the JSON Patch (RFC 6902)
+     * transforming the base document into the new resulting document (see
+     * {@link #regionDiff(JsonObject, JsonObject)}). The patch is computed by
+     * comparing the documents after the transform, it is not a record of the
+     * edits made by the transformations. Only the regions of the resulting
+     * document that can be written by the transformations are compared, such
+     * that the values outside of these regions are never compared, but a
+     * transformation writing the whole resulting document (the empty
+     * "resultPointer") makes the whole documents compared.
+     * 
+     * @param source the source JSON document
+     * @param base   the base document the patch is applied to
+     * @return the patch
+     * @throws BudgetExceededException thrown when the transform budget of this
+     *                                 transformer is exceeded
+     */
+    public JsonPatch transformToRegionDiff(final JsonObject source, final JsonObject base) {
+        return regionDiff(base, transform(source));
+    }
+
+    /**
+     * Computes the region-pruned diff of the base document and the resulting
+     * document produced by this transformer: the JSON Patch (RFC 6902)
+     * transforming the base document into the resulting document, e.g., when
+     * both the materialized resulting document and the patch are needed. Each
+     * transformation writes only below the static prefix of its "resultPointer"
+     * (before the [i] notation): the values in these regions are compared (a
+     * region covers all regions below it), and all other values of the base
+     * document are removed without comparing them. The arrays are compared after
+     * skipping their common first and last elements, such that an element
+     * inserted at the beginning of an array produces a single "add" operation.
+     * 
+     * @param base   the base document the patch is applied to
+     * @param result the resulting document produced by this transformer
+     * @return the patch
+     */
+    public JsonPatch regionDiff(final JsonObject base, final JsonObject result) {
+        return patchScope.diff(jsonProvider, base, result);
+    }
+
+    /**
+     * Parses the source JSON document from the input stream as in
+     * {@link #transform(InputStream)}, i.e., only the parts of the document that
+     * can be read by this transformer are present in the returned object.
+     * 
+     * @param in the input stream with the source JSON document
+     * @return the projected source JSON document
+     * @throws jakarta.json.JsonException thrown when the source document can not
+     *                                    be parsed
+     */
+    public JsonObject parse(final InputStream in) {
+        return projection.read(in, jsonProvider, builderFactory);
+    }
+
+    /**
+     * Warms up this transformer by transforming the sample documents (in a round
+     * robin) at most the given number of times, or until the throughput has
+     * stabilised (see {@link WarmUpReport}). Each iteration is a regular
+     * {@link #transform(JsonObject)} call, including the creation of the script
+     * engine, such that the code paths used by the real documents are compiled by
+     * the JIT compiler before the real documents arrive. The exceptions thrown by
+     * the transformations are counted in the report, but not rethrown.
+     * 
+     * @param samples    the sample source documents, when empty the samples are
+     *                   synthesized (see {@link #warmUp(int)})
+     * @param iterations the maximum number of the transformed documents
+     * @return the warm-up report
+     */
+    public WarmUpReport warmUp(final List<JsonObject> samples, final int iterations) {
+        final List<JsonObject> documents = samples.isEmpty() ? List.of(projection.sample()) : samples;
+        final long roundNanos = TimeUnit.MILLISECONDS.toNanos(WarmUpReport.ROUND_MILLIS);
+        final long start = System.nanoTime();
+        final List<Double> rounds = new ArrayList<>();
+        long done = 0;
+        long errors = 0;
+        long stableAfter = -1;
+        while (done < iterations && stableAfter < 0) {
+            final long roundStart = System.nanoTime();
+            long now = roundStart;
+            long count = 0;
+            while (done < iterations && (count == 0 || now - roundStart < roundNanos)) {
+                try {
+                    transform(documents.get((int) (done % documents.size())));
+                } catch (final RuntimeException e) {
+                    errors++;
+                }
+                done++;
+                count++;
+                now = System.nanoTime();
+            }
+            rounds.add(count * 1e9 / Math.max(now - roundStart, 1));
+            if (WarmUpReport.isStable(rounds)) {
+                stableAfter = done;
+            }
+        }
+        return new WarmUpReport(done, stableAfter, rounds.isEmpty() ? 0 : rounds.get(0),
+                rounds.isEmpty() ? 0 : rounds.get(rounds.size() - 1), Duration.ofNanos(System.nanoTime() - start),
+                errors);
+    }
+
+    /**
+     * Warms up this transformer with a sample document synthesized from the
+     * source pointers and the function arguments of its transformations: each
+     * read object field is present, each iterated array has two elements, the
+     * aggregated values are numbers and all other values are strings. See also
+     * {@link #warmUp(List, int)}.
+     * 
+     * @param iterations the maximum number of the transformed documents
+     * @return the warm-up report
+     */
+    public WarmUpReport warmUp(final int iterations) {
+        return warmUp(Collections.emptyList(), iterations);
+    }
+
+    /**
+     * Checks if the transformer factory proved that this transformer writes each
+     * field of the resulting document only once and in order, such that the
+     * resulting document can be streamed (see
+     * {@link #transform(JsonObject, JsonGenerator)}).
+     * 
+     * @return true if the resulting document can be streamed
+     */
+    public boolean isStreamable() {
+        return streamingGroups != null;
+    }
+
+    /**
+     * The transform method writing the transformed JSON document directly to the
+     * generator. When this transformer is streamable (see {@link #isStreamable()}),
+     * each field of the resulting document is written as soon as it is produced,
+     * and the arrays produced by the append transformations are written value by
+     * value, without building them in memory. Otherwise, the resulting document is
+     * produced as in {@link #transform(JsonObject)} and then written. The spilled
+     * arrays are written from their temporary files, which are deleted when the
+     * document is written. The generator is neither flushed nor closed.
+     * 
+     * @param source    the source JSON document
+     * @param generator the generator the transformed JSON document is written to
+     * @throws BudgetExceededException thrown when the transform budget of this
+     *                                 transformer is exceeded
+     */
+    public void transform(final JsonObject source, final JsonGenerator generator) {
+        final EngineHolder engineHolder = newEngineHolder();
+        try {
+            if (isStreamable()) {
+                stream(source, generator, engineHolder);
+            } else {
+                generator.write(transformAll(source, engineHolder));
+            }
+        } finally {
+            engineHolder.releaseSpills();
+        }
+    }
+
+    private void stream(final JsonObject source, final JsonGenerator generator, final EngineHolder engineHolder) {
+        engineHolder.getCache().addRoot(source);
+        generator.writeStartObject();
+        for (final PlanOptimizer.StreamingGroup group : streamingGroups) {
+            if (group.isAppendOnly()) {
+                // the first transformation with an existing source array creates the array
+                final AtomicBoolean started = new AtomicBoolean();
+                final Consumer<JsonValue> writer = x -> {
+                    if (!started.getAndSet(true)) {
+                        generator.writeStartArray(group.getField());
+                    }
+                    generator.write(x);
+                };
+                for (final Transformation t : group.getTransformations()) {
+                    engineHolder.checkBudget();
+                    if (t.streamAppended(source, engineHolder, writer) && !started.getAndSet(true)) {
+                        generator.writeStartArray(group.getField());
+                    }
+                }
+                if (started.get()) {
+                    generator.writeEnd();
+                }
+            } else {
+                JsonObject result = JsonObject.EMPTY_JSON_OBJECT;
+                for (final Transformation t : group.getTransformations()) {
+                    engineHolder.checkBudget();
+                    result = t.transform(source, result, engineHolder);
+                }
+                if (result.containsKey(group.getField())) {
+                    generator.write(group.getField(), result.get(group.getField()));
+                }
+            }
+        }
+        generator.writeEnd();
+    }
+
+    /**
+     * The transform method writing the transformed JSON document directly to the
+     * output stream (as UTF-8), see {@link #transform(JsonObject, JsonGenerator)}.
+     * The output stream is flushed, but not closed.
+     * 
+     * @param source the source JSON document
+     * @param out    the output stream the transformed JSON document is written to
+     * @throws BudgetExceededException thrown when the transform budget of this
+     *                                 transformer is exceeded
+     */
+    public void transform(final JsonObject source, final OutputStream out) {
+        final JsonGenerator generator = jsonProvider.createGenerator(new FilterOutputStream(out) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        transform(source, generator);
+        generator.close();
+    }
+
+    /**
+     * The asynchronous transform method, executing the transformation on the
+     * common fork-join pool.
+     * 
+     * @param source the source JSON document
+     * @return the future of the transformed JSON document
+     */
+    public CompletableFuture<JsonObject> transformAsync(final JsonObject source) {
+        return transformAsync(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * The asynchronous transform method, executing the transformation on the
+     * given executor. See also {@link TransformProcessor} for transforming streams
+     * of documents with backpressure.
+     * 
+     * @param source   the source JSON document
+     * @param executor the executor running the transformation
+     * @return the future of the transformed JSON document
+     */
+    public CompletableFuture<JsonObject> transformAsync(final JsonObject source, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> transform(source), executor);
+    }
+
+    /**
+     * Creates a new engine holder for a transform call of this transformer (see
+     * {@link #transform(JsonObject, EngineHolder)}), with the transform budget and
+     * the JSON provider, the spill threshold and the batched scripts setting of
+     * this transformer.
+     * 
+     * @return the new engine holder
+     */
+    public EngineHolder newEngineHolder() {
+        return newEngineHolder(budget);
+    }
+
+    EngineHolder newEngineHolder(final TransformBudget budget) {
+        final EngineHolder engineHolder = new EngineHolder(scriptEngineFactory, budget, jsonProvider,
+                builderFactory);
+        engineHolder.setSpillThreshold(spillThreshold);
+        engineHolder.setBatchedScripts(batchedScripts);
+        return engineHolder;
+    }
+
+    /**
+     * Returns the diagnostics of the optimizations executed by the transformer
+     * factory when creating this transformer, e.g., the transformations skipped
+     * by the dead store elimination.
+     * 
+     * @return the diagnostic messages
+     */
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * ScriptEngineFactory getter.
+     * 
+     * @return the script engine factory, or null when the default script engine
+     *         is used
+     */
+    public ScriptEngineFactory getScriptEngineFactory() {
+        return scriptEngineFactory;
+    }
+
+    /**
+     * JsonProvider getter.
+     * 
+     * @return the JSON provider used by the transformations of this transformer
+     *         (see {@link TransformerFactory#withJsonProvider(JsonProvider)})
+     */
+    public JsonProvider getJsonProvider() {
+        return jsonProvider;
+    }
+
+    /**
+     * Spill threshold getter.
+     * 
+     * @return the size above which the result arrays growing by appending are
+     *         spilled to temporary files, or 0 when they are kept on the heap
+     *         (see {@link TransformerFactory#withSpillThreshold(int)})
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Batched scripts getter.
+     * 
+     * @return true if the scripts of the filter, map and reduce functions are
+     *         evaluated for all values in a single call of the script engine (see
+     *         {@link TransformerFactory#withBatchedScripts(boolean)})
+     */
+    public boolean isBatchedScripts() {
+        return batchedScripts;
+    }
+
+    /**
+     * TransformBudget getter.
+     * 
+     * @return the transform budget of this transformer
+     */
+    public TransformBudget getBudget() {
+        return budget;
+    }
+
+    SourceProjection getProjection() {
+        return projection;
+    }
+
+    List<Transformation> getTransformations() {
+        return transformations;
+    }
 }
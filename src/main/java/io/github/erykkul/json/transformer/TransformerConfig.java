@@ -0,0 +1,34 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import jakarta.json.spi.JsonProvider;
+
+/**
+ * The options of the transformer factory, as set by its "with" methods and
+ * passed to the transformers it creates. The factory copies the options before
+ * changing them, such that the options of existing factories and transformers
+ * are never modified.
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class TransformerConfig implements Cloneable {
+    boolean deadStoreElimination = true;
+    boolean fusion = true;
+    TransformBudget budget = TransformBudget.UNLIMITED;
+    IdGenerator idGenerator;
+    JsonProvider jsonProvider;
+    int spillThreshold;
+    int interning;
+    boolean batchedScripts;
+
+    TransformerConfig copy() {
+        try {
+            return (TransformerConfig) clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
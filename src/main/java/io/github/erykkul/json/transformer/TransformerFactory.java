@@ -5,12 +5,19 @@ package io.github.erykkul.json.transformer;
 import static jakarta.json.JsonValue.TRUE;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -18,17 +25,19 @@ import java.util.stream.Collectors;
 import javax.script.ScriptEngineFactory;
 
 import jakarta.json.Json;
+import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
 import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
 
 /**
  * The transformer factory. See documentation: <a href=
  * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer">Transformer</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.2
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class TransformerFactory {
@@ -98,17 +107,263 @@ public class TransformerFactory {
         return new TransformerFactory(functions, scriptEngineFactory);
     }
 
+    /**
+     * Creates a transformer factory with only the built-in functions and the
+     * given settings, as returned by {@link #getSettings()}, e.g., in another
+     * process than the process of the original factory.
+     * 
+     * @param settings the settings of the factory
+     * @return the transformer factory with the given settings
+     * @throws IllegalArgumentException thrown when a setting is unknown or its
+     *                                  value is not valid
+     */
+    public static TransformerFactory fromSettings(final Map<String, String> settings) {
+        final TransformerConfig c = new TransformerConfig();
+        TransformBudget budget = TransformBudget.UNLIMITED;
+        for (final Map.Entry<String, String> setting : settings.entrySet()) {
+            final String value = setting.getValue();
+            try {
+                switch (setting.getKey()) {
+                    case "deadStoreElimination":
+                        c.deadStoreElimination = Boolean.parseBoolean(value);
+                        break;
+                    case "fusion":
+                        c.fusion = Boolean.parseBoolean(value);
+                        break;
+                    case "spillThreshold":
+                        c.spillThreshold = Math.max(Integer.parseInt(value), 0);
+                        break;
+                    case "interning":
+                        c.interning = Math.max(Integer.parseInt(value), 0);
+                        break;
+                    case "batchedScripts":
+                        c.batchedScripts = Boolean.parseBoolean(value);
+                        break;
+                    case "maxDuration":
+                        budget = budget.withMaxDuration(Duration.parse(value));
+                        break;
+                    case "maxCpuTime":
+                        budget = budget.withMaxCpuTime(Duration.parse(value));
+                        break;
+                    case "maxIterationElements":
+                        budget = budget.withMaxIterationElements(Long.parseLong(value));
+                        break;
+                    case "maxScriptElements":
+                        budget = budget.withMaxScriptElements(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown setting: " + setting.getKey());
+                }
+            } catch (final NumberFormatException | DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid value of the setting " + setting.getKey() + ": " + value,
+                        e);
+            }
+        }
+        c.budget = budget;
+        return new TransformerFactory(Collections.emptyMap(), null, c);
+    }
+
     private final Map<String, ExprFunction> functions;
+    private final Set<String> userFunctions;
     private final ScriptEngineFactory scriptEngineFactory;
+    private final TransformerConfig config;
 
     private TransformerFactory(final Map<String, ExprFunction> functions,
             final ScriptEngineFactory scriptEngineFactory) {
+        this(functions, scriptEngineFactory, new TransformerConfig());
+    }
+
+    private TransformerFactory(final Map<String, ExprFunction> functions,
+            final ScriptEngineFactory scriptEngineFactory, final TransformerConfig config) {
+        this.config = config;
         final Map<String, ExprFunction> result = builtin();
         result.putAll(functions);
         this.functions = Collections.unmodifiableMap(result);
+        this.userFunctions = Set.copyOf(functions.keySet());
         this.scriptEngineFactory = scriptEngineFactory;
     }
 
+    /**
+     * Creates a copy of this transformer factory with the dead store elimination
+     * enabled or disabled (it is enabled by default). When enabled, the
+     * transformations that only write values that are overwritten (or removed) by
+     * a later transformation before being read, are skipped by the created
+     * transformers. The skipped transformations are reported by
+     * {@link Transformer#getDiagnostics()}.
+     * 
+     * @param enabled true for enabling the dead store elimination
+     * @return the new transformer factory
+     */
+    public TransformerFactory withDeadStoreElimination(final boolean enabled) {
+        final TransformerConfig c = config.copy();
+        c.deadStoreElimination = enabled;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory with the fusion of transformations
+     * enabled or disabled (it is enabled by default). When enabled, the runs of
+     * consecutive transformations iterating over the same source array into the
+     * same result array (e.g., "/items[i]/a" to "/lines[i]/b", followed by
+     * "/items[i]/c" to "/lines[i]/d") are executed in a single pass over the
+     * source array. The fused transformations are reported by
+     * {@link Transformer#getDiagnostics()}.
+     * 
+     * @param enabled true for enabling the fusion of transformations
+     * @return the new transformer factory
+     */
+    public TransformerFactory withFusion(final boolean enabled) {
+        final TransformerConfig c = config.copy();
+        c.fusion = enabled;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where the created transformers
+     * use the given transform budget (see also
+     * {@link Transformer#withBudget(TransformBudget)}).
+     * 
+     * @param budget the transform budget
+     * @return the new transformer factory
+     */
+    public TransformerFactory withBudget(final TransformBudget budget) {
+        final TransformerConfig c = config.copy();
+        c.budget = budget;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where the generateUuid function
+     * writes the identifiers of the given generator, e.g., the time-ordered
+     * {@link IdGenerators#uuidV7()}, instead of the random UUIDs generated by
+     * UUID.randomUUID() (see {@link IdGenerators} for the built-in generators). A
+     * generateUuid function registered by the user still overrides this function.
+     * 
+     * @param idGenerator the identifier generator
+     * @return the new transformer factory
+     */
+    public TransformerFactory withIdGenerator(final IdGenerator idGenerator) {
+        final TransformerConfig c = config.copy();
+        c.idGenerator = idGenerator;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where the transformers use the
+     * given JSON provider (and a builder factory created once by each transformer)
+     * for creating the JSON values, pointers, objects and arrays during the
+     * transformations, and for parsing the source documents from input streams.
+     * By default, the provider found by JsonProvider.provider() is used, looked up
+     * only once (see {@link Utils#provider()}).
+     * 
+     * @param jsonProvider the JSON provider
+     * @return the new transformer factory
+     */
+    public TransformerFactory withJsonProvider(final JsonProvider jsonProvider) {
+        final TransformerConfig c = config.copy();
+        c.jsonProvider = jsonProvider;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where the result arrays growing
+     * by appending (with the "append" flag, or by flattening an [i] iteration)
+     * are spilled to temporary files when their size exceeds the given
+     * threshold. The spilled arrays are read-through JsonArray objects, streamed
+     * from their files when serialized or read by the later transformations, so
+     * the memory used by such an array no longer grows with its size. By default
+     * (threshold 0), the arrays are kept on the heap.
+     * 
+     * @param spillThreshold the maximum number of elements kept on the heap in an
+     *                       appended array, or 0 for no spilling
+     * @return the new transformer factory
+     */
+    public TransformerFactory withSpillThreshold(final int spillThreshold) {
+        final TransformerConfig c = config.copy();
+        c.spillThreshold = Math.max(spillThreshold, 0);
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where each created transformer
+     * interns the object keys and the short string values (up to
+     * {@value Interner#MAX_LENGTH} characters) of the objects it builds, as well
+     * as the JSON pointers it uses, in its own bounded tables, evicting the least
+     * recently used entries when full. The tables are seeded with the pointer
+     * tokens and the string literals of the transformations. The large resulting documents with a repetitive structure
+     * then share the instances of their keys and frequent values, instead of
+     * holding their own copies. The source documents are interned as well when
+     * they are parsed by the transformer (see
+     * {@link Transformer#transform(InputStream)}). By default (0 entries), nothing
+     * is interned.
+     * 
+     * @param maxEntries the maximum number of entries of each table (keys, values
+     *                   and pointers), or 0 for no interning
+     * @return the new transformer factory
+     */
+    public TransformerFactory withInterning(final int maxEntries) {
+        final TransformerConfig c = config.copy();
+        c.interning = Math.max(maxEntries, 0);
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Creates a copy of this transformer factory, where the scripts of the
+     * filter, map and reduce functions are evaluated for all values of the array
+     * (or fields of the object) in a single call of the script engine, instead of
+     * one call per value. A loop generated around the script sets the x variable
+     * to each value and collects the res variable after each value, keeping the
+     * semantics of the separate calls: the variables are global, res is reset
+     * only before the first value, and a value failing the script is logged and
+     * skipped. The scripts that could behave differently inside the loop (with
+     * the break or continue keywords, names starting with "__" or a "use strict"
+     * directive), and the scripts for which the generated loop does not compile,
+     * are evaluated separately for each value. Disabled by default.
+     * 
+     * @param batchedScripts true if the scripts are evaluated in a single call
+     * @return the new transformer factory
+     */
+    public TransformerFactory withBatchedScripts(final boolean batchedScripts) {
+        final TransformerConfig c = config.copy();
+        c.batchedScripts = batchedScripts;
+        return new TransformerFactory(userFunctions(), scriptEngineFactory, c);
+    }
+
+    /**
+     * Returns the settings of this factory as strings (the dead store elimination,
+     * fusion, spill threshold, interning, batched scripts and budget), such that
+     * an equivalent factory can be created with {@link #fromSettings(Map)}, e.g.,
+     * by the worker processes of a batch runner. The user functions, the script
+     * engine factory, the identifier generator and the JSON provider are objects
+     * that can not be written as strings, a factory with any of them can not be
+     * reproduced from its settings.
+     * 
+     * @return the settings of this factory
+     * @throws IllegalStateException thrown when this factory has user functions,
+     *                               a script engine factory, an identifier
+     *                               generator or a JSON provider
+     */
+    public Map<String, String> getSettings() {
+        if (!userFunctions.isEmpty()) {
+            throw new IllegalStateException("the factory has user functions: " + userFunctions);
+        }
+        if (scriptEngineFactory != null || config.idGenerator != null || config.jsonProvider != null) {
+            throw new IllegalStateException(
+                    "the factory has a script engine factory, an identifier generator or a JSON provider");
+        }
+        final Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("deadStoreElimination", String.valueOf(config.deadStoreElimination));
+        settings.put("fusion", String.valueOf(config.fusion));
+        settings.put("spillThreshold", String.valueOf(config.spillThreshold));
+        settings.put("interning", String.valueOf(config.interning));
+        settings.put("batchedScripts", String.valueOf(config.batchedScripts));
+        settings.put("maxDuration", Duration.ofNanos(config.budget.getMaxDurationNanos()).toString());
+        settings.put("maxCpuTime", Duration.ofNanos(config.budget.getMaxCpuTimeNanos()).toString());
+        settings.put("maxIterationElements", String.valueOf(config.budget.getMaxIterationElements()));
+        settings.put("maxScriptElements", String.valueOf(config.budget.getMaxScriptElements()));
+        return Collections.unmodifiableMap(settings);
+    }
+
     /**
      * Creates a new transformer from the String representation of the JSON document
      * of the transformer.
@@ -143,10 +398,13 @@ public class TransformerFactory {
         final JsonReader jsonReader = Json.createReader(new StringReader(content));
         final JsonObject object = jsonReader.readObject();
         jsonReader.close();
-        return new Transformer(object.get("transformations") == null ? Collections.emptyList()
+        final List<Transformation> transformations = object.get("transformations") == null
+                ? Collections.emptyList()
                 : object.getJsonArray("transformations").stream().map(this::toTransformation)
-                        .collect(Collectors.toList()),
-                scriptEngineFactory);
+                        .collect(Collectors.toList());
+        final List<String> diagnostics = new ArrayList<>();
+        final List<Transformation> plan = plan(transformations, diagnostics);
+        return newTransformer(plan, diagnostics);
     }
 
     /**
@@ -176,6 +434,39 @@ public class TransformerFactory {
         return createFromJsonString(content);
     }
 
+    /**
+     * Creates a new transformer from a binary snapshot, as written by
+     * {@link TransformerSnapshot#write(Transformer, java.io.OutputStream)}. The
+     * transformations use the functions and the script engine factory of this
+     * transformer factory. Only the bytes of the snapshot are read from the input
+     * stream, which is not closed.
+     * 
+     * @param in the input stream with the snapshot
+     * @return the transformer
+     * @throws IOException thrown when the stream can not be read, or when the
+     *                     snapshot is stale (written in a different format) or
+     *                     uses functions not registered in this factory
+     */
+    public Transformer createFromSnapshot(final InputStream in) throws IOException {
+        final Transformer transformer = TransformerSnapshot.read(in, functions, scriptEngineFactory);
+        return newTransformer(transformer.getTransformations(), transformer.getDiagnostics());
+    }
+
+    private Transformer newTransformer(final List<Transformation> plan, final List<String> diagnostics) {
+        JsonProvider jsonProvider = config.jsonProvider;
+        if (config.interning > 0) {
+            // each transformer has its own table, seeded with the pointers and literals of its plan
+            final Interner interner = new Interner(config.interning);
+            final InterningJsonProvider interningProvider = new InterningJsonProvider(
+                    jsonProvider == null ? Utils.provider() : jsonProvider, interner);
+            interner.seed(plan, interningProvider);
+            jsonProvider = interningProvider;
+        }
+        return new Transformer(plan, scriptEngineFactory, diagnostics, config.budget,
+                PlanOptimizer.streamingGroups(plan, userFunctions), SourceProjection.of(plan, userFunctions),
+                jsonProvider, config.spillThreshold, config.batchedScripts);
+    }
+
     /**
      * Creates a new Transformation object from the JsonValue of that transformation
      * document.
@@ -192,7 +483,34 @@ public class TransformerFactory {
                 t.get("expressions") == null ? Collections.emptyList()
                         : t.getJsonArray("expressions").stream().map(x -> ((JsonString) x).getString())
                                 .collect(Collectors.toList()),
-                functions);
+                functions, toMemoSize(t.get("memoize")), t.get("when"));
+    }
+
+    private static int toMemoSize(final JsonValue memoize) {
+        if (TRUE.equals(memoize)) {
+            return Transformation.DEFAULT_MEMO_SIZE;
+        }
+        if (memoize instanceof JsonNumber) {
+            return ((JsonNumber) memoize).intValue();
+        }
+        return 0;
+    }
+
+    private List<Transformation> plan(final List<Transformation> transformations, final List<String> diagnostics) {
+        List<Transformation> plan = transformations;
+        if (config.deadStoreElimination) {
+            plan = PlanOptimizer.eliminateDeadStores(plan, userFunctions, diagnostics);
+        }
+        if (config.fusion) {
+            plan = PlanOptimizer.fuse(plan, userFunctions, diagnostics);
+        }
+        return plan;
+    }
+
+    private Map<String, ExprFunction> userFunctions() {
+        final Map<String, ExprFunction> result = new HashMap<>();
+        userFunctions.forEach(x -> result.put(x, functions.get(x)));
+        return result;
     }
 
     private Map<String, ExprFunction> builtin() {
@@ -200,11 +518,20 @@ public class TransformerFactory {
         result.put("copy", ExprFunction.COPY);
         result.put("move", ExprFunction.MOVE);
         result.put("remove", ExprFunction.REMOVE);
-        result.put("generateUuid", ExprFunction.GENERATE_UUID);
+        result.put("generateUuid", config.idGenerator == null ? ExprFunction.GENERATE_UUID
+                : ExprFunction.generateId(config.idGenerator));
         result.put("script", ExprFunction.SCRIPT);
         result.put("filter", ExprFunction.FILTER);
         result.put("map", ExprFunction.MAP);
         result.put("reduce", ExprFunction.REDUCE);
+        result.put("sum", ExprFunction.SUM);
+        result.put("count", ExprFunction.COUNT);
+        result.put("min", ExprFunction.MIN);
+        result.put("max", ExprFunction.MAX);
+        result.put("avg", ExprFunction.AVG);
+        result.put("distinctCount", ExprFunction.DISTINCT_COUNT);
+        result.put("lookup", ExprFunction.LOOKUP);
+        result.put("join", ExprFunction.JOIN);
         return result;
     }
 }
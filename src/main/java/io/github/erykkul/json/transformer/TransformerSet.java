@@ -0,0 +1,174 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import jakarta.json.JsonObject;
+
+/**
+ * A set of named transformers applied to the same source document, e.g., for
+ * producing different views of the same document. The transformers of the set
+ * share a single engine holder during each transform call (one per script
+ * engine factory and JSON provider), such that a single script engine is created for all
+ * transformers, and the source pointers resolved and the lookup indexes built
+ * by one transformer are reused by the others (see {@link TransformCache}).
+ * Each transformer gets its own global scope in the shared script engine (see
+ * {@link EngineHolder#resetBindings()}), so the variables defined by the
+ * scripts of one transformer are not visible to the others, and the results are
+ * the same as when the transformers are executed separately. The
+ * transformers can also be executed in parallel with
+ * {@link #transformAsync(JsonObject, Executor)}, in which case each
+ * transformer uses its own engine holder. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#transformer-sets">Transformer
+ * sets</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class TransformerSet {
+    private final Map<String, Transformer> transformers;
+    private final TransformBudget budget;
+    private final SourceProjection projection;
+
+    /**
+     * Class constructor.
+     *
+     * @param transformers the transformers by their names, the results are
+     *                     returned in the iteration order of this map
+     */
+    public TransformerSet(final Map<String, Transformer> transformers) {
+        this(transformers, TransformBudget.UNLIMITED);
+    }
+
+    private TransformerSet(final Map<String, Transformer> transformers, final TransformBudget budget) {
+        this.transformers = Collections.unmodifiableMap(new LinkedHashMap<>(transformers));
+        this.budget = budget;
+        this.projection = SourceProjection.union(this.transformers.values().stream().map(Transformer::getProjection)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Creates a copy of this set with the given transform budget, shared by all
+     * transformers of the set during a transform call (the budgets of the
+     * transformers themselves are not used by the set).
+     *
+     * @param budget the transform budget
+     * @return the new set
+     */
+    public TransformerSet withBudget(final TransformBudget budget) {
+        return new TransformerSet(transformers, budget);
+    }
+
+    /**
+     * Transforms the source document with each transformer of the set, one after
+     * another, sharing the engine holders (with a new global scope of the script
+     * engine, and the spill threshold and batched scripts settings of the
+     * transformer, for each transformer).
+     *
+     * @param source the source JSON document
+     * @return the transformed JSON documents by the names of their transformers
+     * @throws BudgetExceededException thrown when the transform budget of this
+     *                                 set is exceeded
+     */
+    public Map<String, JsonObject> transform(final JsonObject source) {
+        final Map<List<Object>, EngineHolder> engineHolders = new HashMap<>();
+        final Map<String, JsonObject> results = new LinkedHashMap<>();
+        transformers.forEach((name, transformer) -> {
+            final EngineHolder engineHolder = engineHolders.computeIfAbsent(
+                    Arrays.asList(transformer.getScriptEngineFactory(), transformer.getJsonProvider()),
+                    x -> transformer.newEngineHolder(budget));
+            engineHolder.resetBindings();
+            engineHolder.setSpillThreshold(transformer.getSpillThreshold());
+            engineHolder.setBatchedScripts(transformer.isBatchedScripts());
+            results.put(name, transformer.transform(source, engineHolder));
+        });
+        return results;
+    }
+
+    /**
+     * Transforms the source document parsed from the input stream with each
+     * transformer of the set (see {@link #transform(JsonObject)}). The source
+     * document is parsed only once, skipping the values that are not read by any
+     * of the transformers (see {@link Transformer#parse(InputStream)}). The input
+     * stream is not closed.
+     *
+     * @param in the input stream with the source JSON document
+     * @return the transformed JSON documents by the names of their transformers
+     * @throws jakarta.json.JsonException thrown when the source document can not
+     *                                    be parsed
+     * @throws BudgetExceededException    thrown when the transform budget of this
+     *                                    set is exceeded
+     */
+    public Map<String, JsonObject> transform(final InputStream in) {
+        return transform(parse(in));
+    }
+
+    /**
+     * Parses the source JSON document from the input stream as in
+     * {@link #transform(InputStream)}.
+     *
+     * @param in the input stream with the source JSON document
+     * @return the source JSON document with the values read by the transformers
+     * @throws jakarta.json.JsonException thrown when the source document can not
+     *                                    be parsed
+     */
+    public JsonObject parse(final InputStream in) {
+        return projection.read(in);
+    }
+
+    /**
+     * Transforms the source document with each transformer of the set in parallel
+     * on the given executor. Each transformer uses its own engine holder (the
+     * script engines and the transform caches can not be shared between the
+     * threads).
+     *
+     * @param source   the source JSON document
+     * @param executor the executor running the transformers
+     * @return the future of the transformed JSON documents by the names of their
+     *         transformers
+     */
+    public CompletableFuture<Map<String, JsonObject>> transformAsync(final JsonObject source,
+            final Executor executor) {
+        final List<String> names = new ArrayList<>(transformers.keySet());
+        final List<CompletableFuture<JsonObject>> futures = new ArrayList<>();
+        transformers.values().forEach(x -> futures.add(CompletableFuture.supplyAsync(
+                () -> x.transform(source, x.newEngineHolder(budget)), executor)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(x -> {
+            final Map<String, JsonObject> results = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                results.put(names.get(i), futures.get(i).join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Getter for the transformers of this set.
+     *
+     * @return the transformers by their names
+     */
+    public Map<String, Transformer> getTransformers() {
+        return transformers;
+    }
+
+    /**
+     * Getter for the transform budget of this set.
+     *
+     * @return the transform budget
+     */
+    public TransformBudget getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,188 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.script.ScriptEngineFactory;
+
+import jakarta.json.Json;
+
+/**
+ * Binary snapshots of the transformers, as created by the transformer factory
+ * (including the imported JavaScript sources and the optimized transformations
+ * plan). Loading a snapshot skips reading and escaping the imported files,
+ * parsing the JSON document of the transformer and optimizing the plan. The
+ * snapshots contain a format version, and the snapshots written in a different
+ * format are rejected when loaded. The snapshots also contain their length,
+ * such that loading a snapshot reads exactly its bytes from the stream (e.g.,
+ * several snapshots can be written to the same stream). See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#snapshots">Snapshots</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class TransformerSnapshot {
+    /**
+     * The version of the snapshot format, changed each time the format (or the
+     * meaning of the stored plan) changes.
+     */
+    public static final int FORMAT_VERSION = 3;
+    private static final int MAGIC = 0x4A54534E; // "JTSN"
+
+    private TransformerSnapshot() {
+    }
+
+    /**
+     * Writes the binary snapshot of the transformer to the output stream. The
+     * stream is flushed, but not closed.
+     *
+     * @param transformer the transformer, as created by the transformer factory
+     * @param out         the output stream
+     * @throws IOException thrown when writing to the stream fails
+     */
+    public static void write(final Transformer transformer, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(body);
+        final List<Transformation> plan = transformer.getTransformations();
+        final Set<String> functions = new TreeSet<>();
+        plan.forEach(t -> t.getExpressions().stream().map(TransformerSnapshot::functionName)
+                .filter(x -> t.getFunctions().containsKey(x)).forEach(functions::add));
+        data.writeInt(functions.size());
+        for (final String function : functions) {
+            writeString(data, function);
+        }
+        data.writeInt(plan.size());
+        for (final Transformation t : plan) {
+            final List<Transformation> members = t instanceof FusedTransformation
+                    ? ((FusedTransformation) t).getMembers()
+                    : List.of(t);
+            data.writeInt(members.size());
+            for (final Transformation member : members) {
+                writeTransformation(data, member);
+            }
+        }
+        data.writeInt(transformer.getDiagnostics().size());
+        for (final String diagnostic : transformer.getDiagnostics()) {
+            writeString(data, diagnostic);
+        }
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(body.size());
+        body.writeTo(out);
+        out.flush();
+    }
+
+    // reads exactly the bytes of the snapshot, the stream is not buffered beyond its end
+    static Transformer read(final InputStream in, final Map<String, ExprFunction> functions,
+            final ScriptEngineFactory scriptEngineFactory) throws IOException {
+        final DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("not a transformer snapshot");
+        }
+        final int version = header.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("stale transformer snapshot: format version " + version + ", expected "
+                    + FORMAT_VERSION);
+        }
+        final int length = header.readInt();
+        if (length < 0) {
+            throw new IOException("corrupted transformer snapshot");
+        }
+        final byte[] body = new byte[length];
+        header.readFully(body);
+        final DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+        final int functionsSize = data.readInt();
+        for (int i = 0; i < functionsSize; i++) {
+            final String function = readString(data);
+            if (!functions.containsKey(function)) {
+                throw new IOException("transformer snapshot uses function \"" + function
+                        + "\" that is not registered in the transformer factory");
+            }
+        }
+        final int size = data.readInt();
+        final List<Transformation> plan = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final int count = data.readInt();
+            final List<Transformation> members = new ArrayList<>(count);
+            for (int m = 0; m < count; m++) {
+                members.add(readTransformation(data, functions));
+            }
+            plan.add(count == 1 ? members.get(0) : new FusedTransformation(members));
+        }
+        final int diagnosticsSize = data.readInt();
+        final List<String> diagnostics = new ArrayList<>(diagnosticsSize);
+        for (int i = 0; i < diagnosticsSize; i++) {
+            diagnostics.add(readString(data));
+        }
+        return new Transformer(plan, scriptEngineFactory, diagnostics, TransformBudget.UNLIMITED, null, null,
+                null, 0, false);
+    }
+
+    private static void writeTransformation(final DataOutputStream data, final Transformation t)
+            throws IOException {
+        data.writeBoolean(t.isAppend());
+        data.writeBoolean(t.useResultAsSource());
+        writeString(data, t.getSourcePointer());
+        writeString(data, t.getResultPointer());
+        data.writeInt(t.getMemoSize());
+        data.writeInt(t.getExpressions().size());
+        for (final String expression : t.getExpressions()) {
+            writeString(data, expression);
+        }
+        writeString(data, t.getWhen() == null ? "" : t.getWhen().toString());
+    }
+
+    private static Transformation readTransformation(final DataInputStream data,
+            final Map<String, ExprFunction> functions) throws IOException {
+        final boolean append = data.readBoolean();
+        final boolean useResultAsSource = data.readBoolean();
+        final String sourcePointer = readString(data);
+        final String resultPointer = readString(data);
+        final int memoSize = data.readInt();
+        final int size = data.readInt();
+        final List<String> expressions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            expressions.add(readString(data));
+        }
+        final String when = readString(data);
+        return new Transformation(append, useResultAsSource, sourcePointer, resultPointer, expressions, functions,
+                memoSize, when.isEmpty() ? null : Json.createReader(new StringReader(when)).readValue());
+    }
+
+    private static String functionName(final String expression) {
+        return expression.isEmpty() || expression.startsWith("\"") ? "" : expression.split("\\(")[0];
+    }
+
+    private static void writeString(final DataOutputStream data, final String value) throws IOException {
+        // not writeUTF: the imported JavaScript sources can exceed its 64KB limit
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(final DataInputStream data) throws IOException {
+        final int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("corrupted transformer snapshot");
+        }
+        final byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -10,17 +10,21 @@ import static jakarta.json.JsonValue.ValueType.OBJECT;
 
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
+import jakarta.json.JsonBuilderFactory;
 import jakarta.json.JsonException;
 import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
@@ -28,6 +32,7 @@ import jakarta.json.JsonString;
 import jakarta.json.JsonStructure;
 import jakarta.json.JsonValue;
 import jakarta.json.JsonValue.ValueType;
+import jakarta.json.spi.JsonProvider;
 
 /**
  * Utils class as used by this library. See documentation: <a href=
@@ -35,12 +40,42 @@ import jakarta.json.JsonValue.ValueType;
  * Transformer</a>
  * 
  * @author Eryk Kulikowski
- * @version 1.0.2
+ * @version 1.1.0
  * @since 1.0.0
  */
 public class Utils {
 
     private static final Logger logger = Logger.getLogger(Utils.class.getName());
+    // the scripts that would behave differently inside the generated loop: a break or a continue could
+    // bind to the loop, the names starting with "__" could clash with its variables, and a "use strict"
+    // directive would no longer be a directive
+    private static final Pattern UNBATCHABLE = Pattern.compile("\\b(?:break|continue)\\b|__|use strict");
+    // JsonProvider.provider() looks up the provider with the ServiceLoader on each call, e.g., in Json.createValue
+    private static final JsonProvider provider = JsonProvider.provider();
+    private static final JsonBuilderFactory builderFactory = provider.createBuilderFactory(null);
+
+    /**
+     * Returns the default JSON provider, looked up only once, when this class is
+     * loaded. Contrary to the static methods of the Json class, that look up the
+     * provider on each call, the methods of this class and the transformers use
+     * this provider, unless another provider is configured in the transformer
+     * factory (see {@link TransformerFactory#withJsonProvider(JsonProvider)}).
+     * 
+     * @return the default JSON provider
+     */
+    public static JsonProvider provider() {
+        return provider;
+    }
+
+    /**
+     * Returns the builder factory of the default JSON provider (see
+     * {@link #provider()}), created only once.
+     * 
+     * @return the default builder factory
+     */
+    public static JsonBuilderFactory builderFactory() {
+        return builderFactory;
+    }
 
     /**
      * Creates JsonValues when needed to make the JSON Pointer a valid JSON Pointer
@@ -53,6 +88,11 @@ public class Utils {
      *         valid
      */
     public static JsonValue fixPath(final JsonValue in, final JsonValue.ValueType t, final String jsonPointer) {
+        return fixPath(provider, in, t, jsonPointer);
+    }
+
+    static JsonValue fixPath(final JsonProvider provider, final JsonValue in, final JsonValue.ValueType t,
+            final String jsonPointer) {
         final String[] fields = jsonPointer.split("/");
         JsonValue result = in;
         String path = "";
@@ -60,11 +100,11 @@ public class Utils {
             if (!"".equals(fields[i])) {
                 path = path + "/" + fields[i];
             }
-            if (notContainsValue(result, path)) {
+            if (notContainsValue(provider, result, path)) {
                 if (i < fields.length - 1 || OBJECT.equals(t)) {
-                    result = add(result, path, EMPTY_JSON_OBJECT);
+                    result = add(provider, result, path, EMPTY_JSON_OBJECT);
                 } else {
-                    result = add(result, path, EMPTY_JSON_ARRAY);
+                    result = add(provider, result, path, EMPTY_JSON_ARRAY);
                 }
             }
         }
@@ -89,13 +129,74 @@ public class Utils {
      * @return the value
      */
     public static JsonValue getValue(final JsonValue source, final String pointer) {
+        return getValue(provider, source, pointer);
+    }
+
+    static JsonValue getValue(final JsonProvider provider, final JsonValue source, final String pointer) {
         if ("".equals(pointer)) {
             return source;
         }
-        if (notContainsValue(source, pointer)) {
+        if (notContainsValue(provider, source, pointer)) {
+            return NULL;
+        }
+        return provider.createPointer(pointer).getValue(asJsonStructure(source));
+    }
+
+    /**
+     * Retrieves the value as pointed by the JSON Pointer tokens (see
+     * {@link #tokens(String)}) from the source document. Contrary to
+     * {@link #getValue(JsonValue, String)}, this method does not parse the pointer
+     * and does not create any objects, which makes it suitable for resolving the
+     * same pointer on many values.
+     * 
+     * @param source the source document
+     * @param tokens the unescaped reference tokens of the pointer
+     * @return the value, or JsonValue.NULL when the value does not exist
+     */
+    public static JsonValue getValue(final JsonValue source, final String[] tokens) {
+        if (tokens == null) {
             return NULL;
         }
-        return Json.createPointer(pointer).getValue(asJsonStructure(source));
+        JsonValue current = source;
+        for (final String token : tokens) {
+            if (current instanceof JsonObject) {
+                current = ((JsonObject) current).get(token);
+            } else if (current instanceof JsonArray) {
+                final int idx = arrayIndex(token);
+                final JsonArray array = (JsonArray) current;
+                current = idx >= 0 && idx < array.size() ? array.get(idx) : null;
+            } else {
+                return NULL;
+            }
+            if (current == null) {
+                return NULL;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Splits the JSON Pointer into its unescaped reference tokens, e.g., "/a~1b/0"
+     * results in ["a/b", "0"].
+     * 
+     * @param pointer the JSON Pointer
+     * @return the reference tokens, or null when the pointer is not a valid JSON
+     *         Pointer
+     */
+    public static String[] tokens(final String pointer) {
+        if (pointer.isEmpty()) {
+            return new String[0];
+        }
+        if (pointer.charAt(0) != '/') {
+            return null;
+        }
+        final String[] tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].indexOf('~') >= 0) {
+                tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+            }
+        }
+        return tokens;
     }
 
     /**
@@ -107,13 +208,18 @@ public class Utils {
      * @return the "in" value with the replaced value
      */
     public static JsonValue replace(final JsonValue in, final String at, final JsonValue with) {
+        return replace(provider, in, at, with);
+    }
+
+    static JsonValue replace(final JsonProvider provider, final JsonValue in, final String at,
+            final JsonValue with) {
         if ("".equals(at)) {
             return with;
         }
-        if (notContainsValue(in, at)) {
-            return add(in, at, with);
+        if (notContainsValue(provider, in, at)) {
+            return add(provider, in, at, with);
         }
-        return Json.createPointer(at).replace(asJsonStructure(in), with);
+        return provider.createPointer(at).replace(asJsonStructure(in), with);
     }
 
     /**
@@ -124,10 +230,14 @@ public class Utils {
      * @return the "in" document with the value removed
      */
     public static JsonValue remove(final JsonValue in, final String at) {
-        if (notContainsValue(in, at)) {
+        return remove(provider, in, at);
+    }
+
+    static JsonValue remove(final JsonProvider provider, final JsonValue in, final String at) {
+        if (notContainsValue(provider, in, at)) {
             return in;
         }
-        return Json.createPointer(at).remove(asJsonStructure(in));
+        return provider.createPointer(at).remove(asJsonStructure(in));
     }
 
     /**
@@ -187,6 +297,18 @@ public class Utils {
             final ScriptEngineManager manager = new ScriptEngineManager();
             engine = manager.getEngineByName("javascript");
         }
+        defineGlobals(engine);
+        engineHolder.setEngine(engine);
+        return engine;
+    }
+
+    /**
+     * Defines the global variables available to all scripts (Map, Set, List,
+     * Collectors and JsonValue) in the engine scope of the script engine.
+     * 
+     * @param engine the script engine
+     */
+    static void defineGlobals(final ScriptEngine engine) {
         try {
             engine.eval("Map = Java.type('java.util.LinkedHashMap')");
             engine.eval("Set = Java.type('java.util.LinkedHashSet')");
@@ -196,8 +318,6 @@ public class Utils {
         } catch (final Exception e) {
             logger.severe("Script engine for javascript not found: " + e);
         }
-        engineHolder.setEngine(engine);
-        return engine;
     }
 
     /**
@@ -236,6 +356,72 @@ public class Utils {
         }
     }
 
+    /**
+     * Evaluates the script for all values in a single call of the script engine
+     * (see {@link TransformerFactory#withBatchedScripts(boolean)}). A loop is
+     * generated around the script, setting the x variable to each value and
+     * passing the value of the res variable after each value to the collect
+     * function, such that it is converted before the next value is evaluated
+     * (e.g., when the script reuses and modifies the same object). The res
+     * variable is
+     * set to null before the loop only, and the variables of the script are
+     * global, as when the script is evaluated for each value separately. A
+     * failing value is logged and skipped, also as when evaluated separately. The
+     * scripts containing the break or continue keywords, names starting with
+     * "__" (the names of the variables of the loop) or a "use strict" directive
+     * are not batched, as they could behave differently inside the loop.
+     * 
+     * @param engineHolder the engine holder
+     * @param script       the script
+     * @param values       the values passed as x variables
+     * @param collect      converts the value of the res variable after each
+     *                     value, or null when only the final res is needed
+     * @return the converted values of the res variable after each value (null
+     *         values when not collected), or null when the
+     *         script is not batched or the generated loop can not be evaluated
+     *         (e.g., the script does not compile), in which case the values should
+     *         be evaluated separately
+     */
+    static Object[] evalBatch(final EngineHolder engineHolder, final String script, final List<JsonValue> values,
+            final Function<Object, Object> collect) {
+        if (UNBATCHABLE.matcher(script).find()) {
+            return null;
+        }
+        final Object[] xs = new Object[values.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = asObject(values.get(i));
+        }
+        final Object[] results = new Object[xs.length];
+        final Object[] errors = new Object[xs.length];
+        try {
+            final ScriptEngine engine = engine(engineHolder);
+            engine.put("__xs", xs);
+            final int[] next = new int[1];
+            engine.put("__collect", (Consumer<Object>) res -> results[next[0]++] = collect.apply(res));
+            engine.put("__errors", errors);
+            // the script is evaluated at the top level, such that its variables are global as in eval
+            final String collected = collect == null ? "" : " __collect.accept(res);";
+            engine.eval("res = null; for (var __i = 0; __i < __xs.length; __i++) { x = __xs[__i]; try {\n" + script
+                    + "\n} catch (__e) { __errors[__i] = String(__e); }" + collected + " }");
+        } catch (final Exception e) {
+            logger.fine("Batched script failed, evaluating the values separately: " + e);
+            return null;
+        } finally {
+            final ScriptEngine engine = engineHolder.getEngine();
+            if (engine != null) {
+                engine.put("__xs", null);
+                engine.put("__collect", null);
+                engine.put("__errors", null);
+            }
+        }
+        for (final Object error : errors) {
+            if (error != null) {
+                logger.severe("Script failed: " + error);
+            }
+        }
+        return results;
+    }
+
     /**
      * Retrieves an object from the script engine.
      * 
@@ -259,20 +445,25 @@ public class Utils {
      * @param o the object
      * @return the JSON value
      */
-    @SuppressWarnings("unchecked")
     public static JsonValue asJsonValue(final Object o) {
+        return asJsonValue(provider, builderFactory, o);
+    }
+
+    @SuppressWarnings("unchecked")
+    static JsonValue asJsonValue(final JsonProvider provider, final JsonBuilderFactory builderFactory,
+            final Object o) {
         if (o instanceof Number) {
-            return Json.createValue((Number) o);
+            return provider.createValue((Number) o);
         } else if (o instanceof String) {
-            return Json.createValue((String) o);
+            return provider.createValue((String) o);
         } else if (o instanceof Map) {
             try {
-                return Json.createObjectBuilder((Map<String, ?>) o).build();
+                return builderFactory.createObjectBuilder((Map<String, Object>) o).build();
             } catch (final ClassCastException e) {
                 return JsonValue.NULL;
             }
         } else if (o instanceof Collection) {
-            return Json.createArrayBuilder((Collection<?>) o).build();
+            return builderFactory.createArrayBuilder((Collection<?>) o).build();
         }
         return JsonValue.NULL;
     }
@@ -303,20 +494,37 @@ public class Utils {
         return JsonValue.NULL;
     }
 
-    private static JsonValue add(final JsonValue in, final String at, final JsonValue value) {
+    private static int arrayIndex(final String token) {
+        final int length = token.length();
+        if (length == 0) {
+            return -1;
+        }
+        long idx = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            idx = Math.min(idx * 10 + c - '0', Integer.MAX_VALUE);
+        }
+        return (int) idx;
+    }
+
+    private static JsonValue add(final JsonProvider provider, final JsonValue in, final String at,
+            final JsonValue value) {
         try {
-            return Json.createPointer(at).add(asJsonStructure(in), value);
+            return provider.createPointer(at).add(asJsonStructure(in), value);
         } catch (final JsonException e) {
             return in;
         }
     }
 
-    private static boolean notContainsValue(final JsonValue in, final String at) {
+    private static boolean notContainsValue(final JsonProvider provider, final JsonValue in, final String at) {
         if (isEmpty(in)) {
             return true;
         }
         try {
-            return !Json.createPointer(at).containsValue(asJsonStructure(in));
+            return !provider.createPointer(at).containsValue(asJsonStructure(in));
         } catch (final JsonException e) {
             return true;
         }
@@ -0,0 +1,151 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+
+/**
+ * The report of a {@link Transformer#warmUp(java.util.List, int)} call. The
+ * warm-up transforms the sample documents in rounds of at least
+ * {@link #ROUND_MILLIS} milliseconds and measures the throughput of each round.
+ * The throughput is considered stable when the throughputs of the last
+ * {@link #STABLE_ROUNDS} rounds differ by at most {@link #STABLE_TOLERANCE} of
+ * the highest of them, in which case the warm-up stops early. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#warm-up">Warm-up</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class WarmUpReport {
+    /**
+     * The minimum duration of a measured round in milliseconds.
+     */
+    public static final long ROUND_MILLIS = 10;
+    /**
+     * The number of the last rounds compared to decide if the throughput is
+     * stable.
+     */
+    public static final int STABLE_ROUNDS = 5;
+    /**
+     * The maximum relative difference between the throughputs of the last rounds
+     * when the throughput is stable.
+     */
+    public static final double STABLE_TOLERANCE = 0.1;
+
+    private final long iterations;
+    private final long stableAfterIterations;
+    private final double initialThroughput;
+    private final double throughput;
+    private final Duration duration;
+    private final long errors;
+
+    WarmUpReport(final long iterations, final long stableAfterIterations, final double initialThroughput,
+            final double throughput, final Duration duration, final long errors) {
+        this.iterations = iterations;
+        this.stableAfterIterations = stableAfterIterations;
+        this.initialThroughput = initialThroughput;
+        this.throughput = throughput;
+        this.duration = duration;
+        this.errors = errors;
+    }
+
+    /**
+     * Checks if the throughput has stabilised during the warm-up.
+     *
+     * @return true if the throughput is stable
+     */
+    public boolean isStable() {
+        return stableAfterIterations >= 0;
+    }
+
+    /**
+     * Getter for the number of the transformed documents after which the
+     * throughput was stable.
+     *
+     * @return the number of iterations, or -1 when the throughput has not
+     *         stabilised
+     */
+    public long getStableAfterIterations() {
+        return stableAfterIterations;
+    }
+
+    /**
+     * Getter for the number of the transformed documents.
+     *
+     * @return the number of iterations
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Getter for the throughput of the first round.
+     *
+     * @return the throughput in documents per second
+     */
+    public double getInitialThroughput() {
+        return initialThroughput;
+    }
+
+    /**
+     * Getter for the throughput of the last round.
+     *
+     * @return the throughput in documents per second
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Getter for the duration of the warm-up.
+     *
+     * @return the duration
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Getter for the number of the transformations that failed with an exception
+     * during the warm-up, e.g., when the scripts do not accept the synthesized
+     * sample documents.
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Creates a JSON representation of the report.
+     *
+     * @return the JSON representation of the report
+     */
+    public JsonObject toJsonObject() {
+        return Json.createObjectBuilder().add("stable", isStable()).add("iterations", iterations)
+                .add("stableAfterIterations", stableAfterIterations).add("initialThroughput", initialThroughput)
+                .add("throughput", throughput).add("durationMillis", duration.toMillis()).add("errors", errors)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return toJsonObject().toString();
+    }
+
+    static boolean isStable(final List<Double> rounds) {
+        if (rounds.size() < STABLE_ROUNDS) {
+            return false;
+        }
+        final List<Double> last = rounds.subList(rounds.size() - STABLE_ROUNDS, rounds.size());
+        final double max = Collections.max(last);
+        return max - Collections.min(last) <= STABLE_TOLERANCE * max;
+    }
+}
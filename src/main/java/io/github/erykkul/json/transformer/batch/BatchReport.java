@@ -0,0 +1,204 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.batch;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+
+/**
+ * The report of a {@link BatchRunner#run(java.io.InputStream, java.io.OutputStream)}
+ * call, with the totals of the run and the statistics of each worker. See
+ * documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#batch-execution">Batch
+ * execution</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class BatchReport {
+    private final List<Worker> workers;
+    private final Duration duration;
+
+    BatchReport(final List<Worker> workers, final Duration duration) {
+        this.workers = Collections.unmodifiableList(workers);
+        this.duration = duration;
+    }
+
+    /**
+     * Getter for the statistics of the workers.
+     *
+     * @return the statistics of each worker
+     */
+    public List<Worker> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Getter for the number of the transformed documents.
+     *
+     * @return the number of documents
+     */
+    public long getDocuments() {
+        return workers.stream().mapToLong(Worker::getDocuments).sum();
+    }
+
+    /**
+     * Getter for the number of the transformed shards.
+     *
+     * @return the number of shards
+     */
+    public long getShards() {
+        return workers.stream().mapToLong(Worker::getShards).sum();
+    }
+
+    /**
+     * Getter for the number of the worker processes restarted after a crash.
+     *
+     * @return the number of restarts
+     */
+    public long getRestarts() {
+        return workers.stream().mapToLong(Worker::getRestarts).sum();
+    }
+
+    /**
+     * Getter for the duration of the run.
+     *
+     * @return the duration
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Getter for the overall throughput of the run.
+     *
+     * @return the throughput in documents per second
+     */
+    public double getThroughput() {
+        return getDocuments() * 1e9 / Math.max(duration.toNanos(), 1);
+    }
+
+    /**
+     * Creates a JSON representation of the report.
+     *
+     * @return the JSON representation of the report
+     */
+    public JsonObject toJsonObject() {
+        final JsonArrayBuilder builder = Json.createArrayBuilder();
+        workers.forEach(x -> builder.add(x.toJsonObject()));
+        return Json.createObjectBuilder().add("documents", getDocuments()).add("shards", getShards())
+                .add("restarts", getRestarts()).add("durationMillis", duration.toMillis())
+                .add("throughput", getThroughput()).add("workers", builder).build();
+    }
+
+    @Override
+    public String toString() {
+        return toJsonObject().toString();
+    }
+
+    /**
+     * The statistics of a worker: a worker transforms the shards sent to its
+     * worker process, one after another, and restarts the process when it
+     * crashes.
+     */
+    public static final class Worker {
+        private final int index;
+        private long documents;
+        private long shards;
+        private long restarts;
+        private long busyNanos;
+
+        Worker(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * Getter for the index of the worker.
+         *
+         * @return the index, from 0 to the number of workers - 1
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Getter for the number of the documents transformed by the worker.
+         *
+         * @return the number of documents
+         */
+        public long getDocuments() {
+            return documents;
+        }
+
+        /**
+         * Getter for the number of the shards transformed by the worker.
+         *
+         * @return the number of shards
+         */
+        public long getShards() {
+            return shards;
+        }
+
+        /**
+         * Getter for the number of the restarts of the worker process after a
+         * crash.
+         *
+         * @return the number of restarts
+         */
+        public long getRestarts() {
+            return restarts;
+        }
+
+        /**
+         * Getter for the time the worker spent transforming the shards, including
+         * the failed attempts.
+         *
+         * @return the busy time
+         */
+        public Duration getBusyTime() {
+            return Duration.ofNanos(busyNanos);
+        }
+
+        /**
+         * Getter for the throughput of the worker while it was busy.
+         *
+         * @return the throughput in documents per second
+         */
+        public double getThroughput() {
+            return documents * 1e9 / Math.max(busyNanos, 1);
+        }
+
+        void shard(final int size, final long nanos) {
+            shards++;
+            documents += size;
+            busyNanos += nanos;
+        }
+
+        void failure(final long nanos) {
+            restarts++;
+            busyNanos += nanos;
+        }
+
+        /**
+         * Creates a JSON representation of the statistics.
+         *
+         * @return the JSON representation of the statistics
+         */
+        public JsonObject toJsonObject() {
+            return Json.createObjectBuilder().add("index", index).add("documents", documents).add("shards", shards)
+                    .add("restarts", restarts).add("busyMillis", busyNanos / 1000000)
+                    .add("throughput", getThroughput()).build();
+        }
+
+        @Override
+        public String toString() {
+            return toJsonObject().toString();
+        }
+    }
+}
@@ -0,0 +1,473 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import io.github.erykkul.json.transformer.TransformerFactory;
+
+/**
+ * Transforms large NDJSON inputs with several local worker JVMs, such that the
+ * transformations are not limited by the heap (and the garbage collection) of
+ * a single JVM. The input is partitioned into shards of consecutive lines, and
+ * each shard is streamed over a pipe to one of the worker processes (see
+ * {@link BatchWorker}), started with the same Java runtime and class path as
+ * the current JVM, each loading the same transformer file with the settings of
+ * the same transformer factory. The transformed shards are merged into the
+ * output in the order of the input, or as soon as they are transformed
+ * (unordered). When a worker process crashes, or does not transform its shard
+ * within the shard timeout, it is killed and restarted, and its shard is
+ * transformed again, at most the given number of times. At most two shards
+ * per worker are held in memory at any time, the input is not read further
+ * until the output catches up. See documentation:
+ * <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#batch-execution">Batch
+ * execution</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class BatchRunner {
+    /**
+     * The default number of lines in a shard.
+     */
+    public static final int DEFAULT_SHARD_SIZE = 1000;
+    /**
+     * The default maximum number of times a shard is retried after a crash of the
+     * worker process transforming it.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    private static final Logger logger = Logger.getLogger(BatchRunner.class.getName());
+    private static final List<String> END = Collections.emptyList();
+
+    private final String transformerFile;
+    private final int workers;
+    private final int shardSize;
+    private final boolean ordered;
+    private final int maxRetries;
+    private final List<String> jvmOptions;
+    private final Map<String, String> settings;
+    private final Duration shardTimeout;
+
+    /**
+     * Creates a runner with the given number of worker processes, merging the
+     * output in the input order, with the default shard size and retries.
+     *
+     * @param transformerFile the path of the file with the JSON document of the
+     *                        transformer, loaded by each worker with
+     *                        TransformerFactory.factory().createFromFile (see
+     *                        also {@link #withFactory(TransformerFactory)})
+     * @param workers         the number of the worker processes
+     */
+    public BatchRunner(final String transformerFile, final int workers) {
+        this(transformerFile, workers, DEFAULT_SHARD_SIZE, true, DEFAULT_MAX_RETRIES, Collections.emptyList(),
+                Collections.emptyMap(), Duration.ZERO);
+    }
+
+    private BatchRunner(final String transformerFile, final int workers, final int shardSize,
+            final boolean ordered, final int maxRetries, final List<String> jvmOptions,
+            final Map<String, String> settings, final Duration shardTimeout) {
+        this.transformerFile = transformerFile;
+        this.workers = Math.max(workers, 1);
+        this.shardSize = Math.max(shardSize, 1);
+        this.ordered = ordered;
+        this.maxRetries = Math.max(maxRetries, 0);
+        this.jvmOptions = Collections.unmodifiableList(new ArrayList<>(jvmOptions));
+        this.settings = settings;
+        this.shardTimeout = shardTimeout.isNegative() ? Duration.ZERO : shardTimeout;
+    }
+
+    /**
+     * Creates a copy of this runner with the given shard size.
+     *
+     * @param shardSize the number of lines in a shard
+     * @return the new runner
+     */
+    public BatchRunner withShardSize(final int shardSize) {
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions, settings,
+                shardTimeout);
+    }
+
+    /**
+     * Creates a copy of this runner merging the output in the input order, or as
+     * soon as the shards are transformed.
+     *
+     * @param ordered true (the default) for the output in the input order
+     * @return the new runner
+     */
+    public BatchRunner withOrdered(final boolean ordered) {
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions, settings,
+                shardTimeout);
+    }
+
+    /**
+     * Creates a copy of this runner with the given maximum number of retries of a
+     * shard after the crashes of the worker processes.
+     *
+     * @param maxRetries the maximum number of retries of a shard
+     * @return the new runner
+     */
+    public BatchRunner withMaxRetries(final int maxRetries) {
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions, settings,
+                shardTimeout);
+    }
+
+    /**
+     * Creates a copy of this runner starting the worker processes with the given
+     * JVM options, e.g., "-Xmx2g".
+     *
+     * @param jvmOptions the JVM options of the worker processes
+     * @return the new runner
+     */
+    public BatchRunner withJvmOptions(final List<String> jvmOptions) {
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions, settings,
+                shardTimeout);
+    }
+
+    /**
+     * Creates a copy of this runner, where the workers load the transformer with
+     * a factory having the same settings as the given factory (see
+     * {@link TransformerFactory#getSettings()}), e.g., with the batched scripts,
+     * interning or a budget. The factories with user functions, a script engine
+     * factory, an identifier generator or a JSON provider can not be reproduced
+     * by the workers, and are rejected.
+     *
+     * @param factory the transformer factory
+     * @return the new runner
+     * @throws IllegalArgumentException thrown when the workers can not reproduce
+     *                                  the factory
+     */
+    public BatchRunner withFactory(final TransformerFactory factory) {
+        final Map<String, String> factorySettings;
+        try {
+            factorySettings = factory.getSettings();
+        } catch (final IllegalStateException e) {
+            throw new IllegalArgumentException("the workers can not reproduce the factory: " + e.getMessage(), e);
+        }
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions,
+                factorySettings, shardTimeout);
+    }
+
+    /**
+     * Creates a copy of this runner with the given maximum time of transforming a
+     * shard by a worker process. A worker exceeding it (e.g., a script in an
+     * endless loop) is killed, and its shard is retried as after a crash. By
+     * default (zero), the shards have no timeout.
+     *
+     * @param shardTimeout the maximum time of transforming a shard, zero for no
+     *                     timeout
+     * @return the new runner
+     */
+    public BatchRunner withShardTimeout(final Duration shardTimeout) {
+        return new BatchRunner(transformerFile, workers, shardSize, ordered, maxRetries, jvmOptions, settings,
+                shardTimeout);
+    }
+
+    /**
+     * Transforms the NDJSON input with the worker processes, writing one line to
+     * the output for each non-blank input line: the transformed document, or
+     * {"error": "message"} when the line is not a JSON object or its
+     * transformation fails (see {@link BatchWorker}). The streams are not closed,
+     * the output is flushed at the end.
+     *
+     * @param in  the NDJSON source documents
+     * @param out the NDJSON transformed documents
+     * @return the report of the run
+     * @throws IOException          thrown when reading the input or writing the
+     *                              output fails, or when a shard still fails after
+     *                              the maximum number of retries
+     * @throws InterruptedException thrown when the current thread is interrupted
+     */
+    public BatchReport run(final InputStream in, final OutputStream out) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final Merger merger = new Merger(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)),
+                ordered, 2 * workers);
+        final BlockingQueue<Shard> queue = new ArrayBlockingQueue<>(workers);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final List<BatchReport.Worker> stats = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            final BatchReport.Worker worker = new BatchReport.Worker(i);
+            final Thread thread = new Thread(() -> work(worker, queue, merger, failure),
+                    "batch-worker-" + i);
+            stats.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            int index = 0;
+            List<String> lines = new ArrayList<>(shardSize);
+            String line;
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == shardSize) {
+                    submit(queue, merger, failure, new Shard(index++, lines));
+                    lines = new ArrayList<>(shardSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(queue, merger, failure, new Shard(index, lines));
+            }
+        } catch (final IOException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < workers && failure.get() == null; i++) {
+                // after a failure, the workers stop without waiting for the end of the input
+                while (!queue.offer(new Shard(-1, END), 100, TimeUnit.MILLISECONDS) && failure.get() == null) {
+                    continue;
+                }
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+        final Exception e = failure.get();
+        if (e instanceof InterruptedException) {
+            throw (InterruptedException) e;
+        }
+        if (e != null) {
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        merger.flush();
+        return new BatchReport(stats, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static void submit(final BlockingQueue<Shard> queue, final Merger merger,
+            final AtomicReference<Exception> failure, final Shard shard) throws InterruptedException {
+        // the workers stop taking the shards after a failure, the waiting stops then as well
+        while (failure.get() == null && !merger.permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            continue;
+        }
+        while (failure.get() == null && !queue.offer(shard, 100, TimeUnit.MILLISECONDS)) {
+            continue;
+        }
+    }
+
+    private void work(final BatchReport.Worker stats, final BlockingQueue<Shard> queue, final Merger merger,
+            final AtomicReference<Exception> failure) {
+        WorkerProcess process = null;
+        try {
+            while (failure.get() == null) {
+                final Shard shard = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (shard == null) {
+                    continue;
+                }
+                if (shard.lines == END) {
+                    break;
+                }
+                List<String> results = null;
+                for (int attempt = 0; results == null; attempt++) {
+                    final long start = System.nanoTime();
+                    try {
+                        if (process == null) {
+                            process = new WorkerProcess(command(), shardTimeout);
+                        }
+                        results = process.transform(shard.lines);
+                        stats.shard(results.size(), System.nanoTime() - start);
+                    } catch (final IOException e) {
+                        stats.failure(System.nanoTime() - start);
+                        if (process != null) {
+                            process.destroy();
+                            process = null;
+                        }
+                        if (attempt >= maxRetries) {
+                            throw new IOException("shard " + shard.index + " failed after " + attempt
+                                    + " retries", e);
+                        }
+                        logger.warning("Worker " + stats.getIndex() + " failed on shard " + shard.index
+                                + ", restarting: " + e);
+                    }
+                }
+                merger.complete(new Shard(shard.index, results));
+            }
+        } catch (final IOException | InterruptedException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            if (process != null) {
+                process.close();
+            }
+        }
+    }
+
+    private List<String> command() {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BatchWorker.class.getName());
+        command.add(transformerFile);
+        settings.forEach((k, v) -> command.add(k + "=" + v));
+        return command;
+    }
+
+    private static final class Shard {
+        private final int index;
+        private final List<String> lines;
+
+        private Shard(final int index, final List<String> lines) {
+            this.index = index;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Writes the transformed shards to the output, in the order of their indexes
+     * when ordered, and releases their permits, such that new shards can be read.
+     */
+    private static final class Merger {
+        private final Writer writer;
+        private final boolean ordered;
+        private final Semaphore permits;
+        private final Map<Integer, List<String>> pending = new HashMap<>();
+        private int next;
+
+        private Merger(final Writer writer, final boolean ordered, final int permits) {
+            this.writer = writer;
+            this.ordered = ordered;
+            this.permits = new Semaphore(permits);
+        }
+
+        private synchronized void complete(final Shard shard) throws IOException {
+            if (!ordered) {
+                write(shard.lines);
+                return;
+            }
+            pending.put(shard.index, shard.lines);
+            List<String> lines;
+            while ((lines = pending.remove(next)) != null) {
+                write(lines);
+                next++;
+            }
+        }
+
+        private void write(final List<String> lines) throws IOException {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            permits.release();
+        }
+
+        private synchronized void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    /**
+     * A worker process, transforming the shards streamed to its standard input.
+     * The lines are written on a separate thread, such that the worker never
+     * blocks on a full pipe while the runner is still writing. The process is
+     * killed by a timer when it exceeds the shard timeout, the reading of its
+     * output then ends as after a crash.
+     */
+    private static final class WorkerProcess {
+        private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, x -> {
+            final Thread thread = new Thread(x, "batch-process");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Process process;
+        private final BufferedWriter stdin;
+        private final BufferedReader stdout;
+        private final Duration timeout;
+        private volatile boolean timedOut;
+
+        private WorkerProcess(final List<String> command, final Duration timeout) throws IOException {
+            this.timeout = timeout;
+            this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8));
+        }
+
+        private List<String> transform(final List<String> lines) throws IOException, InterruptedException {
+            final Future<?> killed = timeout.isZero() ? null : executor.schedule(() -> {
+                timedOut = true;
+                process.destroyForcibly();
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            final Future<?> written = executor.submit(() -> {
+                for (final String line : lines) {
+                    stdin.write(line);
+                    stdin.newLine();
+                }
+                stdin.flush();
+                return null;
+            });
+            final List<String> results = new ArrayList<>(lines.size());
+            while (results.size() < lines.size()) {
+                final String line = stdout.readLine();
+                if (line == null) {
+                    throw new IOException(timedOut ? "worker process killed after the shard timeout of " + timeout
+                            : "worker process exited with " + exitValue());
+                }
+                results.add(line);
+            }
+            try {
+                written.get();
+            } catch (final ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                if (killed != null) {
+                    killed.cancel(false);
+                }
+            }
+            return results;
+        }
+
+        private String exitValue() throws InterruptedException {
+            return process.waitFor(10, TimeUnit.SECONDS) ? String.valueOf(process.exitValue()) : "unknown status";
+        }
+
+        private void destroy() {
+            executor.shutdownNow();
+            process.destroyForcibly();
+        }
+
+        private void close() {
+            executor.shutdown();
+            try {
+                stdin.close();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (final IOException e) {
+                process.destroyForcibly();
+            } catch (final InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
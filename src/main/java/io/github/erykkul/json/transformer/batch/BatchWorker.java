@@ -0,0 +1,128 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.script.ScriptEngine;
+
+import io.github.erykkul.json.transformer.EngineHolder;
+import io.github.erykkul.json.transformer.Transformer;
+import io.github.erykkul.json.transformer.TransformerFactory;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+/**
+ * The worker process of the {@link BatchRunner}. It loads the transformer from
+ * the file given as its first argument (with
+ * {@link TransformerFactory#createFromFile(String)}), with a factory created
+ * from the settings given as the other arguments, in the "name=value" form
+ * (see {@link TransformerFactory#fromSettings(Map)}). It then reads the NDJSON source
+ * documents from the standard input and writes one line to the standard output
+ * for each input line: the transformed document, or {"error": "message"} when
+ * the line is not a JSON object or its transformation fails. The script engine
+ * is reused for all documents, except after a failed transformation. The
+ * worker exits when the standard input is closed. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#batch-execution">Batch
+ * execution</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public final class BatchWorker {
+    private static final Logger logger = Logger.getLogger(BatchWorker.class.getName());
+
+    private BatchWorker() {
+    }
+
+    /**
+     * Runs the worker on the standard input and output.
+     *
+     * @param args the path of the transformer file, followed by the settings of
+     *             the transformer factory
+     * @throws IOException thrown when the transformer file can not be read, or
+     *                     when the standard input or output fails
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: BatchWorker <transformer file> [<setting>=<value>...]");
+            System.exit(2);
+        }
+        final Map<String, String> settings = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            final int idx = args[i].indexOf('=');
+            if (idx < 0) {
+                System.err.println("invalid setting: " + args[i]);
+                System.exit(2);
+            }
+            settings.put(args[i].substring(0, idx), args[i].substring(idx + 1));
+        }
+        run(TransformerFactory.fromSettings(settings).createFromFile(args[0]), System.in, System.out);
+    }
+
+    /**
+     * Transforms each NDJSON line of the input stream, writing one line per input
+     * line to the output stream, until the input stream ends. The output is
+     * flushed whenever no further input is available, such that the runner
+     * receives the results of a shard without waiting for the next shard.
+     *
+     * @param transformer the transformer
+     * @param in          the NDJSON source documents
+     * @param out         the NDJSON transformed documents
+     * @throws IOException thrown when reading or writing fails
+     */
+    static void run(final Transformer transformer, final InputStream in, final OutputStream out) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        ScriptEngine engine = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final EngineHolder engineHolder = transformer.newEngineHolder();
+            engineHolder.setEngine(engine);
+            writer.write(transform(transformer, engineHolder, line));
+            writer.newLine();
+            engine = engineHolder.getEngine();
+            if (!reader.ready()) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    private static String transform(final Transformer transformer, final EngineHolder engineHolder,
+            final String line) {
+        final JsonObject document;
+        try (JsonReader reader = Json.createReader(new StringReader(line))) {
+            document = reader.readObject();
+        } catch (final JsonException | ClassCastException e) {
+            return error("invalid JSON document: " + e.getMessage());
+        }
+        try {
+            return transformer.transform(document, engineHolder).toString();
+        } catch (final RuntimeException e) {
+            logger.severe("Transformation failed: " + e);
+            // the engine state is unknown after an error (e.g., the globals written by the failed scripts), it
+            // is not reused by the next documents
+            engineHolder.setEngine(null);
+            return error("transformation failed: " + e);
+        }
+    }
+
+    private static String error(final String message) {
+        return Json.createObjectBuilder().add("error", message).build().toString();
+    }
+}
@@ -0,0 +1,150 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngine;
+
+import io.github.erykkul.json.transformer.EngineHolder;
+import io.github.erykkul.json.transformer.Transformer;
+import jakarta.json.JsonObject;
+
+/**
+ * Gathers the documents submitted concurrently for one transformer into
+ * micro-batches. The first document arriving when no batch is being collected
+ * makes its thread the leader: it waits until the batch is full or the oldest
+ * document waited for the maximum delay, and then transforms the batch
+ * sequentially with a script engine leased from the pool of this batcher. The
+ * documents that do not fit in the batch are handed to a new leader. Every
+ * submitted document is completed, also when its transformation (or the batch)
+ * fails with an error.
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class MicroBatcher {
+    private final Transformer transformer;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ServerStats.TransformerStats stats;
+    private final BlockingQueue<ScriptEngine> engines;
+    private final Queue<Pending> queue = new ArrayDeque<>();
+    private boolean collecting;
+
+    MicroBatcher(final Transformer transformer, final Executor executor, final int maxBatchSize,
+            final long maxDelayNanos, final int maxIdleEngines, final ServerStats.TransformerStats stats) {
+        this.transformer = transformer;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.engines = new ArrayBlockingQueue<>(maxIdleEngines);
+        this.stats = stats;
+    }
+
+    List<CompletableFuture<JsonObject>> submit(final List<JsonObject> documents) {
+        final List<CompletableFuture<JsonObject>> futures = new ArrayList<>(documents.size());
+        final boolean leader;
+        synchronized (this) {
+            for (final JsonObject document : documents) {
+                final Pending pending = new Pending(document);
+                queue.add(pending);
+                futures.add(pending.future);
+            }
+            leader = !collecting && !documents.isEmpty();
+            collecting |= leader;
+            if (queue.size() >= maxBatchSize) {
+                notifyAll();
+            }
+        }
+        if (leader) {
+            lead();
+        }
+        return futures;
+    }
+
+    private void lead() {
+        final List<Pending> batch = new ArrayList<>();
+        final boolean handOver;
+        synchronized (this) {
+            try {
+                long wait = queue.peek().arrival + maxDelayNanos - System.nanoTime();
+                while (queue.size() < maxBatchSize && wait > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    wait = queue.peek().arrival + maxDelayNanos - System.nanoTime();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+            handOver = !queue.isEmpty();
+            collecting = handOver;
+        }
+        if (handOver) {
+            try {
+                executor.execute(this::lead);
+            } catch (final Throwable e) {
+                failQueued(e);
+            }
+        }
+        process(batch);
+    }
+
+    private void failQueued(final Throwable error) {
+        final List<Pending> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(queue);
+            queue.clear();
+            collecting = false;
+        }
+        failed.forEach(x -> x.future.completeExceptionally(error));
+    }
+
+    private void process(final List<Pending> batch) {
+        try {
+            stats.batch(batch.size());
+            ScriptEngine engine = engines.poll();
+            for (final Pending pending : batch) {
+                final EngineHolder engineHolder = transformer.newEngineHolder();
+                engineHolder.setEngine(engine);
+                try {
+                    pending.future.complete(transformer.transform(pending.document, engineHolder));
+                    engine = engineHolder.getEngine();
+                } catch (final Throwable e) {
+                    pending.future.completeExceptionally(e);
+                    // the engine state is unknown after an error (e.g., the globals written by the failed
+                    // scripts), it is not reused by the next documents and is not returned to the pool
+                    engine = null;
+                }
+            }
+            if (engine != null) {
+                engines.offer(engine);
+            }
+        } catch (final Throwable e) {
+            // the completed futures are not changed
+            batch.forEach(x -> x.future.completeExceptionally(e));
+        }
+    }
+
+    private static final class Pending {
+        private final JsonObject document;
+        private final long arrival = System.nanoTime();
+        private final CompletableFuture<JsonObject> future = new CompletableFuture<>();
+
+        private Pending(final JsonObject document) {
+            this.document = document;
+        }
+    }
+}
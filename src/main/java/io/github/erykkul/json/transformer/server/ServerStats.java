@@ -0,0 +1,70 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * The latency and throughput statistics of the transformer server, as exposed
+ * on its "/stats" endpoint.
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+final class ServerStats {
+    private final long start = System.nanoTime();
+    private final Map<String, TransformerStats> transformers = new ConcurrentHashMap<>();
+
+    TransformerStats get(final String name) {
+        return transformers.computeIfAbsent(name, x -> new TransformerStats());
+    }
+
+    JsonObject toJsonObject() {
+        final double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        final JsonObjectBuilder builder = Json.createObjectBuilder();
+        transformers.forEach((name, stats) -> builder.add(name, stats.toJsonObject(seconds)));
+        return Json.createObjectBuilder().add("uptimeSeconds", seconds).add("transformers", builder).build();
+    }
+
+    static final class TransformerStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder documents = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+        void batch(final int size) {
+            batches.increment();
+            documents.add(size);
+        }
+
+        void request(final long nanos, final boolean failed) {
+            requests.increment();
+            if (failed) {
+                errors.increment();
+            }
+            latencyNanos.add(nanos);
+            maxLatencyNanos.accumulate(nanos);
+        }
+
+        private JsonObject toJsonObject(final double seconds) {
+            final long r = requests.sum();
+            final long b = batches.sum();
+            final long d = documents.sum();
+            return Json.createObjectBuilder().add("requests", r).add("errors", errors.sum()).add("documents", d)
+                    .add("batches", b).add("averageBatchSize", b == 0 ? 0 : (double) d / b)
+                    .add("meanLatencyMillis", r == 0 ? 0 : latencyNanos.sum() / 1e6 / r)
+                    .add("maxLatencyMillis", maxLatencyNanos.get() / 1e6)
+                    .add("documentsPerSecond", d / seconds).build();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.erykkul.json.transformer.Transformer;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+/**
+ * An embedded HTTP service transforming documents with the registered
+ * transformers, based on the HTTP server built into the JDK. The requests are
+ * handled on virtual threads when the Java runtime supports them (Java 21 or
+ * newer), and on a cached thread pool otherwise. The service has the following
+ * endpoints:
+ * <ul>
+ * <li>POST /transform/{name}: transforms the JSON document in the request body
+ * with the transformer registered under the given name, or each line of the
+ * body when the content type is "application/x-ndjson" (the response is then
+ * also NDJSON, in the order of the request lines)</li>
+ * <li>GET /stats: the latency and throughput statistics of each transformer</li>
+ * </ul>
+ * The documents submitted concurrently for the same transformer are gathered
+ * into micro-batches, where each batch is transformed with a single script
+ * engine leased from a pool, such that the script engines are created only
+ * once and reused across the requests. Note that the variables defined by the
+ * scripts remain defined in the reused engines. See documentation: <a href=
+ * "https://github.com/ErykKul/json-transformer?tab=readme-ov-file#http-service">HTTP
+ * service</a>
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class TransformerServer {
+    /**
+     * The default maximum number of documents in a micro-batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    /**
+     * The default maximum time in milliseconds that a document waits for other
+     * documents to be gathered in the same micro-batch.
+     */
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 2;
+    private static final Logger logger = Logger.getLogger(TransformerServer.class.getName());
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String TRANSFORM_PATH = "/transform/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final int maxIdleEngines;
+    private final Map<String, MicroBatcher> batchers = new ConcurrentHashMap<>();
+    private final ServerStats stats = new ServerStats();
+
+    /**
+     * Creates a server listening on the given port, with the default micro-batch
+     * size and delay.
+     *
+     * @param port the port, or 0 for any free port (see {@link #getPort()})
+     * @throws IOException thrown when the server can not be created
+     */
+    public TransformerServer(final int port) throws IOException {
+        this(new InetSocketAddress(port), DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MILLIS,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param address             the address the server listens on
+     * @param maxBatchSize        the maximum number of documents in a micro-batch
+     * @param maxBatchDelayMillis the maximum time in milliseconds that a document
+     *                            waits for other documents to be gathered in the
+     *                            same micro-batch, 0 disables the waiting
+     * @param maxIdleEngines      the maximum number of idle script engines kept
+     *                            for reuse per transformer
+     * @throws IOException thrown when the server can not be created
+     */
+    public TransformerServer(final InetSocketAddress address, final int maxBatchSize, final long maxBatchDelayMillis,
+            final int maxIdleEngines) throws IOException {
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxBatchDelayMillis, 0));
+        this.maxIdleEngines = Math.max(maxIdleEngines, 1);
+        this.executor = newExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(TRANSFORM_PATH, this::handleTransform);
+        this.server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Registers the transformer under the given name, replacing the transformer
+     * registered under that name before.
+     *
+     * @param name        the name of the transformer, as used in the
+     *                    "/transform/{name}" path
+     * @param transformer the transformer
+     * @return this server
+     */
+    public TransformerServer register(final String name, final Transformer transformer) {
+        batchers.put(name, new MicroBatcher(transformer, executor, maxBatchSize, maxBatchDelayNanos, maxIdleEngines,
+                stats.get(name)));
+        return this;
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most the given number of seconds for the
+     * requests being handled.
+     *
+     * @param delay the maximum time to wait in seconds
+     */
+    public void stop(final int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleTransform(final HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        final String name = exchange.getRequestURI().getPath().substring(TRANSFORM_PATH.length());
+        final MicroBatcher batcher = batchers.get(name);
+        if (batcher == null) {
+            respond(exchange, 404, "application/json", error("transformer \"" + name + "\" not found"));
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "application/json", error("method not allowed"));
+            return;
+        }
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        final boolean ndjson = contentType != null && contentType.startsWith(NDJSON);
+        int status = 200;
+        String response;
+        try {
+            response = transform(batcher, read(exchange.getRequestBody()), ndjson);
+        } catch (final JsonException | ClassCastException e) {
+            status = 400;
+            response = error("invalid JSON document: " + e.getMessage());
+        } catch (final ExecutionException e) {
+            logger.severe("Transformation failed: " + e.getCause());
+            status = 500;
+            response = error("transformation failed: " + e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            response = error("interrupted");
+        }
+        stats.get(name).request(System.nanoTime() - start, status != 200);
+        respond(exchange, status, status == 200 && ndjson ? NDJSON : "application/json", response);
+    }
+
+    private static String transform(final MicroBatcher batcher, final String body, final boolean ndjson)
+            throws ExecutionException, InterruptedException {
+        final List<JsonObject> documents = new ArrayList<>();
+        for (final String line : ndjson ? body.split("\r?\n") : new String[] { body }) {
+            if (!line.isBlank()) {
+                documents.add(parse(line));
+            }
+        }
+        final StringBuilder response = new StringBuilder();
+        for (final CompletableFuture<JsonObject> future : batcher.submit(documents)) {
+            response.append(future.get()).append(ndjson ? "\n" : "");
+        }
+        return response.toString();
+    }
+
+    private void handleStats(final HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "application/json", stats.toJsonObject().toString());
+    }
+
+    private static String error(final String message) {
+        return Json.createObjectBuilder().add("error", message).build().toString();
+    }
+
+    private static JsonObject parse(final String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String contentType,
+            final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        // this library targets Java 17, the virtual threads are used when available
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -3,21 +3,61 @@
 package io.github.erykkul.json.transformer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import org.eclipse.parsson.JsonProviderImpl;
 import org.junit.Test;
 
 import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonPointer;
 import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonParser;
 
 /**
  * The tests on the examples from the documentation. See documentation: <a href=
@@ -117,6 +157,1074 @@ public class TransformerTest {
         assertEquals(95, result.toString().length());
     }
 
+    /**
+     * Test of the identifier generators: the formats, the ordering of the
+     * time-ordered identifiers and the uniqueness of the batched identifiers.
+     */
+    @Test
+    public void testIdGenerators() {
+        final String transformer = "{\"transformations\": [{\"append\": true, \"sourcePointer\": \"/items[i]\", "
+                + "\"resultPointer\": \"/ids\", \"expressions\": [\"generateUuid()\"]}]}";
+        final JsonObject source = parseString("{\"items\": [" + String.join(", ", Collections.nCopies(1000, "1")) + "]}");
+        final String uuid = "[0-9a-f]{8}-[0-9a-f]{4}-%s[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}";
+        final Map<IdGenerator, String> formats = Map.of(IdGenerators.secureRandomUuid(), String.format(uuid, 4),
+                IdGenerators.batched(IdGenerators.secureRandomUuid(), 64), String.format(uuid, 4),
+                IdGenerators.randomUuid(), String.format(uuid, 4), IdGenerators.uuidV7(), String.format(uuid, 7),
+                IdGenerators.ulid(), "[0-7][0-9A-HJKMNP-TV-Z]{25}");
+        formats.forEach((generator, format) -> {
+            final List<String> ids = FACTORY_WITH_LOGGER.withIdGenerator(generator).createFromJsonString(transformer)
+                    .transform(source).getJsonArray("ids").getValuesAs(JsonString::getString);
+            assertEquals(1000, ids.size());
+            assertEquals(1000, new HashSet<>(ids).size());
+            ids.forEach(x -> assertTrue(x, x.matches(format)));
+        });
+        for (final IdGenerator generator : Arrays.asList(IdGenerators.uuidV7(), IdGenerators.ulid())) {
+            final List<String> ids = Arrays.asList(IdGenerators.batched(generator, 10).nextIds(10000));
+            final List<String> sorted = new ArrayList<>(ids);
+            Collections.sort(sorted);
+            assertEquals(sorted, ids);
+            assertEquals(ids.size(), new HashSet<>(ids).size());
+        }
+    }
+
+    /**
+     * Test of the ancestor pointers: the values of the enclosing [i] elements are
+     * copied without scripts, also when parsed with the projection pushdown.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testAncestors() throws IOException {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/x[i]/y[i]/z[i]\", \"resultPointer\": \"/result[i]/res/yz\"},"
+                + "{\"sourcePointer\": \"/x[i]/y[i]\", \"resultPointer\": \"/result[i]/res/ab[i]\", \"memoize\": true, "
+                + "\"expressions\": [\"copy(../a, /a)\", \"copy(/b, /b)\"]}]}");
+        final JsonObject expected = parse("examples/documentation/parentExampleResult.json");
+        assertEquals(expected, transformer.transform(parse("examples/documentation/parentExampleSource.json")));
+        try (InputStream in = Files.newInputStream(Paths.get("examples/documentation/parentExampleSource.json"))) {
+            assertEquals(expected, transformer.transform(in));
+        }
+        assertEquals(0, transformer.getTransformations().get(1).getMemoSize());
+
+        final Transformer nested = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/x[i]/y[i]\", \"resultPointer\": \"/r[i]\", "
+                + "\"expressions\": [\"copy(../../t, /t)\", \"copy(.., /x)\", \"copy(../../../t, /none)\"]}]}");
+        final String source = "{\"t\": 1, \"skipped\": 2, \"x\": [{\"y\": [{}, {}]}, {\"y\": {}}]}";
+        final JsonObject result = parseString("{\"r\": [[{\"t\": 1, \"x\": {\"y\": [{}, {}]}}, "
+                + "{\"t\": 1, \"x\": {\"y\": [{}, {}]}}], [{\"t\": 1, \"x\": {\"y\": {}}}]]}");
+        assertEquals(result, nested.transform(parseString(source)));
+        assertEquals(result, nested.transform(stream(source)));
+        assertNull(nested.parse(stream(source)).get("skipped"));
+    }
+
+    /**
+     * Test of the transformer sets: the results are equal to the results of the
+     * transformers, and the variables defined by the scripts of one transformer
+     * are not visible to the others.
+     * 
+     * @throws Exception thrown when a file is not found or the transformations
+     *                   fail.
+     */
+    @Test
+    public void testTransformerSet() throws Exception {
+        final Map<String, Transformer> transformers = new LinkedHashMap<>();
+        transformers.put("example", FACTORY_WITH_LOGGER.createFromFile("examples/transformer.json"));
+        transformers.put("define", FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": [{"
+                + "\"resultPointer\": \"/defined\", \"expressions\": [\"script(shared = 42; res = 'yes')\"]}]}"));
+        transformers.put("use", FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/title\", \"resultPointer\": \"/title\"},"
+                + "{\"resultPointer\": \"/shared\", \"expressions\": [\"script(res = typeof shared)\"]}]}"));
+        // each member runs with its own settings, also when sharing the engine holder of another member
+        final String settings = "{\"transformations\": [{\"resultPointer\": \"/settings\","
+                + " \"expressions\": [\"settings()\"]}]}";
+        final TransformerFactory withSettings = TransformerFactory.factory(Map.of("settings",
+                (ctx, s, r, e) -> Json.createValue(ctx.engine().isBatchedScripts() + "/"
+                        + ctx.engine().getSpillThreshold())));
+        transformers.put("default", withSettings.createFromJsonString(settings));
+        transformers.put("batched", withSettings.withBatchedScripts(true).withSpillThreshold(10)
+                .createFromJsonString(settings));
+        final TransformerSet set = new TransformerSet(transformers);
+        final JsonObject source = parse("examples/example.json");
+
+        final Map<String, JsonObject> results = set.transform(source);
+        assertEquals(Arrays.asList("example", "define", "use", "default", "batched"),
+                new ArrayList<>(results.keySet()));
+        assertEquals(parse("examples/transformed.json"), results.get("example"));
+        assertEquals("undefined", results.get("use").getString("shared"));
+        assertEquals(transformers.get("use").transform(source), results.get("use"));
+        assertEquals("false/0", results.get("default").getString("settings"));
+        assertEquals("true/10", results.get("batched").getString("settings"));
+        try (InputStream in = Files.newInputStream(Paths.get("examples/example.json"))) {
+            assertEquals(results, set.transform(in));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Map<String, JsonObject> parallel = set.transformAsync(source, executor).get(10, TimeUnit.SECONDS);
+            assertEquals(results, parallel);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test of the conditional transformations: the conditions are evaluated on the
+     * document and on the iterated elements, also when fused, streamed, parsed
+     * with the projection pushdown and loaded from a snapshot.
+     * 
+     * @throws IOException thrown when the snapshot can not be written or read.
+     */
+    @Test
+    public void testWhen() throws IOException {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"append\": true, \"sourcePointer\": \"/items[i]/title\", \"resultPointer\": \"/books\", "
+                + "\"when\": {\"allOf\": [{\"pointer\": \"/type\", \"equals\": \"book\"}, {\"exists\": \"/isbn\"}]}},"
+                + "{\"sourcePointer\": \"/items[i]/title\", \"resultPointer\": \"/lines[i]/title\"},"
+                + "{\"sourcePointer\": \"/items[i]/price\", \"resultPointer\": \"/lines[i]/price\", "
+                + "\"when\": {\"not\": {\"pointer\": \"/price\", \"equals\": 0}}},"
+                + "{\"resultPointer\": \"/kind\", \"expressions\": [\"\\\"list\\\"\"], "
+                + "\"when\": {\"pointer\": \"/items\", \"type\": \"array\"}},"
+                + "{\"resultPointer\": \"/kind\", \"expressions\": [\"\\\"single\\\"\"], "
+                + "\"when\": {\"anyOf\": [{\"pointer\": \"/items\", \"type\": \"object\"}, "
+                + "{\"exists\": \"/single\"}]}}]}");
+        final String source = "{\"skipped\": 1, \"items\": [{\"type\": \"book\", \"isbn\": \"1\", \"title\": \"a\", "
+                + "\"price\": 1.0}, {\"type\": \"book\", \"title\": \"b\", \"price\": 0.0}, "
+                + "{\"type\": \"cd\", \"isbn\": \"2\", \"title\": \"c\", \"price\": 2}]}";
+        final JsonObject expected = parseString("{\"books\": [\"a\"], \"lines\": [{\"title\": \"a\", \"price\": 1.0}, "
+                + "{\"title\": \"b\"}, {\"title\": \"c\", \"price\": 2}], \"kind\": \"list\"}");
+        assertTrue(transformer.getDiagnostics().toString(), transformer.getDiagnostics().get(0).contains("fused"));
+        assertEquals(expected, transformer.transform(parseString(source)));
+        assertEquals(expected, transformer.transform(stream(source)));
+        assertStreamed(transformer, parseString(source));
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        TransformerSnapshot.write(transformer, snapshot);
+        assertEquals(expected, FACTORY_WITH_LOGGER.createFromSnapshot(new ByteArrayInputStream(snapshot.toByteArray()))
+                .transform(parseString(source)));
+        assertThrows(JsonException.class, () -> FACTORY_WITH_LOGGER.createFromJsonString(
+                "{\"transformations\": [{\"when\": {\"pointer\": \"/a\", \"type\": \"date\"}}]}"));
+    }
+
+    /**
+     * Test of the JSON Patch output (region-pruned diff): only the changed values
+     * are patched, the inserted and appended array elements are added, and the
+     * values not written by the transformations are removed.
+     */
+    @Test
+    public void testPatch() {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items[i]/title\", \"resultPointer\": \"/lines[i]/title\"},"
+                + "{\"sourcePointer\": \"/name\", \"resultPointer\": \"/meta/name\"},"
+                + "{\"sourcePointer\": \"/version\", \"resultPointer\": \"/meta/a~1b\"}]}");
+        final JsonObject base = Json.createObjectBuilder(transformer.transform(parseString(
+                "{\"items\": [{\"title\": \"a\"}, {\"title\": \"b\"}], \"name\": \"n\", \"version\": 1}")))
+                .add("stale", 1).build();
+        final JsonObject source = parseString(
+                "{\"items\": [{\"title\": \"a\"}, {\"title\": \"c\"}], \"name\": \"n\", \"version\": 2}");
+        final JsonObject result = transformer.transform(source);
+        final JsonArray patch = transformer.transformToRegionDiff(source, base).toJsonArray();
+        assertEquals(parseString("{\"patch\": [{\"op\": \"remove\", \"path\": \"/stale\"}, "
+                + "{\"op\": \"replace\", \"path\": \"/lines/1/title\", \"value\": \"c\"}, "
+                + "{\"op\": \"replace\", \"path\": \"/meta/a~1b\", \"value\": 2}]}").getJsonArray("patch")
+                .stream().collect(Collectors.toSet()), new HashSet<>(patch));
+        assertEquals(3, patch.size());
+        assertEquals(result, transformer.regionDiff(base, result).apply(base));
+        assertEquals(result,
+                transformer.regionDiff(JsonValue.EMPTY_JSON_OBJECT, result).apply(JsonValue.EMPTY_JSON_OBJECT));
+        assertEquals(0, transformer.regionDiff(result, result).toJsonArray().size());
+        // the appended elements are added at the end of the array, the missing ones are removed
+        final JsonObject appended = parseString("{\"items\": [{\"title\": \"a\"}, {\"title\": \"c\"}, "
+                + "{\"title\": \"d\"}, {\"title\": \"e\"}], \"name\": \"n\", \"version\": 2}");
+        final JsonObject longer = transformer.transform(appended);
+        assertEquals(parseString("{\"patch\": ["
+                + "{\"op\": \"add\", \"path\": \"/lines/-\", \"value\": {\"title\": \"d\"}},"
+                + "{\"op\": \"add\", \"path\": \"/lines/-\", \"value\": {\"title\": \"e\"}}]}")
+                .getJsonArray("patch"), transformer.regionDiff(result, longer).toJsonArray());
+        assertEquals(longer, transformer.regionDiff(result, longer).apply(result));
+        assertEquals(parseString("{\"patch\": [{\"op\": \"remove\", \"path\": \"/lines/3\"},"
+                + "{\"op\": \"remove\", \"path\": \"/lines/2\"}]}").getJsonArray("patch"),
+                transformer.regionDiff(longer, result).toJsonArray());
+        assertEquals(result, transformer.regionDiff(longer, result).apply(longer));
+        // an element inserted at the beginning, or removed from the middle, does not change the others
+        final JsonObject inserted = transformer.transform(parseString("{\"items\": [{\"title\": \"z\"},"
+                + " {\"title\": \"a\"}, {\"title\": \"c\"}, {\"title\": \"d\"}, {\"title\": \"e\"}],"
+                + " \"name\": \"n\", \"version\": 2}"));
+        assertEquals(parseString("{\"patch\": [{\"op\": \"add\", \"path\": \"/lines/0\","
+                + " \"value\": {\"title\": \"z\"}}]}").getJsonArray("patch"),
+                transformer.regionDiff(longer, inserted).toJsonArray());
+        assertEquals(inserted, transformer.regionDiff(longer, inserted).apply(longer));
+        final JsonObject removed = transformer.transform(parseString("{\"items\": [{\"title\": \"a\"},"
+                + " {\"title\": \"e\"}], \"name\": \"n\", \"version\": 2}"));
+        assertEquals(parseString("{\"patch\": [{\"op\": \"remove\", \"path\": \"/lines/2\"},"
+                + "{\"op\": \"remove\", \"path\": \"/lines/1\"}]}").getJsonArray("patch"),
+                transformer.regionDiff(longer, removed).toJsonArray());
+        assertEquals(removed, transformer.regionDiff(longer, removed).apply(longer));
+        assertEquals(longer, transformer.regionDiff(removed, longer).apply(removed));
+    }
+
+    /**
+     * Test of the JSON provider configured in the transformer factory: it is used
+     * by the transformations and for parsing the source documents.
+     * 
+     * @throws IOException thrown when the example can not be read
+     */
+    @Test
+    public void testJsonProvider() throws IOException {
+        final AtomicInteger pointers = new AtomicInteger();
+        final AtomicInteger parsers = new AtomicInteger();
+        final JsonProvider provider = new JsonProviderImpl() {
+            @Override
+            public JsonPointer createPointer(final String jsonPointer) {
+                pointers.incrementAndGet();
+                return super.createPointer(jsonPointer);
+            }
+
+            @Override
+            public JsonParser createParser(final InputStream in) {
+                parsers.incrementAndGet();
+                return super.createParser(in);
+            }
+        };
+        final String example = "examples/documentation/functionsExample";
+        final Transformer transformer = FACTORY_WITH_LOGGER.withJsonProvider(provider)
+                .createFromFile(example + "Transformer.json");
+        assertSame(provider, transformer.getJsonProvider());
+        final JsonObject expected = parse(example + "Result.json");
+        assertEquals(expected, transformer.transform(parse(example + "Source.json")));
+        assertTrue(pointers.get() > 0);
+        try (InputStream in = Files.newInputStream(Paths.get(example + "Source.json"))) {
+            assertEquals(expected, transformer.transform(in));
+        }
+        assertEquals(1, parsers.get());
+        assertSame(Utils.provider(), FACTORY_WITH_LOGGER.createFromFile(example + "Transformer.json")
+                .getJsonProvider());
+    }
+
+    /**
+     * Test of the spilling of the appended result arrays to temporary files.
+     */
+    @Test
+    public void testSpill() {
+        final String items = IntStream.range(0, 300).mapToObj(i -> "{\"id\": " + i + ", \"tags\": [\"a" + i
+                + "\", \"b" + i + "\"]}").collect(Collectors.joining(",", "{\"items\": [", "]}"));
+        final String transformer = "{\"transformations\": ["
+                + "{\"append\": true, \"sourcePointer\": \"/items[i]/id\", \"resultPointer\": \"/ids\"},"
+                + "{\"sourcePointer\": \"/items[i]/tags[i]\", \"resultPointer\": \"/tags\"},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/copies[i]\"},"
+                + "{\"append\": true, \"useResultAsSource\": true, \"sourcePointer\": \"/ids[i]\","
+                + " \"resultPointer\": \"/idsCopy\"}]}";
+        final JsonObject source = Json.createReader(new StringReader(items)).readObject();
+        final JsonObject expected = FACTORY_WITH_LOGGER.createFromJsonString(transformer).transform(source);
+        final Transformer spilling = FACTORY_WITH_LOGGER.withSpillThreshold(100).createFromJsonString(transformer);
+        assertEquals(100, spilling.getSpillThreshold());
+        final EngineHolder engineHolder = spilling.newEngineHolder();
+        JsonObject result = JsonObject.EMPTY_JSON_OBJECT;
+        for (final Transformation t : spilling.getTransformations()) {
+            result = t.transform(source, result, engineHolder);
+        }
+        assertEquals(expected, result);
+        assertEquals(expected.toString(), result.toString());
+        for (final String key : List.of("ids", "tags", "copies", "idsCopy")) {
+            assertTrue(key, result.get(key) instanceof SpilledJsonArray);
+        }
+        assertEquals(600, result.getJsonArray("tags").size());
+        assertEquals("b150", result.getJsonArray("tags").getString(301));
+        assertEquals(299, result.getJsonArray("idsCopy").getInt(299));
+        assertEquals(150, result.getJsonArray("copies").getJsonObject(150).getInt("id"));
+        engineHolder.releaseSpills();
+        // the transform method materializes the spilled arrays before deleting their files
+        final JsonObject materialized = spilling.transform(source);
+        assertEquals(expected, materialized);
+        assertFalse(materialized.get("tags") instanceof SpilledJsonArray);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        spilling.transform(source, out);
+        assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test that the spill files are closed and deleted at the end of each
+     * transform call.
+     *
+     * @throws IOException when the temporary directory can not be listed
+     */
+    @Test
+    public void testSpillCleanup() throws IOException {
+        final String items = IntStream.range(0, 300).mapToObj(i -> "{\"id\": " + i + "}")
+                .collect(Collectors.joining(",", "{\"items\": [", "]}"));
+        final String transformer = "{\"transformations\": ["
+                + "{\"append\": true, \"sourcePointer\": \"/items[i]/id\", \"resultPointer\": \"/ids\"},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/copies[i]\"}]}";
+        final JsonObject source = Json.createReader(new StringReader(items)).readObject();
+        final Transformer spilling = FACTORY_WITH_LOGGER.withSpillThreshold(10).createFromJsonString(transformer);
+        final Set<Path> files = spillFiles();
+        final long descriptors = openDescriptors();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(300, spilling.transform(source).getJsonArray("ids").size());
+            spilling.transform(source, new ByteArrayOutputStream());
+        }
+        final Set<Path> left = spillFiles();
+        left.removeAll(files);
+        assertEquals(Collections.emptySet(), left);
+        if (descriptors >= 0) {
+            // a few descriptors may be opened by the JVM in the meantime, not one per spilled array
+            assertTrue(openDescriptors() - descriptors < 20);
+        }
+    }
+
+    private static Set<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(x -> x.getFileName().toString().startsWith("json-transformer-"))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    private static long openDescriptors() throws IOException {
+        final Path fd = Path.of("/proc/self/fd");
+        if (!Files.isDirectory(fd)) {
+            return -1;
+        }
+        try (Stream<Path> descriptors = Files.list(fd)) {
+            return descriptors.count();
+        }
+    }
+
+    /**
+     * Test of the interning of the keys, string values and pointers.
+     */
+    @Test
+    public void testInterning() {
+        final String items = IntStream.range(0, 30).mapToObj(i -> "{\"id\": " + i + ", \"code\": \"C" + i % 3
+                + "\"}").collect(Collectors.joining(",", "{\"items\": [", "]}"));
+        final String transformer = "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items[i]/code\", \"resultPointer\": \"/out[i]/code\"},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/out[i]/status\","
+                + " \"expressions\": [\"\\\"OK\\\"\"]},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/out[i]/meta\","
+                + " \"expressions\": [\"script(res = {currency: 'EUR', id: x.id})\"]}]}";
+        final JsonObject expected = FACTORY_WITH_LOGGER.createFromJsonString(transformer)
+                .transform(stream(items));
+        final Transformer interning = FACTORY_WITH_LOGGER.withInterning(100).createFromJsonString(transformer);
+        final Interner interner = ((InterningJsonProvider) interning.getJsonProvider()).getInterner();
+        final int seeded = interner.size();
+        assertTrue(seeded > 0);
+        final JsonObject result = interning.transform(stream(items));
+        assertEquals(expected, result);
+        final JsonArray out = result.getJsonArray("out");
+        for (int i = 3; i < out.size(); i++) {
+            final JsonObject first = out.getJsonObject(i % 3);
+            final JsonObject other = out.getJsonObject(i);
+            assertSame(first.get("code"), other.get("code"));
+            assertSame(first.get("status"), other.get("status"));
+            assertSame(first.getJsonObject("meta").get("currency"), other.getJsonObject("meta").get("currency"));
+            assertSame(first.keySet().iterator().next(), other.keySet().iterator().next());
+            assertSame(key(first.getJsonObject("meta"), "currency"), key(other.getJsonObject("meta"), "currency"));
+        }
+        // the tables are bounded
+        final Transformer bounded = FACTORY_WITH_LOGGER.withInterning(1).createFromJsonString(transformer);
+        assertEquals(expected, bounded.transform(stream(items)));
+        assertTrue(((InterningJsonProvider) bounded.getJsonProvider()).getInterner().size() <= 3);
+        // the repeated values share their instances after the table is filled with one-off values
+        final Interner full = new Interner(32);
+        IntStream.range(0, 1000).forEach(i -> full.intern("id" + i));
+        assertTrue(full.size() <= 32);
+        final String hot = full.intern(new String("hot"));
+        for (int i = 0; i < 1000; i++) {
+            full.intern("other" + i);
+            if (i % 10 == 0) {
+                assertSame(hot, full.intern(new String("hot")));
+            }
+        }
+        final Transformer filled = FACTORY_WITH_LOGGER.withInterning(16).createFromJsonString(transformer);
+        filled.transform(stream(IntStream.range(0, 100).mapToObj(i -> "{\"id\": " + i + ", \"code\": \"X" + i
+                + "\"}").collect(Collectors.joining(",", "{\"items\": [", "]}"))));
+        final JsonArray refilled = filled.transform(stream(items)).getJsonArray("out");
+        assertSame(refilled.getJsonObject(0).get("code"), refilled.getJsonObject(3).get("code"));
+    }
+
+    private static String key(final JsonObject object, final String key) {
+        return object.keySet().stream().filter(key::equals).findFirst().orElse(null);
+    }
+
+    /**
+     * Test of the columnar execution of the aggregates, the "when" conditions and
+     * the native filter over homogeneous arrays of objects.
+     */
+    @Test
+    public void testColumnar() {
+        final String tx = IntStream.range(0, 100).mapToObj(i -> "{\"id\": " + i % 40
+                + (i == 13 ? "" : ", \"amount\": " + (i == 50 ? "\"n/a\"" : i % 7 == 0 ? "2.5" : i * 10))
+                + ", \"currency\": \"" + (i % 3 == 0 ? "USD" : "EUR") + "\", \"status\": \""
+                + (i % 4 == 0 ? "FAIL" : "OK") + "\"}").collect(Collectors.joining(","));
+        final String transformer = "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/exactSum\","
+                + " \"expressions\": [\"sum(/amount, exact)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/sum\", \"expressions\": [\"sum(/amount)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/avg\", \"expressions\": [\"avg(/amount)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/min\", \"expressions\": [\"min(/amount)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/max\", \"expressions\": [\"max(/amount)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/count\", \"expressions\": [\"count(/amount)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/currencies\","
+                + " \"expressions\": [\"distinctCount(/currency)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/ids\", \"expressions\": [\"distinctCount(/id)\"]},"
+                + "{\"sourcePointer\": \"/tx\", \"resultPointer\": \"/ok\","
+                + " \"expressions\": [\"filter({\\\"pointer\\\": \\\"/status\\\", \\\"equals\\\": \\\"OK\\\"})\"]},"
+                + "{\"append\": true, \"sourcePointer\": \"/tx[i]/id\", \"resultPointer\": \"/usd\", \"when\": {\"allOf\": ["
+                + "{\"pointer\": \"/currency\", \"equals\": \"USD\"}, {\"not\": {\"pointer\": \"/amount\","
+                + " \"equals\": 2.50}}, {\"exists\": \"/amount\"}]}}]}";
+        final Transformer t = FACTORY_WITH_LOGGER.createFromJsonString(transformer);
+        final JsonObject result = t.transform(Json.createReader(new StringReader("{\"tx\": [" + tx + "]}"))
+                .readObject());
+        // the trailing number makes the array non-homogeneous, it is then processed element by element
+        final JsonObject expected = t.transform(Json.createReader(new StringReader("{\"tx\": [" + tx + ", 42]}"))
+                .readObject());
+        assertEquals(expected.toString(), result.toString());
+        assertEquals(99, result.getInt("count"));
+        assertEquals(2, result.getInt("currencies"));
+        assertEquals(40, result.getInt("ids"));
+        assertEquals(75, result.getJsonArray("ok").size());
+        assertEquals("2.5", result.get("min").toString());
+        assertEquals(990, result.getInt("max"));
+        assertEquals(List.of(3, 6, 9), result.getJsonArray("usd").getValuesAs(JsonNumber::intValue).subList(0, 3));
+
+        final JsonArray rows = result.getJsonArray("ok");
+        final TransformCache cache = new TransformCache();
+        final Guard.Condition condition = Guard.compile(Json.createObjectBuilder().add("anyOf",
+                Json.createArrayBuilder().add(Json.createObjectBuilder().add("pointer", "/amount").add("equals", 20))
+                        .add(Json.createObjectBuilder().add("pointer", "/currency").add("equals", "USD")))
+                .build());
+        final boolean[] mask = condition.mask(rows, cache);
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(condition.test(rows.get(i)), mask[i]);
+        }
+        assertSame(cache.getColumn(rows, "/currency"), cache.getColumn(rows, "/currency"));
+
+        // the condition of a filter is compiled once, also when filtering each element of an iteration
+        final String okCondition = "{\"pointer\": \"/status\", \"equals\": \"OK\"}";
+        assertSame(cache.getCondition(okCondition, Utils.provider()),
+                cache.getCondition(okCondition, Utils.provider()));
+        final Transformer perGroup = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/groups[i]\", \"resultPointer\": \"/ok[i]\","
+                + " \"expressions\": [\"filter(" + okCondition.replace("\"", "\\\"") + ")\"]}]}");
+        final JsonObject groups = perGroup.transform(parseString("{\"groups\": [[{\"status\": \"OK\"},"
+                + " {\"status\": \"FAIL\"}], [{\"status\": \"OK\"}, {\"status\": \"OK\"}], []]}"));
+        assertEquals(List.of(1, 2, 0), groups.getJsonArray("ok").stream().map(x -> x.asJsonArray().size())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Test of the filter, map and reduce scripts evaluated in a single call of the
+     * script engine.
+     */
+    @Test
+    public void testBatchedScripts() {
+        final String items = IntStream.range(0, 50).mapToObj(i -> i == 7 ? "{\"n\": 7}"
+                : "{\"n\": " + i + ", \"a\": {\"b\": \"b" + i + "\"}}").collect(Collectors.joining(",",
+                        "{\"items\": [", "]}"));
+        final String transformer = "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/even\","
+                + " \"expressions\": [\"filter(res = x.n % 2 == 0)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/mapped\","
+                + " \"expressions\": [\"map(res = {n: x.n, sq: x.n * x.n, b: x.a.b.toUpperCase()})\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/sum\","
+                + " \"expressions\": [\"reduce(res = (res || 0) + x.n)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/invalid\","
+                + " \"expressions\": [\"map(res = x.n +)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/reserved\","
+                + " \"expressions\": [\"map(var __i = 100; res = x.n)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/reused\","
+                + " \"expressions\": [\"map(if (typeof o == 'undefined') o = {}; o.v = x.n; res = o)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/loops\","
+                + " \"expressions\": [\"reduce(for (var k = 0; k < 10; k++) { if (k == 3) break; }"
+                + " res = (res || 0) + k)\"]}]}";
+        final JsonObject source = Json.createReader(new StringReader(items)).readObject();
+        final Logger logger = Logger.getLogger(Utils.class.getName());
+        final List<LogRecord> records = Collections.synchronizedList(new ArrayList<>());
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        final JsonObject expected;
+        final JsonObject result;
+        try {
+            expected = FACTORY_WITH_LOGGER.createFromJsonString(transformer).transform(source);
+            // the failing element 7 of the mapped array and the 50 elements of the invalid script
+            assertEquals(51, records.size());
+            records.clear();
+            final Transformer batched = FACTORY_WITH_LOGGER.withBatchedScripts(true)
+                    .createFromJsonString(transformer);
+            assertTrue(batched.isBatchedScripts());
+            result = batched.transform(source);
+            assertEquals(51, records.size());
+            assertTrue(records.stream().allMatch(x -> x.getLevel() == Level.SEVERE
+                    && x.getMessage().startsWith("Script failed")));
+        } finally {
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(true);
+        }
+        assertEquals(expected, result);
+        assertEquals(50, result.getJsonArray("reserved").size());
+        // the object reused by the script is converted after each element, before it is modified again
+        assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toList()), result.getJsonArray("reused")
+                .stream().map(x -> x.asJsonObject().getInt("v")).collect(Collectors.toList()));
+        assertEquals(150, result.getInt("loops"));
+        assertEquals(25, result.getJsonArray("even").size());
+        assertEquals(1225, result.getInt("sum"));
+        // the failing element keeps the res value of the previous element
+        assertEquals(result.getJsonArray("mapped").get(6), result.getJsonArray("mapped").get(7));
+        assertEquals("B8", result.getJsonArray("mapped").getJsonObject(8).getString("b"));
+        assertThrows(BudgetExceededException.class, () -> FACTORY_WITH_LOGGER.withBatchedScripts(true)
+                .withBudget(TransformBudget.UNLIMITED.withMaxScriptElements(10)).createFromJsonString(transformer)
+                .transform(source));
+    }
+
+    /**
+     * Test of the memoization of the [i] iterations.
+     */
+    @Test
+    public void testMemoize() {
+        final AtomicInteger calls = new AtomicInteger();
+        final TransformerFactory factory = TransformerFactory
+                .factory(Map.of("counted", (ctx, source, result, expression) -> {
+                    calls.incrementAndGet();
+                    return ExprFunction.SCRIPT.execute(ctx, source, result, expression);
+                }));
+        final JsonObject source = parseString(
+                "{\"a\": [{\"x\": 1}, {\"x\": 2}, {\"x\": 1}, {\"x\": 1}, {\"x\": 2}]}");
+        final String transformer = "{\"transformations\": [{\"sourcePointer\": \"/a[i]\", "
+                + "\"resultPointer\": \"/b[i]\", %s\"expressions\": [\"counted(res = {y: x.x + 1})\"]}]}";
+        final JsonObject expected = factory.createFromJsonString(String.format(transformer, "")).transform(source);
+        assertEquals(5, calls.getAndSet(0));
+        final JsonObject memoized = factory.createFromJsonString(String.format(transformer, "\"memoize\": true,"))
+                .transform(source);
+        assertEquals(2, calls.getAndSet(0));
+        assertEquals(expected, memoized);
+        final Transformer impure = factory.createFromJsonString(
+                String.format(transformer, "\"memoize\": true,").replace("counted(", "counted(/*impure*/ "));
+        assertEquals(expected, impure.transform(source));
+        assertEquals(5, calls.get());
+        final String transformation = "{\"sourcePointer\": \"/a[i]\", \"resultPointer\": \"/b[i]\"%s}";
+        assertFalse(factory.toTransformation(parseString(String.format(transformation, ""))).toJsonObject()
+                .containsKey("memoize"));
+        assertTrue(factory.toTransformation(parseString(String.format(transformation, ", \"memoize\": true")))
+                .toJsonObject().containsKey("memoize"));
+    }
+
+    /**
+     * Test of the native aggregate functions.
+     */
+    @Test
+    public void testAggregates() {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/sum\", \"expressions\": [\"sum(/x)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/exact\", \"expressions\": [\"sum(/y, exact)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/count\", \"expressions\": [\"count(/y)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/min\", \"expressions\": [\"min(/x)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/max\", \"expressions\": [\"max(/y)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/avg\", \"expressions\": [\"avg(/x)\"]},"
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/distinct\", \"expressions\": [\"distinctCount(/x)\"]},"
+                + "{\"sourcePointer\": \"/b[i]\", \"resultPointer\": \"/sums[i]\", \"expressions\": [\"sum()\"]}"
+                + "]}");
+        final JsonObject result = transformer.transform(parseString(
+                "{\"a\": [{\"x\": 1, \"y\": 0.1}, {\"x\": 3, \"y\": 0.2}, {\"x\": 1}, {\"x\": \"z\"}],"
+                        + "\"b\": [[1, 2], [3.5, 4]]}"));
+        assertEquals(parseString("{\"sum\": 5, \"exact\": 0.3, \"count\": 2, \"min\": 1, \"max\": 0.2,"
+                + "\"avg\": 1.6666666666666667, \"distinct\": 3, \"sums\": [3, 7.5]}"), result);
+
+        // numerically equal numbers are counted once, element by element and as columns
+        final String numbers = "{\"x\": 1}, {\"x\": 1.0}, {\"x\": 1.00}, {\"x\": 2}";
+        assertEquals(2, transformer.transform(parseString("{\"a\": [" + numbers + "]}")).getInt("distinct"));
+        final String rows = IntStream.range(0, 10).mapToObj(i -> numbers).collect(Collectors.joining(","));
+        assertEquals(2, transformer.transform(parseString("{\"a\": [" + rows + "]}")).getInt("distinct"));
+    }
+
+    /**
+     * Test of the lookup and join functions.
+     */
+    @Test
+    public void testLookup() {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/orders[i]\", \"resultPointer\": \"/orders[i]\", \"expressions\": ["
+                + "\"copy(/id, /id)\", \"lookup(/customers, /id, /customerId, /customer)\","
+                + "\"join(/lines, /order, /id, /lines)\"]}]}");
+        final JsonObject result = transformer.transform(parseString("{\"customers\": [{\"id\": 1, \"n\": \"a\"},"
+                + "{\"id\": 2, \"n\": \"b\"}], \"lines\": [{\"order\": \"o1\"}, {\"order\": \"o2\"},"
+                + "{\"order\": \"o1\"}], \"orders\": [{\"id\": \"o1\", \"customerId\": 2.0},"
+                + "{\"id\": \"o2\", \"customerId\": 3}]}"));
+        assertEquals(parseString("{\"orders\": [{\"id\": \"o1\", \"customer\": {\"id\": 2, \"n\": \"b\"},"
+                + "\"lines\": [{\"order\": \"o1\"}, {\"order\": \"o1\"}]},"
+                + "{\"id\": \"o2\", \"lines\": [{\"order\": \"o2\"}]}]}"), result);
+    }
+
+    /**
+     * Test of the pointer resolution in the transform cache.
+     */
+    @Test
+    public void testTransformCache() {
+        final JsonObject source = parseString("{\"a\": {\"b~/c\": [1, {\"d\": null}]}, \"e\": {}}");
+        final TransformCache cache = new TransformCache();
+        for (final boolean root : List.of(false, true)) {
+            if (root) {
+                cache.addRoot(source);
+            }
+            for (final String pointer : Arrays.asList("", "/a", "/a/b~0~1c/1", "/a/b~0~1c/1/d", "/a/b~0~1c/01",
+                    "/a/b~0~1c/-", "/a/x", "/e/x", "a", "/a/b~0~1c/0/x")) {
+                assertEquals(Utils.getValue(source, pointer), cache.getValue(source, pointer));
+                assertSame(cache.getValue(source, pointer), cache.getValue(source, pointer));
+            }
+        }
+
+        // only the values resolved from the source document are cached, not those of each iterated element
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items[i]/a/b\", \"resultPointer\": \"/b[i]\"},"
+                + "{\"sourcePointer\": \"/items[i]/a/c\", \"resultPointer\": \"/c[i]\"}]}");
+        final EngineHolder engineHolder = transformer.newEngineHolder();
+        final JsonObject result = transformer.transform(parseString(IntStream.range(0, 100)
+                .mapToObj(i -> "{\"a\": {\"b\": " + i + ", \"c\": " + -i + "}}")
+                .collect(Collectors.joining(",", "{\"items\": [", "]}"))), engineHolder);
+        assertEquals(-99, result.getJsonArray("c").getInt(99));
+        assertEquals(1, engineHolder.getCache().cachedNodes());
+    }
+
+    /**
+     * Test of the dead store elimination.
+     */
+    @Test
+    public void testDeadStoreElimination() {
+        final String transformer = "{\"transformations\": ["
+                + "{\"resultPointer\": \"/a\", \"expressions\": [\"script(res = 'x')\"]},"
+                + "{\"sourcePointer\": \"/s[i]\", \"resultPointer\": \"/b/c[i]\"},"
+                + "{\"resultPointer\": \"/c\", \"expressions\": [\"\\\"c\\\"\"]},"
+                + "{\"expressions\": [\"remove(/b)\"]},"
+                + "{\"sourcePointer\": \"/s\", \"resultPointer\": \"/d\"},"
+                + "{\"resultPointer\": \"/a\", \"expressions\": [\"\\\"a\\\"\"]},"
+                + "{\"sourcePointer\": \"/s\", \"resultPointer\": \"/e\"},"
+                + "{\"resultPointer\": \"/e\", \"expressions\": [\"\\\"e\\\"\"]},"
+                + "{\"sourcePointer\": \"/s\", \"resultPointer\": \"/d\", \"useResultAsSource\": true},"
+                + "{\"resultPointer\": \"/d\", \"expressions\": [\"\\\"d\\\"\"]}]}";
+        final JsonObject source = parseString("{\"s\": [1, 2]}");
+        final Transformer optimized = FACTORY_WITH_LOGGER.createFromJsonString(transformer);
+        final Transformer unoptimized = FACTORY_WITH_LOGGER.withDeadStoreElimination(false)
+                .createFromJsonString(transformer);
+        System.out.println(optimized.getDiagnostics());
+        assertEquals(3, optimized.getDiagnostics().size());
+        assertEquals(0, unoptimized.getDiagnostics().size());
+        assertEquals(unoptimized.transform(source).toString(), optimized.transform(source).toString());
+        // a dead store creating an ancestor of the overwritten value keeps the order of the fields
+        for (final String between : List.of("/z", "/a/c", "/a/b/y")) {
+            final String ordered = "{\"transformations\": ["
+                    + "{\"resultPointer\": \"/a/b/x\", \"expressions\": [\"\\\"x\\\"\"]},"
+                    + "{\"resultPointer\": \"" + between + "\", \"expressions\": [\"\\\"between\\\"\"]},"
+                    + "{\"resultPointer\": \"/a/b\", \"expressions\": [\"\\\"b\\\"\"]}]}";
+            final Transformer on = FACTORY_WITH_LOGGER.createFromJsonString(ordered);
+            final Transformer off = FACTORY_WITH_LOGGER.withDeadStoreElimination(false).createFromJsonString(ordered);
+            assertEquals(between, off.transform(source).toString(), on.transform(source).toString());
+            assertEquals(between, "/a/b/y".equals(between) ? 2 : 0, on.getDiagnostics().size());
+        }
+    }
+
+    /**
+     * Test of the fusion of transformations: the fused and unfused transformers
+     * produce identical results.
+     */
+    @Test
+    public void testFusion() {
+        final String transformer = "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items[i]/a\", \"resultPointer\": \"/lines[i]/x\"},"
+                + "{\"sourcePointer\": \"/items[i]/b\", \"resultPointer\": \"/lines[i]/y/z\"},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/lines[i]/s\", "
+                + "\"expressions\": [\"script(res = x.a + '!')\"]},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/lines[i]/c\", "
+                + "\"expressions\": [\"copy(/a, /a)\", \"\\\"lit\\\"\"]},"
+                + "{\"sourcePointer\": \"/items[i]/b\", \"resultPointer\": \"/lines[i]/y/w\"}]}";
+        final Transformer fused = FACTORY_WITH_LOGGER.createFromJsonString(transformer);
+        final Transformer unfused = FACTORY_WITH_LOGGER.withFusion(false).createFromJsonString(transformer);
+        assertEquals(List.of("5 transformations over \"/items[i]\" fused into a single pass"), fused.getDiagnostics());
+        for (final String source : Arrays.asList("{\"items\": [{\"a\": 1, \"b\": [2]}, {\"b\": 3}, {\"a\": \"x\"}]}",
+                "{\"items\": {\"a\": 1}}", "{\"items\": []}", "{}")) {
+            final JsonObject json = parseString(source);
+            assertEquals(unfused.transform(json).toString(), fused.transform(json).toString());
+        }
+        final String prefilled = "{\"transformations\": [{\"sourcePointer\": \"/pre\", \"resultPointer\": \"/lines\"},"
+                + transformer.substring(transformer.indexOf('[') + 1);
+        for (final String pre : Arrays.asList("[{\"q\": 1}, {\"x\": 2}, {}, {}]", "[1, {\"x\": 2}]", "{\"x\": 1}")) {
+            final JsonObject json = parseString("{\"pre\": " + pre + ", \"items\": [{\"a\": 1}, {\"b\": 2}]}");
+            assertEquals(FACTORY_WITH_LOGGER.withFusion(false).createFromJsonString(prefilled).transform(json).toString(),
+                    FACTORY_WITH_LOGGER.createFromJsonString(prefilled).transform(json).toString());
+        }
+    }
+
+    /**
+     * Test of the binary snapshots: the loaded transformers produce the same
+     * results, and the loading time is compared to loading from the files.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        final List<String> files = new ArrayList<>(List.of("examples/transformer.json", "examples/extra/transformer.json"));
+        for (final String example : Arrays.asList("quickStart", "functions", "import", "arraysIterations", "parent")) {
+            files.add("examples/documentation/" + example + "ExampleTransformer.json");
+        }
+        final List<byte[]> snapshots = new ArrayList<>();
+        for (final String file : files) {
+            final Transformer transformer = FACTORY_WITH_LOGGER.createFromFile(file, importPath(file));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TransformerSnapshot.write(transformer, out);
+            snapshots.add(out.toByteArray());
+            final Transformer loaded = FACTORY_WITH_LOGGER.createFromSnapshot(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(transformer.getDiagnostics(), loaded.getDiagnostics());
+            final JsonObject source = file.contains("documentation")
+                    ? parse(file.replace("Transformer.json", "Source.json"))
+                    : parse(file.replace("transformer.json", "example.json"));
+            assertEquals(transformer.transform(source), loaded.transform(source));
+        }
+
+        final int iterations = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (final String file : files) {
+                FACTORY_WITH_LOGGER.createFromFile(file, importPath(file));
+            }
+        }
+        final long fromFiles = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (final byte[] snapshot : snapshots) {
+                FACTORY_WITH_LOGGER.createFromSnapshot(new ByteArrayInputStream(snapshot));
+            }
+        }
+        final long fromSnapshots = System.nanoTime() - start;
+        System.out.println("loading " + files.size() + " transformers " + iterations + " times: from files "
+                + fromFiles / 1000000 + " ms, from snapshots " + fromSnapshots / 1000000 + " ms");
+        assertTrue(fromSnapshots < fromFiles);
+
+        // the snapshots are read exactly, several snapshots can share a stream
+        final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (final byte[] snapshot : snapshots) {
+            concatenated.write(snapshot);
+        }
+        concatenated.write('!');
+        final InputStream in = new ByteArrayInputStream(concatenated.toByteArray());
+        for (final String file : files) {
+            assertEquals(FACTORY_WITH_LOGGER.createFromFile(file, importPath(file)).getTransformations().size(),
+                    FACTORY_WITH_LOGGER.createFromSnapshot(in).getTransformations().size());
+        }
+        assertEquals('!', in.read());
+
+        final byte[] stale = snapshots.get(0).clone();
+        stale[7]++;
+        assertThrows(IOException.class, () -> FACTORY_WITH_LOGGER.createFromSnapshot(new ByteArrayInputStream(stale)));
+        assertThrows(IOException.class,
+                () -> TransformerFactory.factory().createFromSnapshot(new ByteArrayInputStream(snapshots.get(0))));
+    }
+
+    /**
+     * Test of the transform budgets: the transformations exceeding the budget are
+     * aborted and the script engine is dropped.
+     */
+    @Test
+    public void testBudget() {
+        final JsonObject source = parseString("{\"items\": [{\"a\": 1}, {\"a\": 2}, {\"a\": 3}, {\"a\": 4}]}");
+        final Transformer iterations = FACTORY_WITH_LOGGER
+                .withBudget(TransformBudget.UNLIMITED.withMaxIterationElements(4))
+                .createFromJsonString("{\"transformations\": ["
+                        + "{\"sourcePointer\": \"/items[i]/a\", \"resultPointer\": \"/b[i]/a\"}]}");
+        assertEquals(4, iterations.transform(source).getJsonArray("b").size());
+        final BudgetExceededException iterationsExceeded = assertThrows(BudgetExceededException.class,
+                () -> iterations.transform(parseString("{\"items\": [1, 2, 3, 4, 5]}")));
+        assertEquals(BudgetExceededException.Limit.ITERATION_ELEMENTS, iterationsExceeded.getLimit());
+        // the limit applies to each iteration, not to the total of the nested iterations
+        final Transformer nested = FACTORY_WITH_LOGGER
+                .withBudget(TransformBudget.UNLIMITED.withMaxIterationElements(4))
+                .createFromJsonString("{\"transformations\": ["
+                        + "{\"sourcePointer\": \"/items[i]/a[i]\", \"resultPointer\": \"/b[i]/a[i]\"}]}");
+        assertEquals(4, nested.transform(parseString("{\"items\": [{\"a\": [1, 2, 3, 4]}, {\"a\": [1, 2, 3, 4]}, "
+                + "{\"a\": [1, 2, 3, 4]}, {\"a\": [1, 2, 3, 4]}]}")).getJsonArray("b").size());
+
+        final Transformer map = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/b\", \"expressions\": [\"map(res = x.a)\"]}]}")
+                .withBudget(TransformBudget.UNLIMITED.withMaxScriptElements(3));
+        final EngineHolder engineHolder = new EngineHolder(null, map.getBudget());
+        assertEquals(BudgetExceededException.Limit.SCRIPT_ELEMENTS,
+                assertThrows(BudgetExceededException.class, () -> map.transform(source, engineHolder)).getLimit());
+        assertNull(engineHolder.getEngine());
+        // the limit applies to each script call
+        final Transformer maps = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/b\", \"expressions\": [\"map(res = x.a)\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/c\", \"expressions\": [\"map(res = x.a)\"]}]}")
+                .withBudget(TransformBudget.UNLIMITED.withMaxScriptElements(4));
+        assertEquals(4, maps.transform(source).getJsonArray("c").size());
+
+        final Transformer loop = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": [{\"expressions\": "
+                + "[\"script(var t = Date.now(); while (Date.now() - t < 200) {}; res = 1)\"]}]}");
+        assertEquals(BudgetExceededException.Limit.DURATION, assertThrows(BudgetExceededException.class,
+                () -> loop.withBudget(TransformBudget.UNLIMITED.withMaxDuration(Duration.ofMillis(50))).transform(source))
+                .getLimit());
+        assertEquals(BudgetExceededException.Limit.CPU_TIME, assertThrows(BudgetExceededException.class,
+                () -> loop.withBudget(TransformBudget.UNLIMITED.withMaxCpuTime(Duration.ofMillis(50))).transform(source))
+                .getLimit());
+    }
+
+    /**
+     * Test of the streaming output: the streamed documents are identical to the
+     * transformed documents.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testStreaming() throws IOException {
+        final Transformer appendOnly = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/title\", \"resultPointer\": \"/header/title\"},"
+                + "{\"append\": true, \"sourcePointer\": \"/items[i]/name\", \"resultPointer\": \"/names\"},"
+                + "{\"append\": true, \"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/names\", "
+                + "\"expressions\": [\"map(res = x)\"]},"
+                + "{\"append\": true, \"sourcePointer\": \"/other[i]\", \"resultPointer\": \"/names\"},"
+                + "{\"append\": true, \"sourcePointer\": \"/missing[i]\", \"resultPointer\": \"/empty\"},"
+                + "{\"sourcePointer\": \"/title\", \"resultPointer\": \"/footer\"}]}");
+        assertTrue(appendOnly.isStreamable());
+        for (final String source : Arrays.asList("{\"title\": \"t\", \"items\": [{\"name\": \"a\"}, {\"x\": 1}, "
+                + "{\"name\": [\"b\", \"c\"]}], \"other\": \"o\"}", "{\"items\": []}", "{}")) {
+            assertStreamed(appendOnly, parseString(source));
+        }
+        assertEquals(false, FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/a\", \"resultPointer\": \"/a\"},"
+                + "{\"sourcePointer\": \"/b\", \"resultPointer\": \"/b\"},"
+                + "{\"sourcePointer\": \"/c\", \"resultPointer\": \"/a/c\"}]}").isStreamable());
+
+        assertStreamed(FACTORY_WITH_LOGGER.createFromFile("examples/transformer.json"), parse("examples/example.json"));
+        for (final String example : Arrays.asList("quickStart", "merging1", "merging2", "merging3", "literals",
+                "functions", "import", "append", "arrayIndex", "arraysIterations", "parent")) {
+            assertStreamed(FACTORY_WITH_LOGGER.createFromFile("examples/documentation/" + example
+                    + "ExampleTransformer.json"), parse("examples/documentation/" + example + "ExampleSource.json"));
+        }
+    }
+
+    private void assertStreamed(final Transformer transformer, final JsonObject source) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(source, out);
+        assertEquals(transformer.transform(source).toString(), parseString(out.toString(StandardCharsets.UTF_8))
+                .toString());
+    }
+
+    /**
+     * Test of the memory-mapped source documents: the lazily parsed documents are
+     * equal to the parsed documents, and only the accessed parts are parsed.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testMappedJson() throws IOException {
+        assertEquals(parse("examples/example.json"), MappedJson.open(Paths.get("examples/example.json")));
+        assertEquals(parse("examples/extra/example.json"), MappedJson.open(Paths.get("examples/extra/example.json")));
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromFile("examples/transformer.json");
+        final JsonObject mapped = MappedJson.open(Paths.get("examples/example.json"));
+        assertEquals(parse("examples/transformed.json"), transformer.transform(mapped));
+        assertSame(mapped.get("authors"), mapped.get("authors"));
+
+        final String json = "\ufeff {\"s\": \"a\\\"b\\\\c\\u00e9\\ud83d\\ude00\\n\u00e9\", \"n\": [0, -1, 12345678901, "
+                + "123456789012345678901234, 1.50, -2e3, 1E-2], \"l\": [true, false, null, {}, [], [{}]], "
+                + "\"d\": 1, \"d\": 2, \"e\" : { \"f\" : [ ] } }";
+        final JsonObject expected = parseString(json.substring(1).replace("\"d\": 1, ", ""));
+        final JsonObject actual = MappedJson.open(tempFile(json));
+        assertEquals(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.hashCode(), actual.hashCode());
+
+        final JsonObject partial = MappedJson.open(tempFile("{\"a\": {\"b\": 1}, \"invalid\": [1, 2, x, {\"y\": }]}"));
+        assertEquals(1, partial.getJsonObject("a").getInt("b"));
+        assertThrows(JsonException.class, () -> partial.getJsonArray("invalid").get(2));
+    }
+
+    private static Path tempFile(final String content) throws IOException {
+        final Path file = Files.createTempFile("json-transformer", ".json");
+        // mapped files can not be deleted on some platforms while still mapped
+        file.toFile().deleteOnExit();
+        return Files.writeString(file, content);
+    }
+
+    /**
+     * Test of the projection pushdown: only the source paths read by the
+     * transformations are parsed, and the transformed documents are unchanged.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testProjection() throws IOException {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/title\", \"resultPointer\": \"/title\", \"expressions\": [\"\\\"t\\\"\"]},"
+                + "{\"sourcePointer\": \"/items[i]/name\", \"resultPointer\": \"/names[i]\"},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/total\", \"expressions\": [\"sum(/price)\"]},"
+                + "{\"sourcePointer\": \"/list/1\", \"resultPointer\": \"/second\"},"
+                + "{\"sourcePointer\": \"/items[i]\", \"resultPointer\": \"/tags[i]\", "
+                + "\"expressions\": [\"copy(/tags/0, /first)\", \"lookup(/users, /id, /user, /user)\"]}]}");
+        final String source = "{\"title\": {\"big\": [1, 2, 3]}, \"skipped\": {\"a\": [1, {\"b\": 2}]}, "
+                + "\"items\": [{\"name\": \"a\", \"price\": 1, \"user\": 2, \"tags\": [\"x\", \"y\"], "
+                + "\"other\": {}}, {\"price\": 2.5, \"skipped\": true}], \"list\": [[1], {\"c\": 3}, 4], "
+                + "\"users\": [{\"id\": 2, \"name\": \"u\"}]}";
+        final JsonObject projected = transformer.parse(stream(source));
+        assertEquals(parseString("{\"title\": {}, \"items\": [{\"name\": \"a\", \"price\": 1, \"user\": 2, "
+                + "\"tags\": [\"x\", null]}, {\"price\": 2.5}], \"list\": [null, {\"c\": 3}, null], "
+                + "\"users\": [{\"id\": 2, \"name\": \"u\"}]}"), projected);
+        assertEquals(transformer.transform(parseString(source)), transformer.transform(stream(source)));
+
+        try (InputStream in = Files.newInputStream(Paths.get("examples/example.json"))) {
+            assertEquals(parse("examples/transformed.json"),
+                    FACTORY_WITH_LOGGER.createFromFile("examples/transformer.json").transform(in));
+        }
+        for (final String example : Arrays.asList("quickStart", "merging1", "merging2", "merging3", "literals",
+                "functions", "import", "append", "arrayIndex", "arraysIterations", "parent")) {
+            final Transformer t = FACTORY_WITH_LOGGER
+                    .createFromFile("examples/documentation/" + example + "ExampleTransformer.json");
+            try (InputStream in = Files.newInputStream(Paths.get("examples/documentation/" + example
+                    + "ExampleSource.json"))) {
+                assertEquals(parse("examples/documentation/" + example + "ExampleResult.json"), t.transform(in));
+            }
+        }
+    }
+
+    /**
+     * Test of the warm-up: the synthesized samples are accepted by the
+     * transformations, and the warm-up stops when the throughput is stable.
+     * 
+     * @throws IOException thrown when a file is not found.
+     */
+    @Test
+    public void testWarmUp() throws IOException {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/items[i]/name\", \"resultPointer\": \"/names[i]\", "
+                + "\"expressions\": [\"script(res = x.toUpperCase())\"]},"
+                + "{\"sourcePointer\": \"/items\", \"resultPointer\": \"/total\", \"expressions\": [\"sum(/price)\"]}]}");
+        final WarmUpReport synthesized = transformer.warmUp(100);
+        System.out.println(synthesized);
+        assertEquals(0, synthesized.getErrors());
+        assertTrue(synthesized.isStable() ? synthesized.getStableAfterIterations() <= synthesized.getIterations()
+                : synthesized.getIterations() == 100);
+        final WarmUpReport samples = FACTORY_WITH_LOGGER.createFromFile("examples/transformer.json")
+                .warmUp(List.of(parse("examples/example.json")), 20);
+        assertTrue(samples.getIterations() <= 20);
+        assertEquals(0, samples.getErrors());
+    }
+
+    private static InputStream stream(final String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String importPath(final String file) {
+        return file.startsWith("examples/extra/") ? "examples/extra" : "";
+    }
+
+    /**
+     * Test of the asynchronous transformations and the transform processor: the
+     * documents are delivered in order (when asked), and the number of documents
+     * in flight is limited.
+     * 
+     * @throws Exception thrown when the transformations fail or time out.
+     */
+    @Test
+    public void testAsync() throws Exception {
+        final Transformer transformer = FACTORY_WITH_LOGGER.createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/n\", \"resultPointer\": \"/n\"},"
+                + "{\"resultPointer\": \"/s\", \"expressions\": [\"script(res = '' + x.n * 2)\"]}]}");
+        assertEquals(parseString("{\"n\": 3, \"s\": \"6\"}"), transformer.transformAsync(parseString("{\"n\": 3}"))
+                .get(10, TimeUnit.SECONDS));
+
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (final boolean ordered : Arrays.asList(true, false)) {
+                final TransformProcessor processor = new TransformProcessor(transformer, pool, 4, ordered);
+                final List<JsonObject> results = Collections.synchronizedList(new ArrayList<>());
+                final CompletableFuture<Void> done = new CompletableFuture<>();
+                // the documents requested from upstream and not yet passed to the slow subscriber
+                final AtomicLong requested = new AtomicLong();
+                final AtomicLong delivered = new AtomicLong();
+                final AtomicLong maxInFlight = new AtomicLong();
+                processor.subscribe(new Flow.Subscriber<JsonObject>() {
+                    @Override
+                    public void onSubscribe(final Flow.Subscription subscription) {
+                        subscription.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(final JsonObject item) {
+                        delivered.incrementAndGet();
+                        results.add(item);
+                        try {
+                            Thread.sleep(2);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    @Override
+                    public void onError(final Throwable throwable) {
+                        done.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        done.complete(null);
+                    }
+                });
+                processor.onSubscribe(new Flow.Subscription() {
+                    private int next;
+
+                    @Override
+                    public synchronized void request(final long n) {
+                        maxInFlight.accumulateAndGet(requested.addAndGet(n) - delivered.get(), Math::max);
+                        for (long i = 0; i < n && next < 100; i++) {
+                            processor.onNext(parseString("{\"n\": " + next++ + "}"));
+                        }
+                        if (next == 100) {
+                            next++;
+                            processor.onComplete();
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                done.get(30, TimeUnit.SECONDS);
+                assertEquals(100, results.size());
+                // the unbounded demand of the subscriber is bounded by maxInFlight upstream
+                assertEquals(4, maxInFlight.get());
+                for (int i = 0; i < 100; i++) {
+                    final int n = ordered ? i : results.get(i).getInt("n");
+                    assertEquals(parseString("{\"n\": " + n + ", \"s\": \"" + 2 * n + "\"}"), results.get(i));
+                }
+                if (!ordered) {
+                    assertEquals(100, results.stream().map(x -> x.getInt("n")).distinct().count());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses a String into a JsonObject.
+     * 
+     * @param json the JSON document
+     * @return the parsed JsonObject
+     */
+    public JsonObject parseString(final String json) {
+        final JsonReader jsonReader = Json.createReader(new StringReader(json));
+        final JsonObject object = jsonReader.readObject();
+        jsonReader.close();
+        return object;
+    }
+
     /**
      * Parses a file into a JsonObject.
      * 
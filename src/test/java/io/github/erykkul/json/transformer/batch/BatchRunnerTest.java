@@ -0,0 +1,174 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import io.github.erykkul.json.transformer.TransformBudget;
+import io.github.erykkul.json.transformer.Transformer;
+import io.github.erykkul.json.transformer.TransformerFactory;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+
+/**
+ * Tests of the batch runner, with local worker processes.
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class BatchRunnerTest {
+    /**
+     * Test of the ordered and unordered runs, the errors and the retries of the
+     * crashed workers.
+     *
+     * @throws Exception thrown when the run fails
+     */
+    @Test
+    public void testBatchRunner() throws Exception {
+        final Path dir = Files.createTempDirectory("batch");
+        final Path marker = dir.resolve("crashed");
+        // the worker transforming the document with "crash" exits once, before the marker file exists
+        final String transformer = write(dir, "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/n\", \"resultPointer\": \"/n\"},"
+                + "{\"resultPointer\": \"/doubled\", \"expressions\": [\"script(if (x.crash && "
+                + "new java.io.File(x.crash).createNewFile()) java.lang.System.exit(3); res = x.n * 2)\"]}]}");
+        final String input = IntStream.range(0, 25).mapToObj(i -> i == 17
+                ? "{\"n\": 17, \"crash\": \"" + marker.toString().replace("\\", "\\\\") + "\"}"
+                : "{\"n\": " + i + "}").collect(Collectors.joining("\n", "", "\n\nnot json\n"));
+
+        final BatchRunner runner = new BatchRunner(transformer, 2).withShardSize(4);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BatchReport report = runner.run(stream(input), out);
+        System.out.println(report);
+        final List<String> lines = Arrays.asList(out.toString(StandardCharsets.UTF_8).split("\n"));
+        assertEquals(26, lines.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(2 * i, parse(lines.get(i)).getInt("doubled"));
+        }
+        assertTrue(parse(lines.get(25)).containsKey("error"));
+        assertEquals(26, report.getDocuments());
+        assertEquals(7, report.getShards());
+        assertEquals(1, report.getRestarts());
+        assertEquals(2, report.getWorkers().size());
+
+        final ByteArrayOutputStream unordered = new ByteArrayOutputStream();
+        runner.withOrdered(false).withShardSize(3).run(stream(input), unordered);
+        assertEquals(new HashSet<>(lines),
+                new HashSet<>(Arrays.asList(unordered.toString(StandardCharsets.UTF_8).split("\n"))));
+
+        Files.delete(marker);
+        assertThrows(IOException.class,
+                () -> runner.withMaxRetries(0).run(stream(input), new ByteArrayOutputStream()));
+        Files.delete(marker);
+        Files.delete(Path.of(transformer));
+        Files.delete(dir);
+    }
+
+    /**
+     * Test of the factory settings passed to the workers, and of the shard
+     * timeout killing a hung worker.
+     *
+     * @throws Exception thrown when the run fails
+     */
+    @Test
+    public void testFactoryAndTimeout() throws Exception {
+        final Path dir = Files.createTempDirectory("batch");
+        final Path marker = dir.resolve("hung");
+        // the worker transforming the document with "hang" loops forever once, before the marker file exists
+        final String transformer = write(dir, "{\"transformations\": ["
+                + "{\"sourcePointer\": \"/a[i]\", \"resultPointer\": \"/b[i]\"},"
+                + "{\"resultPointer\": \"/doubled\", \"expressions\": [\"script(if (x.hang && "
+                + "new java.io.File(x.hang).createNewFile()) while (true) {}; res = x.n * 2)\"]}]}");
+        final String input = IntStream.range(0, 6).mapToObj(i -> i == 4
+                ? "{\"n\": 4, \"hang\": \"" + marker.toString().replace("\\", "\\\\") + "\"}"
+                : "{\"n\": " + i + ", \"a\": [" + (i == 1 ? "1, 2, 3, 4" : "1") + "]}")
+                .collect(Collectors.joining("\n"));
+
+        final BatchRunner runner = new BatchRunner(transformer, 1).withShardSize(2)
+                .withFactory(TransformerFactory.factory()
+                        .withBudget(TransformBudget.UNLIMITED.withMaxIterationElements(3)))
+                .withShardTimeout(Duration.ofSeconds(10));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BatchReport report = runner.run(stream(input), out);
+        final List<String> lines = Arrays.asList(out.toString(StandardCharsets.UTF_8).split("\n"));
+        assertEquals(6, lines.size());
+        for (int i = 0; i < 6; i++) {
+            if (i == 1) {
+                // the iteration exceeds the budget of the factory
+                assertTrue(parse(lines.get(i)).getString("error").contains("BudgetExceededException"));
+            } else {
+                assertEquals(2 * i, parse(lines.get(i)).getInt("doubled"));
+            }
+        }
+        assertEquals(1, report.getRestarts());
+
+        assertThrows(IllegalArgumentException.class, () -> runner.withFactory(
+                TransformerFactory.factory(Map.of("f", (ctx, source, result, expression) -> result))));
+        Files.delete(marker);
+        Files.delete(Path.of(transformer));
+        Files.delete(dir);
+    }
+
+    /**
+     * Test of the worker: the engine of a failed transformation is not reused, and
+     * only the documents that can not be parsed are reported as invalid.
+     *
+     * @throws Exception thrown when the worker fails
+     */
+    @Test
+    public void testWorker() throws Exception {
+        // the script defines a global before the transformation fails on the documents with "fail"
+        final Transformer transformer = TransformerFactory.factory(Map.of("failIf",
+                (ctx, source, result, expression) -> {
+                    if (!JsonValue.NULL.equals(source)) {
+                        throw new JsonException("failed");
+                    }
+                    return result;
+                })).createFromJsonString("{\"transformations\": ["
+                        + "{\"resultPointer\": \"/leaked\", \"expressions\": [\"script(res = typeof leaked;"
+                        + " if (x.fail) leaked = 'yes')\"]},"
+                        + "{\"sourcePointer\": \"/fail\", \"expressions\": [\"failIf\"]}]}");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchWorker.run(transformer, stream("{}\n{\"fail\": true}\n{}\n[1]\n"), out);
+        final List<String> lines = Arrays.asList(out.toString(StandardCharsets.UTF_8).split("\n"));
+        assertEquals(4, lines.size());
+        assertEquals("undefined", parse(lines.get(0)).getString("leaked"));
+        assertTrue(parse(lines.get(1)).getString("error").startsWith("transformation failed"));
+        assertEquals("undefined", parse(lines.get(2)).getString("leaked"));
+        assertTrue(parse(lines.get(3)).getString("error").startsWith("invalid JSON document"));
+    }
+
+    private static String write(final Path dir, final String content) throws IOException {
+        return Files.writeString(dir.resolve("transformer.json"), content).toString();
+    }
+
+    private static ByteArrayInputStream stream(final String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject parse(final String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}
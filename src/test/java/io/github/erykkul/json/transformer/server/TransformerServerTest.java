@@ -0,0 +1,156 @@
+// Author: Eryk Kulikowski (2024). Apache 2.0 License
+
+package io.github.erykkul.json.transformer.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.erykkul.json.transformer.TransformerFactory;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+
+/**
+ * Tests of the transformer server, driven over localhost.
+ *
+ * @author Eryk Kulikowski
+ * @version 1.1.0
+ * @since 1.1.0
+ */
+public class TransformerServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private TransformerServer server;
+
+    /**
+     * Starts the server with a transformer using the script engine.
+     *
+     * @throws IOException thrown when the server can not be started
+     */
+    @Before
+    public void start() throws IOException {
+        server = new TransformerServer(new InetSocketAddress("localhost", 0), 8, 50, 2);
+        server.register("double", TransformerFactory.factory().createFromJsonString("{\"transformations\": ["
+                + "{\"sourcePointer\": \"/n\", \"resultPointer\": \"/n\"},"
+                + "{\"resultPointer\": \"/doubled\", \"expressions\": [\"script(res = '' + x.n * 2)\"]}]}"));
+        server.register("error", TransformerFactory.factory(Map.of("fail", (ctx, source, result, expression) -> {
+            throw new AssertionError("failed");
+        })).createFromJsonString("{\"transformations\": [{\"expressions\": [\"fail\"]}]}"));
+        // the script defines a global before the transformation fails on the documents with "fail"
+        server.register("leak", TransformerFactory.factory(Map.of("failIf", (ctx, source, result, expression) -> {
+            if (!JsonValue.NULL.equals(source)) {
+                throw new IllegalStateException("failed");
+            }
+            return result;
+        })).createFromJsonString("{\"transformations\": ["
+                + "{\"resultPointer\": \"/leaked\", \"expressions\": [\"script(res = typeof leaked;"
+                + " if (x.fail) leaked = 'yes')\"]},"
+                + "{\"sourcePointer\": \"/fail\", \"expressions\": [\"failIf\"]}]}"));
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Test of the single documents, NDJSON batches, errors and statistics.
+     *
+     * @throws Exception thrown when a request fails
+     */
+    @Test
+    public void testServer() throws Exception {
+        final HttpResponse<String> single = post("double", "application/json", "{\"n\": 21}");
+        assertEquals(200, single.statusCode());
+        assertEquals(parse("{\"n\": 21, \"doubled\": \"42\"}"), parse(single.body()));
+
+        final String ndjson = IntStream.range(0, 20).mapToObj(i -> "{\"n\": " + i + "}")
+                .collect(Collectors.joining("\n"));
+        final HttpResponse<String> batch = post("double", "application/x-ndjson", ndjson);
+        assertEquals(200, batch.statusCode());
+        final String[] lines = batch.body().split("\n");
+        assertEquals(20, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(parse("{\"n\": " + i + ", \"doubled\": \"" + 2 * i + "\"}"), parse(lines[i]));
+        }
+
+        final int batches = stats().getInt("batches");
+        final List<CompletableFuture<HttpResponse<String>>> concurrent = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            concurrent.add(client.sendAsync(request("double", "application/json", "{\"n\": " + i + "}"),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(parse("{\"n\": " + i + ", \"doubled\": \"" + 2 * i + "\"}"),
+                    parse(concurrent.get(i).get().body()));
+        }
+        // the concurrent requests are coalesced into micro-batches of at most 8 documents
+        final int concurrentBatches = stats().getInt("batches") - batches;
+        System.out.println("50 concurrent requests in " + concurrentBatches + " batches");
+        assertTrue(concurrentBatches >= 7);
+        assertTrue(concurrentBatches < 50);
+
+        assertEquals(404, post("unknown", "application/json", "{}").statusCode());
+        assertEquals(400, post("double", "application/json", "{\"n\": ").statusCode());
+
+        final JsonObject stats = stats();
+        System.out.println(stats);
+        assertEquals(53, stats.getInt("requests"));
+        assertEquals(1, stats.getInt("errors"));
+        assertEquals(71, stats.getInt("documents"));
+
+        // an error thrown by a transformation completes its request instead of leaving it pending
+        final HttpResponse<String> failed = client.send(HttpRequest
+                .newBuilder(URI.create("http://localhost:" + server.getPort() + "/transform/error"))
+                .timeout(Duration.ofSeconds(10)).POST(HttpRequest.BodyPublishers.ofString("{}")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(500, failed.statusCode());
+
+        // the engine of a failed transformation is not reused by the next requests
+        assertEquals(500, post("leak", "application/json", "{\"fail\": true}").statusCode());
+        assertEquals("undefined", parse(post("leak", "application/json", "{}").body()).getString("leaked"));
+    }
+
+    private JsonObject stats() throws IOException, InterruptedException {
+        final HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return parse(response.body()).getJsonObject("transformers").getJsonObject("double");
+    }
+
+    private HttpResponse<String> post(final String name, final String contentType, final String body)
+            throws IOException, InterruptedException {
+        return client.send(request(name, contentType, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(final String name, final String contentType, final String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/transform/" + name))
+                .header("Content-Type", contentType).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static JsonObject parse(final String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}